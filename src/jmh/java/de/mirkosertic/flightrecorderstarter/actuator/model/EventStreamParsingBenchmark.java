@@ -0,0 +1,106 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.actuator.model;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares reading every event of a recording with {@link RecordingFile} to the {@link RecordingAnalysis}, which
+ * only creates the events of the analyzed types, and analyzing a recording in one pass to a pass per analysis.
+ * The recording is made with the profile configuration, so most of its events are GC, class loading and other
+ * events the flame graphs do not use. A real recording can be passed with
+ * {@code -p recordingFile=/path/to/recording.jfr}.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class EventStreamParsingBenchmark {
+
+    @Param({""})
+    public String recordingFile;
+
+    private File file;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, ParseException, InterruptedException {
+        this.file = this.recordingFile.isEmpty() ? SyntheticWorkload.record(30, 8) : new File(this.recordingFile);
+    }
+
+    @Benchmark
+    public FlameGraph readAllEvents() throws IOException {
+        final FlameGraph.ProfileTrees cpu = cpuAnalyzer();
+        try (final RecordingFile rf = new RecordingFile(this.file.toPath())) {
+            while (rf.hasMoreEvents()) {
+                final RecordedEvent event = rf.readEvent();
+                if (cpu.eventTypes().contains(event.getEventType().getName())) {
+                    cpu.accept(event);
+                }
+            }
+        }
+        cpu.finish();
+        return cpu.toFlameGraph();
+    }
+
+    @Benchmark
+    public FlameGraph streamAnalyzedEvents() throws IOException {
+        final RecordingAnalysis analysis = new RecordingAnalysis(this.file.toPath());
+        final FlameGraph.ProfileTrees cpu = analysis.add(cpuAnalyzer());
+        analysis.run();
+        return cpu.toFlameGraph();
+    }
+
+    @Benchmark
+    public List<Object> passPerAnalysis() throws IOException {
+        final RecordingAnalysis cpuAnalysis = new RecordingAnalysis(this.file.toPath());
+        final FlameGraph.ProfileTrees cpu = cpuAnalysis.add(cpuAnalyzer());
+        cpuAnalysis.run();
+        final RecordingAnalysis allocationAnalysis = new RecordingAnalysis(this.file.toPath());
+        final FlameGraph.ProfileTrees allocations = allocationAnalysis.add(allocationAnalyzer());
+        allocationAnalysis.run();
+        return List.of(cpu.toFlameGraph(), allocations.toFlameGraph(), RecordingSummary.from(this.file));
+    }
+
+    @Benchmark
+    public List<Object> onePass() throws IOException {
+        final RecordingAnalysis analysis = new RecordingAnalysis(this.file.toPath());
+        final FlameGraph.ProfileTrees cpu = analysis.add(cpuAnalyzer());
+        final FlameGraph.ProfileTrees allocations = analysis.add(allocationAnalyzer());
+        final RecordingSummary summary = analysis.add(new RecordingSummary(RecordingSummary.PROFILED_EVENT_TYPES));
+        analysis.run();
+        return List.of(cpu.toFlameGraph(), allocations.toFlameGraph(), summary);
+    }
+
+    private static FlameGraph.ProfileTrees cpuAnalyzer() {
+        return FlameGraph.analyzerOf(EventProfile.EXECUTION_SAMPLES, FlameGraph.ALL, FrameTransformation.NONE,
+                TimeWindow.ALL);
+    }
+
+    private static FlameGraph.ProfileTrees allocationAnalyzer() {
+        return FlameGraph.analyzerOf(EventProfile.allocations(true), FlameGraph.ALL, FrameTransformation.NONE,
+                TimeWindow.ALL);
+    }
+}
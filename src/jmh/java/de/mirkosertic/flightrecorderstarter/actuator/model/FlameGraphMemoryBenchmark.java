@@ -0,0 +1,118 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.actuator.model;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingFile;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the compact {@link FrameTree} with the former tree of {@link FlameGraph.Node} objects with a
+ * {@code HashMap} per node and a new name string per frame. Run with {@code -prof gc} to get the allocation
+ * rate, the retained heap of the resulting tree is reported as the {@code retainedBytes} counter.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class FlameGraphMemoryBenchmark {
+
+    @Param({"30"})
+    public int recordingSeconds;
+
+    private File recordingFile;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class RetainedHeap {
+        public long retainedBytes;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, ParseException, InterruptedException {
+        this.recordingFile = SyntheticWorkload.record(this.recordingSeconds, 8);
+    }
+
+    @Benchmark
+    public FrameTree compactTree(final RetainedHeap retainedHeap) throws IOException {
+        final long before = usedHeapAfterGc();
+        final FrameTree tree = FlameGraph.from(this.recordingFile, FlameGraph.ALL).getTree();
+        retainedHeap.retainedBytes = usedHeapAfterGc() - before;
+        return tree;
+    }
+
+    @Benchmark
+    public LegacyNode legacyTree(final RetainedHeap retainedHeap) throws IOException {
+        final long before = usedHeapAfterGc();
+        final LegacyNode root = LegacyNode.from(this.recordingFile);
+        retainedHeap.retainedBytes = usedHeapAfterGc() - before;
+        return root;
+    }
+
+    private static long usedHeapAfterGc() {
+        final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        memory.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * The tree as it was built before the {@link FrameTree} was introduced.
+     */
+    public static class LegacyNode {
+        private final String name;
+        private final Map<String, LegacyNode> children = new HashMap<>();
+        private int value;
+
+        LegacyNode(final String name) {
+            this.name = name;
+        }
+
+        static LegacyNode from(final File file) throws IOException {
+            final LegacyNode root = new LegacyNode("Recording");
+            try (final RecordingFile rf = new RecordingFile(file.toPath())) {
+                while (rf.hasMoreEvents()) {
+                    final RecordedEvent event = rf.readEvent();
+                    if ("jdk.ExecutionSample".equals(event.getEventType().getName())) {
+                        final List<RecordedFrame> frames = event.getStackTrace().getFrames();
+                        LegacyNode current = root;
+                        for (int i = frames.size() - 1; i >= 0; i--) {
+                            final RecordedFrame frame = frames.get(i);
+                            if (frame.isJavaFrame()) {
+                                final String nameOf = frame.getMethod().getType().getName() + "." + frame.getMethod().getName();
+                                current = current.children.computeIfAbsent(nameOf, LegacyNode::new);
+                                current.value++;
+                            }
+                        }
+                    }
+                }
+            }
+            return root;
+        }
+    }
+}
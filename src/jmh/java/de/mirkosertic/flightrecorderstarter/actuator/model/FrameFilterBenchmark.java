@@ -0,0 +1,130 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.actuator.model;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost per frame of parsing a recording of the deep stacks of the synthetic workload, unfiltered and
+ * with frame filters, on a single thread. The filter decisions and the symbols of the methods are memoized per
+ * parse, so the filters are only asked once per method. The matching of class names by a single package prefix
+ * and by the trie of many prefixes is measured on its own.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class FrameFilterBenchmark {
+
+    @Param({"16"})
+    public int syntheticChunks;
+
+    @Param({"64"})
+    public int prefixes;
+
+    private File file;
+    private ForkJoinPool pool;
+    private FlameGraph.FrameFilter packagePrefixFilter;
+    private PrefixFrameFilter prefixTrieFilter;
+    private String[] classNames;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, ParseException, InterruptedException {
+        final File chunk = SyntheticWorkload.record(10, 8);
+        final byte[] data = Files.readAllBytes(chunk.toPath());
+        final Path target = Files.createTempFile("benchmark", ".jfr");
+        try (final OutputStream out = Files.newOutputStream(target)) {
+            for (int i = 0; i < this.syntheticChunks; i++) {
+                out.write(data);
+            }
+        }
+        this.file = target.toFile();
+        this.file.deleteOnExit();
+        this.pool = new ForkJoinPool(1);
+
+        final String packageName = SyntheticWorkload.class.getPackageName() + ".";
+        this.packagePrefixFilter = new FlameGraph.PackageNamePrefixFrameFilter(packageName);
+        final List<String> includes = new ArrayList<>();
+        final List<String> excludes = new ArrayList<>();
+        includes.add(packageName);
+        for (int i = 1; i < this.prefixes; i++) {
+            (i % 2 == 0 ? includes : excludes).add("com.example.module" + i + ".");
+        }
+        this.prefixTrieFilter = new PrefixFrameFilter(includes, excludes);
+
+        final FrameTree tree = FlameGraph.from(this.file, FlameGraph.ALL, this.pool).getTree();
+        this.classNames = new String[tree.size() - 1];
+        for (int node = 1; node < tree.size(); node++) {
+            this.classNames[node - 1] = tree.classNameOf(node);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.pool.shutdown();
+    }
+
+    @Benchmark
+    public FlameGraph parseUnfiltered() throws IOException {
+        return FlameGraph.from(this.file, FlameGraph.ALL, this.pool);
+    }
+
+    @Benchmark
+    public FlameGraph parseWithPackagePrefixFilter() throws IOException {
+        return FlameGraph.from(this.file, this.packagePrefixFilter, this.pool);
+    }
+
+    @Benchmark
+    public FlameGraph parseWithPrefixTrieFilter() throws IOException {
+        return FlameGraph.from(this.file, this.prefixTrieFilter, this.pool);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public void matchPackagePrefix(final Blackhole blackhole) {
+        for (final String className : this.classNames) {
+            blackhole.consume(this.packagePrefixFilter.includes(className));
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public void matchPrefixTrie(final Blackhole blackhole) {
+        for (final String className : this.classNames) {
+            blackhole.consume(this.prefixTrieFilter.includes(className));
+        }
+    }
+}
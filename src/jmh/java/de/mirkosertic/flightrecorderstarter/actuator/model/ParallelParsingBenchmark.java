@@ -0,0 +1,82 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.actuator.model;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how parsing a multi-chunk recording scales with the parallelism of the fork/join pool. By default,
+ * the recording consists of copies of a synthetic single chunk recording; a real recording can be passed with
+ * {@code -p recordingFile=/path/to/recording.jfr}.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class ParallelParsingBenchmark {
+
+    @Param({"1", "2", "4", "8", "16"})
+    public int parallelism;
+
+    @Param({""})
+    public String recordingFile;
+
+    @Param({"64"})
+    public int syntheticChunks;
+
+    private File file;
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, ParseException, InterruptedException {
+        if (this.recordingFile.isEmpty()) {
+            final File chunk = SyntheticWorkload.record(10, 8);
+            final byte[] data = Files.readAllBytes(chunk.toPath());
+            final Path target = Files.createTempFile("benchmark", ".jfr");
+            try (final OutputStream out = Files.newOutputStream(target)) {
+                for (int i = 0; i < this.syntheticChunks; i++) {
+                    out.write(data);
+                }
+            }
+            this.file = target.toFile();
+            this.file.deleteOnExit();
+        } else {
+            this.file = new File(this.recordingFile);
+        }
+        this.pool = new ForkJoinPool(this.parallelism);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.pool.shutdown();
+    }
+
+    @Benchmark
+    public FlameGraph parse() throws IOException {
+        return FlameGraph.from(this.file, FlameGraph.ALL, this.pool);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.actuator.model;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU bound workload with varying stack depths, used by the benchmarks to produce recordings with many
+ * different stack traces.
+ */
+public final class SyntheticWorkload {
+
+    private SyntheticWorkload() {
+    }
+
+    /**
+     * Runs the workload on the given number of platform threads and waits until it is done.
+     */
+    public static void run(final int seconds, final int threads) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        final List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            workers.add(Thread.ofPlatform().name("workload-" + i).start(() -> {
+                while (System.nanoTime() < deadline) {
+                    work(ThreadLocalRandom.current().nextInt(5, 60));
+                }
+            }));
+        }
+        for (final Thread worker : workers) {
+            worker.join();
+        }
+    }
+
+    /**
+     * Records the workload with the profile configuration into a temporary file.
+     */
+    public static File record(final int seconds, final int threads) throws IOException, ParseException, InterruptedException {
+        final File file = File.createTempFile("benchmark", ".jfr");
+        file.deleteOnExit();
+        try (final Recording recording = new Recording(Configuration.getConfiguration("profile"))) {
+            recording.start();
+            run(seconds, threads);
+            recording.stop();
+            recording.dump(file.toPath());
+        }
+        return file;
+    }
+
+    private static double work(final int depth) {
+        if (depth == 0) {
+            double result = 0;
+            for (int i = 0; i < 10_000; i++) {
+                result += Math.sqrt(i + result);
+            }
+            return result;
+        }
+        // Alternate between two methods to produce many different stacks
+        return depth % 3 == 0 ? workEven(depth - 1) : work(depth - 1);
+    }
+
+    private static double workEven(final int depth) {
+        return work(depth) + 1;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.actuator.model;
+
+import de.mirkosertic.flightrecorderstarter.configuration.FlightRecorderDynamicConfiguration;
+import de.mirkosertic.flightrecorderstarter.core.FlightRecorder;
+import de.mirkosertic.flightrecorderstarter.core.StartRecordingCommand;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the time until a flame graph is available after a recording was stopped: parsing the recording file
+ * versus deriving it from the execution samples aggregated while the recording was running. The recording is
+ * created once per trial by running a CPU bound workload with varying stack depths on several threads.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class TimeToFirstFlameGraphBenchmark {
+
+    @Param({"30"})
+    public int recordingSeconds;
+
+    @Param({"8"})
+    public int workloadThreads;
+
+    private FlightRecorder flightRecorder;
+    private long recordingId;
+    private File recordingFile;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, InterruptedException {
+        final FlightRecorderDynamicConfiguration configuration = new FlightRecorderDynamicConfiguration();
+        configuration.setIncrementalFlameGraphEnabled(true);
+        this.flightRecorder = new FlightRecorder(configuration);
+
+        final StartRecordingCommand command = new StartRecordingCommand();
+        command.setDuration(1L);
+        command.setTimeUnit(ChronoUnit.HOURS);
+        command.setDescription("Flame graph benchmark");
+        this.recordingId = this.flightRecorder.startRecordingFor(command);
+
+        SyntheticWorkload.run(this.recordingSeconds, this.workloadThreads);
+
+        this.recordingFile = this.flightRecorder.stopRecording(this.recordingId);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.flightRecorder.deleteRecording(this.recordingId);
+        this.flightRecorder.close();
+    }
+
+    @Benchmark
+    public FlameGraph parseRecordingFile() throws IOException {
+        return FlameGraph.from(this.recordingFile, FlameGraph.ALL);
+    }
+
+    @Benchmark
+    public FlameGraph aggregatedWhileRecording() {
+        return this.flightRecorder.getFlameGraph(this.recordingId, FlameGraph.ALL);
+    }
+}
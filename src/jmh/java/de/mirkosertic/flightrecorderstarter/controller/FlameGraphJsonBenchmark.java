@@ -0,0 +1,138 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.controller;
+
+import de.mirkosertic.flightrecorderstarter.actuator.model.FlameGraph;
+import de.mirkosertic.flightrecorderstarter.actuator.model.SyntheticWorkload;
+import org.openjdk.jmh.annotations.*;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compares serializing the whole flame graph into a string before the response is written with streaming it in
+ * chunks. The {@code first*} benchmarks measure the time until the first byte of the response is available, the
+ * {@code complete*} benchmarks the time to write the whole response, and the heap used at the peak of writing it
+ * is reported as the {@code peakHeapBytes} counter. A real recording can be passed with
+ * {@code -p recordingFile=/path/to/recording.jfr}.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class FlameGraphJsonBenchmark {
+
+    @Param({""})
+    public String recordingFile;
+
+    @Param({"false", "true"})
+    public boolean gzip;
+
+    private FlameGraph graph;
+    private ObjectMapper objectMapper;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class PeakHeap {
+        public long peakHeapBytes;
+
+        private long baseline;
+
+        @Setup(Level.Invocation)
+        public void resetPeak() {
+            ManagementFactory.getMemoryMXBean().gc();
+            this.baseline = 0;
+            for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    pool.resetPeakUsage();
+                    this.baseline += pool.getUsage().getUsed();
+                }
+            }
+        }
+
+        void record() {
+            long peak = 0;
+            for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    peak += pool.getPeakUsage().getUsed();
+                }
+            }
+            this.peakHeapBytes = peak - this.baseline;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, ParseException, InterruptedException {
+        final File file = this.recordingFile.isEmpty() ? SyntheticWorkload.record(30, 8) : new File(this.recordingFile);
+        this.graph = FlameGraph.from(file, FlameGraph.ALL);
+        this.objectMapper = JsonMapper.builder().build();
+        // The nodes are created only once per flame graph, this is not part of the serialization
+        this.graph.getRoot();
+    }
+
+    @Benchmark
+    public int firstByteOfString() throws IOException {
+        final byte[] json = this.objectMapper.writeValueAsString(this.graph.getRoot()).getBytes(StandardCharsets.UTF_8);
+        return this.gzip ? compress(json)[0] : json[0];
+    }
+
+    @Benchmark
+    public int firstByteStreamed() throws IOException {
+        try (final InputStream in = new FlameGraphJsonInputStream(this.graph, this.objectMapper, this.gzip)) {
+            return in.read();
+        }
+    }
+
+    @Benchmark
+    public int completeString(final PeakHeap peakHeap) throws IOException {
+        final byte[] json = this.objectMapper.writeValueAsString(this.graph.getRoot()).getBytes(StandardCharsets.UTF_8);
+        final byte[] body = this.gzip ? compress(json) : json;
+        OutputStream.nullOutputStream().write(body);
+        peakHeap.record();
+        return body.length;
+    }
+
+    @Benchmark
+    public long completeStreamed(final PeakHeap peakHeap) throws IOException {
+        try (final InputStream in = new FlameGraphJsonInputStream(this.graph, this.objectMapper, this.gzip)) {
+            final long length = in.transferTo(OutputStream.nullOutputStream());
+            peakHeap.record();
+            return length;
+        }
+    }
+
+    private static byte[] compress(final byte[] data) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (final GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+}
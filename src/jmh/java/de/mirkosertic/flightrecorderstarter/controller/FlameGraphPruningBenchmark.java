@@ -0,0 +1,81 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.controller;
+
+import de.mirkosertic.flightrecorderstarter.actuator.model.FlameGraph;
+import de.mirkosertic.flightrecorderstarter.actuator.model.Pruning;
+import de.mirkosertic.flightrecorderstarter.actuator.model.SyntheticWorkload;
+import org.openjdk.jmh.annotations.*;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures pruning a flame graph and writing the pruned JSON response. The size of the response is reported as
+ * the {@code payloadBytes} counter and the number of nodes as the {@code nodes} counter, which is what the
+ * browser has to render. A real recording with many distinct stack traces can be passed with
+ * {@code -p recordingFile=/path/to/recording.jfr}.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class FlameGraphPruningBenchmark {
+
+    @Param({""})
+    public String recordingFile;
+
+    @Param({"0", "0.01", "0.1"})
+    public double minPercent;
+
+    @Param({"0", "10000"})
+    public int maxNodes;
+
+    private FlameGraph graph;
+    private ObjectMapper objectMapper;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Payload {
+        public long payloadBytes;
+        public long nodes;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, ParseException, InterruptedException {
+        final File file = this.recordingFile.isEmpty() ? SyntheticWorkload.record(30, 8) : new File(this.recordingFile);
+        this.graph = FlameGraph.from(file, FlameGraph.ALL);
+        this.objectMapper = JsonMapper.builder().build();
+    }
+
+    @Benchmark
+    public long prunedResponse(final Payload payload) throws IOException {
+        final FlameGraph pruned = new Pruning(this.minPercent, 0, this.maxNodes).apply(this.graph);
+        try (final InputStream in = new FlameGraphJsonInputStream(pruned, this.objectMapper, false)) {
+            payload.payloadBytes = in.transferTo(OutputStream.nullOutputStream());
+            payload.nodes = pruned.getTree().size();
+            return payload.payloadBytes;
+        }
+    }
+}
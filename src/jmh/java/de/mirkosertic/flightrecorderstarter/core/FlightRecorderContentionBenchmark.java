@@ -0,0 +1,95 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.core;
+
+import de.mirkosertic.flightrecorderstarter.actuator.model.FlightRecorderPublicSession;
+import de.mirkosertic.flightrecorderstarter.configuration.FlightRecorderDynamicConfiguration;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of the read-only registry operations while another thread permanently starts, stops
+ * and deletes recordings.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Group)
+public class FlightRecorderContentionBenchmark {
+
+    private static final int BACKGROUND_RECORDINGS = 32;
+
+    private FlightRecorder flightRecorder;
+    private List<Long> recordingIds;
+    private StartRecordingCommand command;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        final FlightRecorderDynamicConfiguration configuration = new FlightRecorderDynamicConfiguration();
+        configuration.setJfrCustomConfig("default");
+        this.flightRecorder = new FlightRecorder(configuration);
+
+        this.command = new StartRecordingCommand();
+        this.command.setDuration(1L);
+        this.command.setTimeUnit(ChronoUnit.HOURS);
+        this.command.setDescription("Contention benchmark");
+
+        this.recordingIds = new ArrayList<>();
+        for (int i = 0; i < BACKGROUND_RECORDINGS; i++) {
+            this.recordingIds.add(this.flightRecorder.startRecordingFor(this.command));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (final Long recordingId : this.recordingIds) {
+            this.flightRecorder.deleteRecording(recordingId);
+        }
+        this.flightRecorder.close();
+    }
+
+    @Benchmark
+    @Group("registry")
+    @GroupThreads(4)
+    public List<FlightRecorderPublicSession> sessions() {
+        return this.flightRecorder.sessions();
+    }
+
+    @Benchmark
+    @Group("registry")
+    @GroupThreads(4)
+    public FlightRecorderPublicSession getById() {
+        final int index = ThreadLocalRandom.current().nextInt(this.recordingIds.size());
+        return this.flightRecorder.getById(this.recordingIds.get(index));
+    }
+
+    @Benchmark
+    @Group("registry")
+    @GroupThreads(1)
+    public void startStopAndDelete() throws IOException {
+        final long recordingId = this.flightRecorder.startRecordingFor(this.command);
+        this.flightRecorder.stopRecording(recordingId);
+        this.flightRecorder.deleteRecording(recordingId);
+    }
+}
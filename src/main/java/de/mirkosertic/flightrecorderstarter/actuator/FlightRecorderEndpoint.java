@@ -16,20 +16,31 @@
 package de.mirkosertic.flightrecorderstarter.actuator;
 
 import de.mirkosertic.flightrecorderstarter.actuator.model.FlightRecorderPublicSession;
+import de.mirkosertic.flightrecorderstarter.actuator.model.LiveEvent;
+import de.mirkosertic.flightrecorderstarter.core.DumpRecordingCommand;
 import de.mirkosertic.flightrecorderstarter.core.FlightRecorder;
+import de.mirkosertic.flightrecorderstarter.core.LiveEventSubscription;
 import de.mirkosertic.flightrecorderstarter.core.StartRecordingCommand;
 import org.springframework.boot.actuate.endpoint.annotation.Selector;
 import org.springframework.boot.actuate.endpoint.web.annotation.RestControllerEndpoint;
 import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamResource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.util.List;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -38,6 +49,8 @@ public class FlightRecorderEndpoint {
 
     private final static Logger LOGGER = Logger.getLogger(FlightRecorder.class.getCanonicalName());
 
+    private static final Duration KEEP_ALIVE_INTERVAL = Duration.ofSeconds(15);
+    private static final String KEEP_ALIVE_JSON = "{\"type\":\"keep-alive\"}";
 
     private final FlightRecorder flightRecorder;
 
@@ -76,6 +89,88 @@ public class FlightRecorderEndpoint {
         }
     }
 
+    @PostMapping("/dump")
+    public ResponseEntity<?> dumpContinuousRecording(@RequestBody(required = false) final DumpRecordingCommand command) {
+        if (!this.flightRecorder.isContinuousRecordingActive()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Continuous recording is not enabled");
+        }
+        try {
+            final DumpRecordingCommand dumpCommand = command != null ? command : new DumpRecordingCommand();
+            LOGGER.log(Level.INFO, "Trying to dump continuous recording for the last {0} {1}",
+                    new Object[]{dumpCommand.getDuration(), dumpCommand.getTimeUnit()});
+            final long recordingId = this.flightRecorder.dumpContinuousRecording(dumpCommand);
+            LOGGER.log(Level.INFO, "Created recording with ID {0}", recordingId);
+            return ResponseEntity
+                    .created(ServletUriComponentsBuilder.fromCurrentRequest().path("/../{id}").build(recordingId).normalize()).build();
+        } catch (final Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(e.getMessage());
+        }
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<?> streamEvents(@RequestParam final Set<String> events,
+                                          @RequestParam(required = false) final Integer maxEventsPerSecond) {
+        return streamEvents(events, maxEventsPerSecond, new SseEmitter(0L));
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<?> streamEventsAsNdjson(@RequestParam final Set<String> events,
+                                                  @RequestParam(required = false) final Integer maxEventsPerSecond) {
+        return streamEvents(events, maxEventsPerSecond, new ResponseBodyEmitter(0L));
+    }
+
+    private ResponseEntity<?> streamEvents(final Set<String> events, final Integer maxEventsPerSecond,
+                                           final ResponseBodyEmitter emitter) {
+        final LiveEventSubscription subscription;
+        try {
+            LOGGER.log(Level.INFO, "Streaming live events {0}", events);
+            subscription = this.flightRecorder.subscribe(events, maxEventsPerSecond);
+        } catch (final IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+
+        emitter.onCompletion(subscription::close);
+        emitter.onTimeout(subscription::close);
+        emitter.onError(e -> subscription.close());
+
+        Thread.ofVirtual().name("flightrecorder-stream").start(() -> {
+            try {
+                while (!subscription.isClosed()) {
+                    // Sending something on idle streams is the only way to find out that the client is gone
+                    send(emitter, subscription.poll(KEEP_ALIVE_INTERVAL));
+                }
+                emitter.complete();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                subscription.close();
+            } catch (final Exception e) {
+                LOGGER.log(Level.FINE, "Live event stream closed", e);
+                subscription.close();
+                emitter.completeWithError(e);
+            }
+        });
+
+        return ResponseEntity.ok().body(emitter);
+    }
+
+    private static void send(final ResponseBodyEmitter emitter, final LiveEvent event) throws IOException {
+        if (emitter instanceof final SseEmitter sseEmitter) {
+            if (event == null) {
+                sseEmitter.send(SseEmitter.event().comment("keep-alive"));
+            } else {
+                sseEmitter.send(SseEmitter.event().name(event.getType()).data(event, MediaType.APPLICATION_JSON));
+            }
+        } else {
+            // Every line must be a JSON object, so idle streams get a keep-alive object instead of an empty line
+            if (event == null) {
+                emitter.send(KEEP_ALIVE_JSON, MediaType.APPLICATION_JSON);
+            } else {
+                emitter.send(event, MediaType.APPLICATION_JSON);
+            }
+            emitter.send("\n", MediaType.TEXT_PLAIN);
+        }
+    }
+
     @PutMapping("/{recordingId}")
     public ResponseEntity<?> stopRecording(@Selector @PathVariable final long recordingId) {
         LOGGER.log(Level.INFO, "Stopping recording with ID {0}", recordingId);
@@ -107,17 +202,35 @@ public class FlightRecorderEndpoint {
 
 
     @GetMapping("/{recordingId}")
-    public ResponseEntity<?> downloadRecording(@Selector @PathVariable final long recordingId) {
+    public ResponseEntity<?> downloadRecording(@Selector @PathVariable final long recordingId,
+                                               @RequestParam(defaultValue = "false") final boolean snapshot) {
+        final HttpHeaders headers = new HttpHeaders();
+        headers
+                .add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=flightrecording_" + recordingId + ".jfr");
+        headers.add("Cache-Control", "no-cache, no-store, must-revalidate");
+        headers.add("Pragma", "no-cache");
+        headers.add("Expires", "0");
+
+        if (snapshot) {
+            try {
+                final File snapshotFile = this.flightRecorder.snapshotRecording(recordingId);
+                if (snapshotFile != null) {
+                    LOGGER.log(Level.INFO, "Downloading snapshot of running recording with ID {0}", recordingId);
+                    // The snapshot is owned by this response, so it is removed as soon as it was sent
+                    return ResponseEntity.ok()
+                            .headers(headers)
+                            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                            .body(new InputStreamResource(
+                                    Files.newInputStream(snapshotFile.toPath(), StandardOpenOption.DELETE_ON_CLOSE)));
+                }
+            } catch (final Exception e) {
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(e.getMessage());
+            }
+        }
+
         LOGGER.log(Level.INFO, "Closing recording with ID {0} and downloading file", recordingId);
         final File file = this.flightRecorder.stopRecording(recordingId);
         if (file != null) {
-            final HttpHeaders headers = new HttpHeaders();
-            headers
-                    .add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=flightrecording_" + recordingId + ".jfr");
-            headers.add("Cache-Control", "no-cache, no-store, must-revalidate");
-            headers.add("Pragma", "no-cache");
-            headers.add("Expires", "0");
-
             return ResponseEntity.ok()
                     .headers(headers)
                     .contentType(MediaType.APPLICATION_OCTET_STREAM)
@@ -125,4 +238,4 @@ public class FlightRecorderEndpoint {
         }
         return ResponseEntity.notFound().build();
     }
-}
\ No newline at end of file
+}
@@ -1,23 +1,38 @@
 package de.mirkosertic.flightrecorderstarter.actuator;
 
 import de.mirkosertic.flightrecorderstarter.actuator.model.FlightRecorderPublicSession;
+import de.mirkosertic.flightrecorderstarter.actuator.model.LiveEvent;
+import de.mirkosertic.flightrecorderstarter.core.DumpRecordingCommand;
 import de.mirkosertic.flightrecorderstarter.core.FlightRecorder;
+import de.mirkosertic.flightrecorderstarter.core.LiveEventSubscription;
 import de.mirkosertic.flightrecorderstarter.core.StartRecordingCommand;
 import org.springframework.boot.actuate.endpoint.annotation.Selector;
 import org.springframework.boot.actuate.endpoint.web.annotation.RestControllerEndpoint;
 import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamResource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.server.ServerWebExchange;
 import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -29,6 +44,8 @@ public class ReactiveFlightRecorderEndpoint {
 
     private final static Logger LOGGER = Logger.getLogger(ReactiveFlightRecorderEndpoint.class.getCanonicalName());
 
+    private static final Duration KEEP_ALIVE_INTERVAL = Duration.ofSeconds(15);
+    private static final Map<String, String> KEEP_ALIVE_JSON = Map.of("type", "keep-alive");
 
     private final FlightRecorder flightRecorder;
 
@@ -89,6 +106,126 @@ public class ReactiveFlightRecorderEndpoint {
                 .switchIfEmpty(Mono.just(ResponseEntity.badRequest().body("Duration and TimeUnit cannot be null")));
     }
 
+    /**
+     * Dump continuous recording mono.
+     *
+     * @param commandInput      the optional time window to dump
+     * @param serverWebExchange the server web exchange
+     * @return the mono
+     */
+    @PostMapping("/dump")
+    public Mono<ResponseEntity<?>> dumpContinuousRecording(
+            @RequestBody(required = false) final Mono<DumpRecordingCommand> commandInput,
+            final ServerWebExchange serverWebExchange) {
+
+        return commandInput.defaultIfEmpty(new DumpRecordingCommand())
+                .flatMap(command -> blocking(() -> {
+                    if (!this.flightRecorder.isContinuousRecordingActive()) {
+                        return ResponseEntity.status(HttpStatus.CONFLICT).body("Continuous recording is not enabled");
+                    }
+                    LOGGER.log(Level.INFO, "Trying to dump continuous recording for the last {0} {1}",
+                            new Object[]{command.getDuration(), command.getTimeUnit()});
+                    final long recordingId;
+                    try {
+                        recordingId = this.flightRecorder.dumpContinuousRecording(command);
+                    } catch (final Exception e) {
+                        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(e.getMessage());
+                    }
+
+                    LOGGER.log(Level.INFO, "Created recording with ID {0}", recordingId);
+                    return ResponseEntity
+                            .created(UriComponentsBuilder.fromUri(serverWebExchange.getRequest().getURI())
+                                    .path("/../{id}")
+                                    .build(recordingId)
+                                    .normalize())
+                            .build();
+                }));
+    }
+
+    /**
+     * Stream live events as server-sent events.
+     *
+     * @param events             the event types to subscribe to
+     * @param maxEventsPerSecond the optional rate limit for this subscriber
+     * @return the flux
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<LiveEvent>> streamEvents(@RequestParam final Set<String> events,
+                                                         @RequestParam(required = false) final Integer maxEventsPerSecond) {
+        return streamEvents(events, maxEventsPerSecond, event -> event == null
+                ? ServerSentEvent.<LiveEvent>builder().comment("keep-alive").build()
+                : ServerSentEvent.builder(event).event(event.getType()).build());
+    }
+
+    /**
+     * Stream live events as newline delimited JSON.
+     *
+     * @param events             the event types to subscribe to
+     * @param maxEventsPerSecond the optional rate limit for this subscriber
+     * @return the flux
+     */
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Object> streamEventsAsNdjson(@RequestParam final Set<String> events,
+                                             @RequestParam(required = false) final Integer maxEventsPerSecond) {
+        // Every line must be a JSON object, so idle streams get a keep-alive object instead of an empty line
+        return streamEvents(events, maxEventsPerSecond, event -> event == null ? KEEP_ALIVE_JSON : event);
+    }
+
+    /**
+     * Streams the events of a subscription from a virtual thread of its own, which blocks while there is no
+     * demand and while it waits for events. Idle streams get a keep-alive, created by the mapping from a null
+     * event.
+     */
+    private <T> Flux<T> streamEvents(final Set<String> events, final Integer maxEventsPerSecond,
+                                     final Function<LiveEvent, T> toElement) {
+        return Flux.create(sink -> {
+            final LiveEventSubscription subscription;
+            try {
+                LOGGER.log(Level.INFO, "Streaming live events {0}", events);
+                subscription = this.flightRecorder.subscribe(events, maxEventsPerSecond);
+            } catch (final IllegalArgumentException e) {
+                sink.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage()));
+                return;
+            }
+            final Object demand = new Object();
+            sink.onRequest(requested -> signal(demand));
+            sink.onDispose(() -> {
+                subscription.close();
+                signal(demand);
+            });
+
+            Thread.ofVirtual().name("flightrecorder-stream").start(() -> {
+                try {
+                    while (!sink.isCancelled() && !subscription.isClosed()) {
+                        // Events are only taken from the bounded buffer if there is demand, so a slow
+                        // subscriber makes the buffer drop the oldest events
+                        synchronized (demand) {
+                            if (sink.requestedFromDownstream() <= 0) {
+                                demand.wait(KEEP_ALIVE_INTERVAL.toMillis());
+                                continue;
+                            }
+                        }
+                        // Sending something on idle streams is the only way to find out that the client is gone
+                        final LiveEvent event = subscription.poll(KEEP_ALIVE_INTERVAL);
+                        if (event != null || !subscription.isClosed()) {
+                            sink.next(toElement.apply(event));
+                        }
+                    }
+                    sink.complete();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    sink.complete();
+                }
+            });
+        });
+    }
+
+    private static void signal(final Object monitor) {
+        synchronized (monitor) {
+            monitor.notifyAll();
+        }
+    }
+
     /**
      * Stop recording mono.
      *
@@ -97,7 +234,7 @@ public class ReactiveFlightRecorderEndpoint {
      */
     @PutMapping("/{recordingId}")
     public Mono<ResponseEntity<?>> stopRecording(@Selector @PathVariable final Long recordingId) {
-        return Mono.just(recordingId).map(recordingIdMap -> {
+        return Mono.just(recordingId).flatMap(recordingIdMap -> blocking(() -> {
             LOGGER.log(Level.INFO, "Stopping recording with ID {0}", recordingIdMap);
             final File file = this.flightRecorder.stopRecording(recordingIdMap);
             if (file != null) {
@@ -106,7 +243,7 @@ public class ReactiveFlightRecorderEndpoint {
                         .body(this.flightRecorder.getById(recordingIdMap));
             }
             return ResponseEntity.notFound().build();
-        });
+        }));
 
     }
 
@@ -118,7 +255,7 @@ public class ReactiveFlightRecorderEndpoint {
      */
     @DeleteMapping("/{recordingId}")
     public Mono<ResponseEntity<?>> deleteRecording(@Selector @PathVariable final Long recordingId) {
-        return Mono.just(recordingId).map(recordingIdMap -> {
+        return Mono.just(recordingId).flatMap(recordingIdMap -> blocking(() -> {
             try {
                 LOGGER.log(Level.INFO, "Deleting recording with ID {0}", recordingIdMap);
 
@@ -134,7 +271,7 @@ public class ReactiveFlightRecorderEndpoint {
             } catch (final Exception e) {
                 return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(e.getMessage());
             }
-        });
+        }));
 
     }
 
@@ -142,32 +279,61 @@ public class ReactiveFlightRecorderEndpoint {
      * Download recording mono.
      *
      * @param recordingId the recording id param
+     * @param snapshot    download a snapshot of a running recording instead of stopping it
      * @return the mono
      */
     @GetMapping("/{recordingId}")
     public Mono<ResponseEntity<?>> downloadRecording(
-            @Selector @PathVariable final Long recordingId) {
+            @Selector @PathVariable final Long recordingId,
+            @RequestParam(defaultValue = "false") final boolean snapshot) {
         return Mono.just(recordingId)
-                .map(recordingIdMap -> {
+                .flatMap(recordingIdMap -> blocking(() -> {
+                    final Consumer<HttpHeaders> headersConsumer = headers -> {
+                        headers
+                                .add(HttpHeaders.CONTENT_DISPOSITION,
+                                        "attachment; filename=flightrecording_" + recordingIdMap +
+                                                ".jfr");
+                        headers.add("Cache-Control", "no-cache, no-store, must-revalidate");
+                        headers.add("Pragma", "no-cache");
+                        headers.add("Expires", "0");
+                    };
+
+                    if (snapshot) {
+                        try {
+                            final File snapshotFile = this.flightRecorder.snapshotRecording(recordingIdMap);
+                            if (snapshotFile != null) {
+                                LOGGER.log(Level.INFO, "Downloading snapshot of running recording with ID {0}", recordingIdMap);
+                                // The snapshot is owned by this response, so it is removed as soon as it was sent
+                                return ResponseEntity.ok()
+                                        .headers(headersConsumer)
+                                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                                        .body(new InputStreamResource(Files.newInputStream(snapshotFile.toPath(),
+                                                StandardOpenOption.DELETE_ON_CLOSE)));
+                            }
+                        } catch (final Exception e) {
+                            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(e.getMessage());
+                        }
+                    }
+
                     LOGGER.log(Level.INFO, "Closing recording with ID {0} and downloading file", recordingIdMap);
                     final File file = this.flightRecorder.stopRecording(recordingIdMap);
                     if (file != null) {
                         return ResponseEntity.ok()
-                                .headers(headers -> {
-                                    headers
-                                            .add(HttpHeaders.CONTENT_DISPOSITION,
-                                                    "attachment; filename=flightrecording_" + recordingIdMap +
-                                                            ".jfr");
-                                    headers.add("Cache-Control", "no-cache, no-store, must-revalidate");
-                                    headers.add("Pragma", "no-cache");
-                                    headers.add("Expires", "0");
-                                })
+                                .headers(headersConsumer)
                                 .contentType(MediaType.APPLICATION_OCTET_STREAM)
                                 .body(new FileSystemResource(file));
                     }
                     return ResponseEntity.notFound().build();
-                });
+                }));
+
+    }
 
+    /**
+     * Stopping, dumping and snapshotting recordings writes files with blocking JFR I/O, so it must not run on the
+     * event loop.
+     */
+    private static Mono<ResponseEntity<?>> blocking(final Callable<ResponseEntity<?>> handler) {
+        return Mono.fromCallable(handler).subscribeOn(Schedulers.boundedElastic());
     }
 
 }
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.actuator.model;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The callers and callees of a method, aggregated over all call paths of a flame graph. The self value of a
+ * method is the value of the samples taken in it, the total value also contains the values of the methods it
+ * called. A caller has the values of the method when called by it, and a callee its own values when called by
+ * the method.
+ * <p>
+ * In recursive calls, only the outermost frame of the method counts for its total value, but every call is
+ * counted for its callers and callees, so their totals can add up to more than the total of the method. Frames
+ * at the root of a stack trace have no caller.
+ */
+public class Butterfly {
+
+    public static class Entry {
+
+        private final String name;
+        private long self;
+        private long total;
+
+        Entry(final String name) {
+            this.name = name;
+        }
+
+        private void add(final long self, final long total) {
+            this.self += self;
+            this.total += total;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public long getSelf() {
+            return this.self;
+        }
+
+        public long getTotal() {
+            return this.total;
+        }
+    }
+
+    private final Entry method;
+    private final List<Entry> callers;
+    private final List<Entry> callees;
+
+    private Butterfly(final Entry method, final List<Entry> callers, final List<Entry> callees) {
+        this.method = method;
+        this.callers = callers;
+        this.callees = callees;
+    }
+
+    /**
+     * Walks the tree of the flame graph once.
+     *
+     * @param name the name of the method like in the flame graph, {@code className.methodName}
+     * @return the callers and callees in descending order of their total values, or null if the flame graph has
+     * no such method
+     */
+    public static Butterfly of(final FlameGraph graph, final String name) {
+        final FrameTree tree = graph.getTree();
+        final int symbol = tree.symbolNamed(name);
+        if (symbol == FrameTree.NONE) {
+            return null;
+        }
+        final Walk walk = new Walk(tree, symbol, new Entry(name));
+        walk.visit(FrameTree.ROOT, 0);
+        return new Butterfly(walk.method, sorted(walk.callers), sorted(walk.callees));
+    }
+
+    private static List<Entry> sorted(final Map<Integer, Entry> entries) {
+        return entries.values().stream()
+                .sorted(Comparator.comparingLong(Entry::getTotal).reversed())
+                .toList();
+    }
+
+    private static class Walk {
+
+        private final FrameTree tree;
+        private final int symbol;
+        private final Entry method;
+        private final Map<Integer, Entry> callers = new HashMap<>();
+        private final Map<Integer, Entry> callees = new HashMap<>();
+
+        private Walk(final FrameTree tree, final int symbol, final Entry method) {
+            this.tree = tree;
+            this.symbol = symbol;
+            this.method = method;
+        }
+
+        /**
+         * @param enclosing the number of frames of the method on the call path of the node
+         */
+        private void visit(final int node, final int enclosing) {
+            for (int child = this.tree.firstChildOf(node); child != FrameTree.NONE;
+                 child = this.tree.nextSiblingOf(child)) {
+                if (this.tree.symbolOf(child) != this.symbol) {
+                    visit(child, enclosing);
+                    continue;
+                }
+                final long self = this.tree.selfValueOf(child);
+                final long total = this.tree.valueOf(child);
+                this.method.add(self, enclosing == 0 ? total : 0);
+                if (node != FrameTree.ROOT) {
+                    entryOf(this.callers, node).add(self, total);
+                }
+                for (int callee = this.tree.firstChildOf(child); callee != FrameTree.NONE;
+                     callee = this.tree.nextSiblingOf(callee)) {
+                    entryOf(this.callees, callee).add(this.tree.selfValueOf(callee), this.tree.valueOf(callee));
+                }
+                visit(child, enclosing + 1);
+            }
+        }
+
+        private Entry entryOf(final Map<Integer, Entry> entries, final int node) {
+            return entries.computeIfAbsent(this.tree.symbolOf(node), key -> new Entry(this.tree.nameOf(node)));
+        }
+    }
+
+    /**
+     * @return the method itself with its self and total values
+     */
+    public Entry getMethod() {
+        return this.method;
+    }
+
+    public List<Entry> getCallers() {
+        return this.callers;
+    }
+
+    public List<Entry> getCallees() {
+        return this.callees;
+    }
+}
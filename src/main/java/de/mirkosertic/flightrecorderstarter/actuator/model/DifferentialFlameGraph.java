@@ -0,0 +1,76 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.actuator.model;
+
+/**
+ * Flame graph of a candidate recording compared to a baseline recording. It has the frames and values of the
+ * candidate, and every node has a delta to the value of the same call path in the baseline. The baseline values
+ * are normalized to the total of the candidate first, so recordings of different length can be compared. Call
+ * paths only found in the baseline are not part of the graph.
+ * <p>
+ * The tree of the candidate is shared and not copied, so only an array of deltas is allocated.
+ */
+public class DifferentialFlameGraph extends FlameGraph {
+
+    private final long[] deltaOf;
+
+    private DifferentialFlameGraph(final FrameTree tree, final long[] deltaOf) {
+        super(tree, true);
+        this.deltaOf = deltaOf;
+    }
+
+    /**
+     * Compares two flame graphs by walking the tree of the candidate once, looking up the same call paths in the
+     * tree of the baseline.
+     */
+    public static DifferentialFlameGraph of(final FlameGraph baseline, final FlameGraph candidate) {
+        final FrameTree baselineTree = baseline.getTree();
+        final FrameTree candidateTree = candidate.getTree();
+        final long baselineTotal = baselineTree.totalValue();
+        final double scale = baselineTotal == 0 ? 0 : (double) candidateTree.totalValue() / baselineTotal;
+
+        final long[] deltaOf = new long[candidateTree.size()];
+        addDeltas(baselineTree, FrameTree.ROOT, candidateTree, FrameTree.ROOT, scale, deltaOf);
+        return new DifferentialFlameGraph(candidateTree, deltaOf);
+    }
+
+    private static void addDeltas(final FrameTree baseline, final int baselineNode, final FrameTree candidate,
+                                  final int candidateNode, final double scale, final long[] deltaOf) {
+        for (int child = candidate.firstChildOf(candidateNode); child != FrameTree.NONE;
+             child = candidate.nextSiblingOf(child)) {
+            final int baselineChild = baselineNode == FrameTree.NONE
+                    ? FrameTree.NONE
+                    : baseline.childLike(baselineNode, candidate, child);
+            final long baselineValue = baselineChild == FrameTree.NONE ? 0 : baseline.valueOf(baselineChild);
+            deltaOf[child] = candidate.valueOf(child) - Math.round(baselineValue * scale);
+            addDeltas(baseline, baselineChild, candidate, child, scale, deltaOf);
+        }
+    }
+
+    /**
+     * @return the value of the node minus the normalized value of the same call path in the baseline
+     */
+    public long deltaOf(final int node) {
+        return this.deltaOf[node];
+    }
+
+    /**
+     * @return the number of deltas, one per node of the tree of the candidate
+     */
+    public int getDeltaCount() {
+        return this.deltaOf.length;
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.actuator.model;
+
+import jdk.jfr.consumer.RecordedClass;
+import jdk.jfr.consumer.RecordedEvent;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Selects the events a flame graph is built from, the weight of every event and an optional leaf frame added
+ * below the stack trace of an event. Profiles are equal if they have the same name, so they can be part of cache
+ * keys.
+ * <p>
+ * A profile can have fallback event types, which are only used if the recording does not contain any events of the
+ * primary event types they replace. This way events measuring the same thing are not counted twice.
+ * <p>
+ * Events of sampled event types weigh the sampling period, which is only known from the {@code jdk.ActiveSetting}
+ * events of the recording. Since these are usually written after the samples, the samples are counted first and
+ * multiplied by the period once the recording has been read.
+ */
+public final class EventProfile {
+
+    public static final String EXECUTION_SAMPLE = "jdk.ExecutionSample";
+    public static final String OBJECT_ALLOCATION_SAMPLE = "jdk.ObjectAllocationSample";
+    public static final String OBJECT_ALLOCATION_IN_NEW_TLAB = "jdk.ObjectAllocationInNewTLAB";
+    public static final String OBJECT_ALLOCATION_OUTSIDE_TLAB = "jdk.ObjectAllocationOutsideTLAB";
+    public static final String JAVA_MONITOR_ENTER = "jdk.JavaMonitorEnter";
+    public static final String JAVA_MONITOR_WAIT = "jdk.JavaMonitorWait";
+    public static final String THREAD_PARK = "jdk.ThreadPark";
+    public static final String NATIVE_METHOD_SAMPLE = "jdk.NativeMethodSample";
+    public static final String SOCKET_READ = "jdk.SocketRead";
+    public static final String SOCKET_WRITE = "jdk.SocketWrite";
+    public static final String FILE_READ = "jdk.FileRead";
+    public static final String FILE_WRITE = "jdk.FileWrite";
+    public static final String ACTIVE_SETTING = "jdk.ActiveSetting";
+
+    /**
+     * The sampling period of the default and the profile configuration for native methods, used if a recording
+     * does not contain the period of a sampled event type.
+     */
+    public static final long DEFAULT_PERIOD_NANOS = 20_000_000L;
+
+    /**
+     * On-CPU samples of Java code, every sample weighs one.
+     */
+    public static final EventProfile EXECUTION_SAMPLES = new EventProfile("cpu", "count", Set.of(EXECUTION_SAMPLE), Set.of(),
+            Set.of(), Set.of(), event -> 1, event -> null);
+
+    /**
+     * Wall-clock time in nanoseconds. Samples of threads running Java code and of threads in native methods weigh
+     * their sampling period. A thread blocked in socket or file I/O is in a native method, so the I/O is already
+     * part of the native method samples. The I/O events are only used if the recording contains no native method
+     * samples, weighted by their duration. Like the lock events, they are only recorded if they take longer than the
+     * threshold of the event settings.
+     */
+    public static final EventProfile WALL_CLOCK = new EventProfile("wall", "nanoseconds",
+            Set.of(EXECUTION_SAMPLE, NATIVE_METHOD_SAMPLE), Set.of(SOCKET_READ, SOCKET_WRITE, FILE_READ, FILE_WRITE),
+            Set.of(NATIVE_METHOD_SAMPLE), Set.of(EXECUTION_SAMPLE, NATIVE_METHOD_SAMPLE),
+            event -> event.getDuration().toNanos(), event -> null);
+
+    private final String name;
+    private final String unit;
+    private final Set<String> eventTypes;
+    private final Set<String> fallbackEventTypes;
+    private final Set<String> replacedEventTypes;
+    private final Set<String> sampledEventTypes;
+    private final ToLongFunction<RecordedEvent> weight;
+    private final Function<RecordedEvent, String> leafClassName;
+    private final boolean lineNumbers;
+    private final ThreadGrouping threads;
+
+    private EventProfile(final String name, final String unit, final Set<String> eventTypes,
+                         final Set<String> fallbackEventTypes, final Set<String> replacedEventTypes,
+                         final Set<String> sampledEventTypes, final ToLongFunction<RecordedEvent> weight,
+                         final Function<RecordedEvent, String> leafClassName) {
+        this(name, unit, eventTypes, fallbackEventTypes, replacedEventTypes, sampledEventTypes, weight, leafClassName,
+                false, ThreadGrouping.NONE);
+    }
+
+    private EventProfile(final String name, final String unit, final Set<String> eventTypes,
+                         final Set<String> fallbackEventTypes, final Set<String> replacedEventTypes,
+                         final Set<String> sampledEventTypes, final ToLongFunction<RecordedEvent> weight,
+                         final Function<RecordedEvent, String> leafClassName, final boolean lineNumbers,
+                         final ThreadGrouping threads) {
+        this.name = name;
+        this.unit = unit;
+        this.eventTypes = eventTypes;
+        this.fallbackEventTypes = fallbackEventTypes;
+        this.replacedEventTypes = replacedEventTypes;
+        this.sampledEventTypes = sampledEventTypes;
+        this.weight = weight;
+        this.leafClassName = leafClassName;
+        this.lineNumbers = lineNumbers;
+        this.threads = threads;
+    }
+
+    /**
+     * @return the same profile, but the frames of different lines of a method are kept apart, see
+     * {@link FrameTree#FrameTree(boolean)}
+     */
+    public EventProfile withLineNumbers() {
+        if (this.lineNumbers) {
+            return this;
+        }
+        return new EventProfile(this.name + "-lines", this.unit, this.eventTypes, this.fallbackEventTypes,
+                this.replacedEventTypes, this.sampledEventTypes, this.weight, this.leafClassName, true, this.threads);
+    }
+
+    /**
+     * @return the same profile, but the stack traces are grouped and selected by their threads, see
+     * {@link ThreadGrouping}
+     */
+    public EventProfile withThreads(final ThreadGrouping threads) {
+        if (threads.isNone() || this.threads.equals(threads)) {
+            return this;
+        }
+        return new EventProfile(this.name + "-" + threads.getName(), this.unit, this.eventTypes,
+                this.fallbackEventTypes, this.replacedEventTypes, this.sampledEventTypes, this.weight,
+                this.leafClassName, this.lineNumbers, threads);
+    }
+
+    /**
+     * Allocated bytes. {@code jdk.ObjectAllocationSample} events are weighted by the bytes allocated since the
+     * previous sample. Recordings without them, e.g. from Java versions before 16, fall back to the TLAB events
+     * if they are enabled, weighted by the size of the new TLAB or of the object allocated outside a TLAB.
+     *
+     * @param allocatedClassAsLeaf adds the class of the allocated object as the leaf frame
+     */
+    public static EventProfile allocations(final boolean allocatedClassAsLeaf) {
+        return new EventProfile(allocatedClassAsLeaf ? "allocations-by-class" : "allocations", "bytes",
+                Set.of(OBJECT_ALLOCATION_SAMPLE),
+                Set.of(OBJECT_ALLOCATION_IN_NEW_TLAB, OBJECT_ALLOCATION_OUTSIDE_TLAB), Set.of(OBJECT_ALLOCATION_SAMPLE),
+                Set.of(), EventProfile::allocatedBytes,
+                allocatedClassAsLeaf ? event -> typeNameOf(event.getClass("objectClass").getName()) : event -> null);
+    }
+
+    /**
+     * Time spent blocked on monitors and in {@code LockSupport.park}, weighted by the duration of the events in
+     * nanoseconds. Only events longer than the threshold of the event settings are recorded, which is 20 ms in
+     * the default and the profile configuration.
+     *
+     * @param monitorClassAsLeaf adds the class of the monitor or of the object the thread parked on as the leaf
+     *                           frame
+     */
+    public static EventProfile locks(final boolean monitorClassAsLeaf) {
+        return new EventProfile(monitorClassAsLeaf ? "locks-by-class" : "locks", "nanoseconds",
+                Set.of(JAVA_MONITOR_ENTER, JAVA_MONITOR_WAIT, THREAD_PARK), Set.of(), Set.of(), Set.of(),
+                event -> event.getDuration().toNanos(),
+                monitorClassAsLeaf ? EventProfile::monitorClassNameOf : event -> null);
+    }
+
+    /**
+     * @return the class of the monitor of a monitor event, or the class of the object a thread parked on, which
+     * is null if no blocker was passed to {@code LockSupport.park}
+     */
+    public static String monitorClassNameOf(final RecordedEvent event) {
+        final String field = THREAD_PARK.equals(event.getEventType().getName()) ? "parkedClass" : "monitorClass";
+        if (!event.hasField(field)) {
+            return null;
+        }
+        final RecordedClass monitorClass = event.getClass(field);
+        return monitorClass == null ? null : typeNameOf(monitorClass.getName());
+    }
+
+    /**
+     * Converts the binary names of array classes like {@code [B} or {@code [Ljava.lang.String;} to the names
+     * used in Java source code.
+     */
+    static String typeNameOf(final String className) {
+        if (className == null || !className.startsWith("[")) {
+            return className;
+        }
+        final int dimensions = className.lastIndexOf('[') + 1;
+        final String elementType = switch (className.charAt(dimensions)) {
+            case 'Z' -> "boolean";
+            case 'B' -> "byte";
+            case 'C' -> "char";
+            case 'S' -> "short";
+            case 'I' -> "int";
+            case 'J' -> "long";
+            case 'F' -> "float";
+            case 'D' -> "double";
+            default -> className.substring(dimensions + 1, className.length() - 1);
+        };
+        return elementType + "[]".repeat(dimensions);
+    }
+
+    /**
+     * Parses the value of a {@code period} setting like {@code 20 ms}.
+     *
+     * @return the period in nanoseconds, or -1 for values like {@code everyChunk} or {@code off}
+     */
+    static long periodNanosOf(final String value) {
+        final String[] parts = value.trim().split("\\s+");
+        if (parts.length != 2) {
+            return -1;
+        }
+        final long amount;
+        try {
+            amount = Long.parseLong(parts[0]);
+        } catch (final NumberFormatException e) {
+            return -1;
+        }
+        final TimeUnit unit = switch (parts[1]) {
+            case "ns" -> TimeUnit.NANOSECONDS;
+            case "us" -> TimeUnit.MICROSECONDS;
+            case "ms" -> TimeUnit.MILLISECONDS;
+            case "s" -> TimeUnit.SECONDS;
+            case "m" -> TimeUnit.MINUTES;
+            case "h" -> TimeUnit.HOURS;
+            case "d" -> TimeUnit.DAYS;
+            default -> null;
+        };
+        return unit == null || amount <= 0 ? -1 : unit.toNanos(amount);
+    }
+
+    private static long allocatedBytes(final RecordedEvent event) {
+        return switch (event.getEventType().getName()) {
+            case OBJECT_ALLOCATION_SAMPLE -> event.getLong("weight");
+            case OBJECT_ALLOCATION_IN_NEW_TLAB -> event.getLong("tlabSize");
+            default -> event.getLong("allocationSize");
+        };
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * @return the unit of the weights, {@code count}, {@code nanoseconds} or {@code bytes}
+     */
+    public String getUnit() {
+        return this.unit;
+    }
+
+    public Set<String> getEventTypes() {
+        return this.eventTypes;
+    }
+
+    public Set<String> getFallbackEventTypes() {
+        return this.fallbackEventTypes;
+    }
+
+    /**
+     * @return true if the fallback event types are only used if the recording contains no events of the type
+     */
+    public boolean isReplacedByFallback(final String eventType) {
+        return this.replacedEventTypes.contains(eventType);
+    }
+
+    /**
+     * @return the primary and the fallback event types
+     */
+    public Set<String> getAllEventTypes() {
+        final Set<String> eventTypes = new HashSet<>(this.eventTypes);
+        eventTypes.addAll(this.fallbackEventTypes);
+        return eventTypes;
+    }
+
+    /**
+     * @return true if the events of the type weigh the sampling period instead of {@link #weightOf}
+     */
+    public boolean isSampled(final String eventType) {
+        return this.sampledEventTypes.contains(eventType);
+    }
+
+    public boolean hasSampledEventTypes() {
+        return !this.sampledEventTypes.isEmpty();
+    }
+
+    public long weightOf(final RecordedEvent event) {
+        return this.weight.applyAsLong(event);
+    }
+
+    public boolean hasLineNumbers() {
+        return this.lineNumbers;
+    }
+
+    public ThreadGrouping getThreads() {
+        return this.threads;
+    }
+
+    /**
+     * @return the class name of the leaf frame for the event, or null if there is none
+     */
+    public String leafClassNameOf(final RecordedEvent event) {
+        return this.leafClassName.apply(event);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        return this.name.equals(((EventProfile) o).name);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.name.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return this.name;
+    }
+}
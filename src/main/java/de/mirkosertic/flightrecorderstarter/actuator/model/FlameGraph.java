@@ -16,20 +16,24 @@
 package de.mirkosertic.flightrecorderstarter.actuator.model;
 
 import jdk.jfr.consumer.RecordedEvent;
-import jdk.jfr.consumer.RecordedFrame;
-import jdk.jfr.consumer.RecordedStackTrace;
-import jdk.jfr.consumer.RecordingFile;
+import jdk.jfr.consumer.RecordedThread;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 public class FlameGraph {
 
     public static class Node {
         private String name;
-        private int value;
+        private long value;
         private final Map<String, Node> children;
+        private List<Node> sortedChildren;
 
         private Node() {
             this.children = new HashMap<>();
@@ -42,8 +46,13 @@ public class FlameGraph {
         }
 
         public Node childByName(final String nameOf) {
+            return childByName(nameOf, 1);
+        }
+
+        Node childByName(final String nameOf, final long samples) {
             final Node node = this.children.computeIfAbsent(nameOf, Node::new);
-            node.value++;
+            node.value += samples;
+            this.sortedChildren = null;
             return node;
         }
 
@@ -51,14 +60,17 @@ public class FlameGraph {
             return this.name;
         }
 
-        public int getValue() {
+        public long getValue() {
             return this.value;
         }
 
         public List<Node> getChildren() {
-            final List<Node> nodes = new ArrayList<>(this.children.values());
-            nodes.sort(Comparator.comparingInt(o -> o.value));
-            return nodes;
+            if (this.sortedChildren == null) {
+                final List<Node> nodes = new ArrayList<>(this.children.values());
+                nodes.sort(Comparator.comparingLong(o -> o.value));
+                this.sortedChildren = Collections.unmodifiableList(nodes);
+            }
+            return this.sortedChildren;
         }
     }
 
@@ -82,52 +94,409 @@ public class FlameGraph {
                     && !className.contains("$$FastClassBySpringCGLIB$$")
                     && !className.contains("$$EnhancerBySpringCGLIB$$");
         }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            return this.prefix.equals(((PackageNamePrefixFrameFilter) o).prefix);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.prefix.hashCode();
+        }
     }
 
     public final static FrameFilter ALL = className -> true;
 
-    private final Node root;
+    private final FrameTree tree;
+    private Node root;
 
-    private FlameGraph(final Node root) {
-        this.root = root;
+    FlameGraph(final FrameTree tree) {
+        this(tree, false);
+    }
+
+    /**
+     * @param sorted true if the children of the tree are already sorted, e.g. because it is shared with another
+     *               flame graph, which must not be modified anymore
+     */
+    FlameGraph(final FrameTree tree, final boolean sorted) {
+        this.tree = tree;
+        if (!sorted) {
+            this.tree.sortChildren();
+        }
     }
 
     public static FlameGraph from(final File file, final FrameFilter frameFilter) throws IOException {
-        final Node rootNode = new Node("Recording");
-        try (final RecordingFile rf = new RecordingFile(file.toPath())) {
-            while (rf.hasMoreEvents()) {
-                final RecordedEvent event = rf.readEvent();
-                if ("jdk.ExecutionSample".equals(event.getEventType().getName())) {
-                    final RecordedStackTrace stackTrace = event.getStackTrace();
-                    final List<RecordedFrame> frames = stackTrace.getFrames();
-
-                    Node currentNode = rootNode;
-                    for (int i = frames.size() - 1; i >= 0; i--) {
-                        final RecordedFrame frame = frames.get(i);
-                        if (frame.isJavaFrame() && frameFilter.includes(frame.getMethod().getType().getName())) {
-                            currentNode = currentNode.childByName(nameOf(frame));
-                        }
-                    }
+        return from(file, EventProfile.EXECUTION_SAMPLES, frameFilter);
+    }
+
+    public static FlameGraph from(final File file, final EventProfile profile, final FrameFilter frameFilter)
+            throws IOException {
+        return from(file, profile, frameFilter, ForkJoinPool.commonPool());
+    }
+
+    public static FlameGraph from(final File file, final FrameFilter frameFilter, final ForkJoinPool pool)
+            throws IOException {
+        return from(file, EventProfile.EXECUTION_SAMPLES, frameFilter, pool);
+    }
+
+    public static FlameGraph from(final File file, final EventProfile profile, final FrameFilter frameFilter,
+                                  final ForkJoinPool pool) throws IOException {
+        return from(file, profile, frameFilter, FrameTransformation.NONE, pool);
+    }
+
+    public static FlameGraph from(final File file, final EventProfile profile, final FrameFilter frameFilter,
+                                  final FrameTransformation transformation) throws IOException {
+        return from(file, profile, frameFilter, transformation, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Parses the events of the profile from the recording. If the file consists of several chunks, the chunks
+     * are parsed in parallel on the given pool, and the partial trees are merged. The frames are transformed
+     * before they are filtered.
+     */
+    public static FlameGraph from(final File file, final EventProfile profile, final FrameFilter frameFilter,
+                                  final FrameTransformation transformation, final ForkJoinPool pool)
+            throws IOException {
+        if (pool.getParallelism() == 1) {
+            return new FlameGraph(parse(file.toPath(), profile, frameFilter, transformation, TimeWindow.ALL).result());
+        }
+        return from(RecordingIndex.of(file), profile, frameFilter, transformation, TimeWindow.ALL, pool);
+    }
+
+    public static FlameGraph from(final RecordingIndex index, final EventProfile profile,
+                                  final FrameFilter frameFilter, final FrameTransformation transformation,
+                                  final TimeWindow window) throws IOException {
+        return from(index, profile, frameFilter, transformation, window, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Parses the events of the profile starting within the time window. Only the chunks overlapping the window
+     * and the chunk following it are parsed, in parallel on the given pool if there are several of them, so a short window of a long
+     * recording is parsed in a fraction of the time.
+     */
+    public static FlameGraph from(final RecordingIndex index, final EventProfile profile,
+                                  final FrameFilter frameFilter, final FrameTransformation transformation,
+                                  final TimeWindow window, final ForkJoinPool pool) throws IOException {
+        final Path path = index.getFile().toPath();
+        final List<RecordingChunks.Chunk> chunks = index.chunksIn(window);
+        // Parsing the whole file saves copying the chunks into files of their own
+        if (index.getChunkCount() == 0 || chunks.size() == index.getChunkCount()
+                && (chunks.size() == 1 || pool.getParallelism() == 1)) {
+            return new FlameGraph(parse(path, profile, frameFilter, transformation, window).result());
+        }
+        if (chunks.isEmpty()) {
+            return new FlameGraph(new FrameTree(profile.hasLineNumbers(), transformation));
+        }
+        if (chunks.size() == 1 || pool.getParallelism() == 1) {
+            // The chunks overlapping the window follow each other, so they are parsed as one file
+            return new FlameGraph(parse(path, RecordingChunks.spanOf(chunks), profile, frameFilter, transformation,
+                    window).result());
+        }
+        try {
+            return new FlameGraph(pool.invoke(new ChunkTask(path, chunks, profile, frameFilter, transformation,
+                    window)).result());
+        } catch (final UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static ProfileTrees parse(final Path path, final EventProfile profile, final FrameFilter frameFilter,
+                                      final FrameTransformation transformation, final TimeWindow window)
+            throws IOException {
+        final RecordingAnalysis analysis = new RecordingAnalysis(path);
+        final ProfileTrees trees = analysis.add(new ProfileTrees(profile, frameFilter, transformation, window));
+        analysis.run();
+        return trees;
+    }
+
+    private static ProfileTrees parse(final Path path, final RecordingChunks.Chunk chunk, final EventProfile profile,
+                                      final FrameFilter frameFilter, final FrameTransformation transformation,
+                                      final TimeWindow window) throws IOException {
+        final Path chunkFile = RecordingChunks.extract(path, chunk);
+        try {
+            return parse(chunkFile, profile, frameFilter, transformation, window);
+        } finally {
+            Files.deleteIfExists(chunkFile);
+        }
+    }
+
+    /**
+     * @return an analyzer building the flame graph of the profile from the events starting within the time window,
+     * so several flame graphs and other analyses share one pass over a recording
+     */
+    public static ProfileTrees analyzerOf(final EventProfile profile, final FrameFilter frameFilter,
+                                          final FrameTransformation transformation, final TimeWindow window) {
+        return new ProfileTrees(profile, frameFilter, transformation, window);
+    }
+
+    /**
+     * The trees of the primary and the fallback events of a profile, the fallback is only used if there are no
+     * events of the primary event types it replaces. Samples are counted in a tree per event type id, and multiplied by the sampling
+     * period of their event type when the result is taken.
+     */
+    public static final class ProfileTrees implements RecordingAnalysis.Analyzer {
+
+        private static final int MAX_MEMOIZED_THREADS = 65_536;
+        // Compared by identity, so it never equals the name of a thread
+        private static final String EXCLUDED_THREAD = new String("excluded");
+
+        private final EventProfile profile;
+        private final FrameFilter frameFilter;
+        private final boolean lineNumbers;
+        private final FrameTransformation transformation;
+        private final TimeWindow window;
+        private final Set<String> eventTypes;
+        private FrameTree events;
+        private FrameTree fallbackEvents;
+        private long replacedEventCount;
+        private final Map<Long, FrameTree> samples = new HashMap<>();
+        private final Map<Long, Long> periods = new HashMap<>();
+        private final Map<RecordedThread, String> threadFrames = new IdentityHashMap<>();
+
+        private ProfileTrees(final EventProfile profile, final FrameFilter frameFilter,
+                             final FrameTransformation transformation, final TimeWindow window) {
+            this.profile = profile;
+            this.frameFilter = frameFilter;
+            this.lineNumbers = profile.hasLineNumbers();
+            this.transformation = transformation;
+            this.window = window;
+            final Set<String> eventTypes = profile.getAllEventTypes();
+            if (profile.hasSampledEventTypes()) {
+                eventTypes.add(EventProfile.ACTIVE_SETTING);
+            }
+            this.eventTypes = Set.copyOf(eventTypes);
+            this.events = new FrameTree(this.lineNumbers, transformation);
+        }
+
+        @Override
+        public Set<String> eventTypes() {
+            return this.eventTypes;
+        }
+
+        @Override
+        public void accept(final RecordedEvent event) {
+            final String eventType = event.getEventType().getName();
+            if (EventProfile.ACTIVE_SETTING.equals(eventType)) {
+                if ("period".equals(event.getString("name"))) {
+                    period(event.getLong("id"), EventProfile.periodNanosOf(event.getString("value")));
                 }
+                return;
+            }
+            // Counted before the events are selected, as the fallback depends on the events being recorded at all
+            if (this.profile.isReplacedByFallback(eventType)) {
+                this.replacedEventCount++;
+            }
+            if (!this.window.isAll() && !this.window.contains(event.getStartTime())) {
+                return;
+            }
+            String groupName = null;
+            if (!this.profile.getThreads().isNone()) {
+                groupName = threadFrameOf(ThreadGrouping.threadOf(event), this.profile.getThreads());
+                if (groupName == null) {
+                    return;
+                }
+                if (groupName.isEmpty()) {
+                    groupName = null;
+                }
+            }
+            if (this.profile.getEventTypes().contains(eventType)) {
+                if (this.profile.isSampled(eventType)) {
+                    // Counted for now, the sampling period is applied once the whole recording has been read
+                    samplesOf(event.getEventType().getId()).addStackTrace(event.getStackTrace(), groupName,
+                            this.profile.leafClassNameOf(event), this.frameFilter, 1);
+                } else {
+                    add(this.events, event, groupName);
+                }
+            } else {
+                if (this.fallbackEvents == null) {
+                    this.fallbackEvents = new FrameTree(this.lineNumbers, this.transformation);
+                }
+                add(this.fallbackEvents, event, groupName);
+            }
+        }
+
+        private void add(final FrameTree tree, final RecordedEvent event, final String groupName) {
+            tree.addStackTrace(event.getStackTrace(), groupName, this.profile.leafClassNameOf(event),
+                    this.frameFilter, this.profile.weightOf(event));
+        }
+
+        /**
+         * Releases the memoized methods and threads of the parser once a recording has been read, so they are not
+         * kept alive by a cached tree.
+         */
+        @Override
+        public void finish() {
+            this.events.forgetMethods();
+            if (this.fallbackEvents != null) {
+                this.fallbackEvents.forgetMethods();
+            }
+            this.samples.values().forEach(FrameTree::forgetMethods);
+            this.threadFrames.clear();
+        }
+
+        /**
+         * @return the flame graph, once the recording has been read
+         */
+        public FlameGraph toFlameGraph() {
+            return new FlameGraph(result());
+        }
+
+        /**
+         * Returns the name of the group frame of a thread. Like methods, threads are resolved once per chunk
+         * and shared between all events, so the name is memoized by the identity of the thread.
+         *
+         * @return the name, an empty name without a group frame, or null if the events of the thread are
+         * excluded
+         */
+        private String threadFrameOf(final RecordedThread thread, final ThreadGrouping threads) {
+            String frame = this.threadFrames.get(thread);
+            if (frame == null) {
+                if (this.threadFrames.size() == MAX_MEMOIZED_THREADS) {
+                    this.threadFrames.clear();
+                }
+                frame = threads.frameNameOf(thread);
+                this.threadFrames.put(thread, frame == null ? EXCLUDED_THREAD : frame);
+            }
+            return frame == EXCLUDED_THREAD ? null : frame;
+        }
+
+        private FrameTree samplesOf(final long eventTypeId) {
+            return this.samples.computeIfAbsent(eventTypeId, id -> new FrameTree(this.lineNumbers, this.transformation));
+        }
+
+        /**
+         * If several recordings were running, the shortest period was in effect.
+         */
+        private void period(final long eventTypeId, final long periodNanos) {
+            if (periodNanos > 0) {
+                this.periods.merge(eventTypeId, periodNanos, Math::min);
+            }
+        }
+
+        private FrameTree result() {
+            for (final Map.Entry<Long, FrameTree> sampled : this.samples.entrySet()) {
+                this.events.addAll(sampled.getValue(), ALL,
+                        this.periods.getOrDefault(sampled.getKey(), EventProfile.DEFAULT_PERIOD_NANOS));
+            }
+            this.samples.clear();
+            if (this.replacedEventCount == 0 && this.fallbackEvents != null) {
+                this.events = merge(this.events, this.fallbackEvents);
+                this.fallbackEvents = null;
+            }
+            return this.events;
+        }
+
+        private ProfileTrees merge(final ProfileTrees other) {
+            this.events = merge(this.events, other.events);
+            this.fallbackEvents = merge(this.fallbackEvents, other.fallbackEvents);
+            this.replacedEventCount += other.replacedEventCount;
+            for (final Map.Entry<Long, FrameTree> sampled : other.samples.entrySet()) {
+                this.samples.merge(sampled.getKey(), sampled.getValue(), ProfileTrees::merge);
+            }
+            other.periods.forEach(this::period);
+            return this;
+        }
+
+        private static FrameTree merge(final FrameTree tree, final FrameTree other) {
+            if (tree == null || other == null) {
+                return tree == null ? other : tree;
+            }
+            // Merging costs the size of the merged tree, so the smaller one is merged into the larger one
+            if (tree.size() >= other.size()) {
+                tree.addAll(other, ALL);
+                return tree;
+            }
+            other.addAll(tree, ALL);
+            return other;
+        }
+    }
+
+    // Tasks are never serialized, ForkJoinTask is only Serializable for historical reasons
+    @SuppressWarnings("serial")
+    private static class ChunkTask extends RecursiveTask<ProfileTrees> {
+
+        private final Path file;
+        private final List<RecordingChunks.Chunk> chunks;
+        private final EventProfile profile;
+        private final FrameFilter frameFilter;
+        private final FrameTransformation transformation;
+        private final TimeWindow window;
+
+        private ChunkTask(final Path file, final List<RecordingChunks.Chunk> chunks, final EventProfile profile,
+                          final FrameFilter frameFilter, final FrameTransformation transformation,
+                          final TimeWindow window) {
+            this.file = file;
+            this.chunks = chunks;
+            this.profile = profile;
+            this.frameFilter = frameFilter;
+            this.transformation = transformation;
+            this.window = window;
+        }
+
+        @Override
+        protected ProfileTrees compute() {
+            if (this.chunks.size() == 1) {
+                return parseChunk(this.chunks.get(0));
+            }
+            final int middle = this.chunks.size() / 2;
+            final ChunkTask left = new ChunkTask(this.file, this.chunks.subList(0, middle), this.profile,
+                    this.frameFilter, this.transformation, this.window);
+            left.fork();
+            final ProfileTrees right = new ChunkTask(this.file, this.chunks.subList(middle, this.chunks.size()),
+                    this.profile, this.frameFilter, this.transformation, this.window).compute();
+            return left.join().merge(right);
+        }
+
+        private ProfileTrees parseChunk(final RecordingChunks.Chunk chunk) {
+            try {
+                return parse(this.file, chunk, this.profile, this.frameFilter, this.transformation, this.window);
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
             }
         }
-        return new FlameGraph(rootNode);
     }
 
     public static FlameGraph from(final File file) throws IOException {
         return from(file, ALL);
     }
 
-    public Node getRoot() {
-        return this.root;
+    /**
+     * @return the tree of the flame graph, the children of every node are sorted in ascending order of their values
+     */
+    public FrameTree getTree() {
+        return this.tree;
     }
 
-    private static String nameOf(final RecordedFrame frame) {
-        final String className = frame.getMethod().getType().getName();
-        final String methodName = frame.getMethod().getName();
-        final String descriptor = frame.getMethod().getDescriptor();
-        final int lineNumber = frame.getLineNumber();
+    /**
+     * @return the bottom-up flame graph, which starts at the methods the samples were taken in and continues with
+     * their callers, see {@link FrameTree#inverted()}
+     */
+    public FlameGraph inverted() {
+        return new FlameGraph(this.tree.inverted());
+    }
+
+    /**
+     * @return the root of the tree as {@link Node} objects, which are only created on the first call
+     */
+    public synchronized Node getRoot() {
+        if (this.root == null) {
+            final Node rootNode = new Node("Recording");
+            addChildren(FrameTree.ROOT, rootNode);
+            this.root = rootNode;
+        }
+        return this.root;
+    }
 
-        return className + "." + methodName;
+    private void addChildren(final int node, final Node target) {
+        for (int child = this.tree.firstChildOf(node); child != FrameTree.NONE; child = this.tree.nextSiblingOf(child)) {
+            addChildren(child, target.childByName(this.tree.nameOf(child), this.tree.valueOf(child)));
+        }
     }
 }
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.actuator.model;
+
+import jdk.jfr.consumer.RecordedStackTrace;
+
+/**
+ * Builds a flame graph incrementally, one stack trace at a time, e.g. while execution samples are streamed from a
+ * running recording. The stack traces are kept unfiltered, so a flame graph for any {@link FlameGraph.FrameFilter}
+ * can be derived at any time without reading the recording file.
+ * <p>
+ * The tree is unbounded: it has a node for every distinct stack trace suffix added, and is kept until the
+ * aggregator is discarded.
+ * <p>
+ * Instances are thread safe.
+ */
+public class FlameGraphAggregator {
+
+    private final FrameTree tree = new FrameTree();
+    private long sampleCount;
+
+    public synchronized void add(final RecordedStackTrace stackTrace) {
+        if (stackTrace == null) {
+            return;
+        }
+        this.sampleCount++;
+        this.tree.addStackTrace(stackTrace, FlameGraph.ALL, 1);
+    }
+
+    public synchronized long getSampleCount() {
+        return this.sampleCount;
+    }
+
+    /**
+     * Creates the flame graph of all stack traces added so far. It equals the graph created by
+     * {@link FlameGraph#from(java.io.File, FlameGraph.FrameFilter)} from a recording with exactly the added samples.
+     * A stream started after a recording misses its first samples, so its graph only approximates the recording.
+     */
+    public FlameGraph toFlameGraph(final FlameGraph.FrameFilter frameFilter) {
+        return toFlameGraph(frameFilter, FrameTransformation.NONE);
+    }
+
+    /**
+     * Creates the flame graph of all stack traces added so far, with transformed frames. The stack traces are
+     * kept untransformed, so any transformation can be applied.
+     */
+    public synchronized FlameGraph toFlameGraph(final FlameGraph.FrameFilter frameFilter,
+                                                final FrameTransformation transformation) {
+        final FrameTree filtered = new FrameTree(false, transformation);
+        filtered.addAll(this.tree, frameFilter);
+        return new FlameGraph(filtered);
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.actuator.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Transforms the frames of the stack traces while they are added to a flame graph, so frames without meaning for
+ * the reader do not split the graph into many near-identical branches. The transformers are applied in order to
+ * every method, and once per method, since their results are memoized by the {@link FrameTree}. Direct recursion
+ * is folded into the outermost call of a method if enabled.
+ * <p>
+ * The pipeline is configured by the names of {@link #of(List)}.
+ */
+public final class FrameTransformation {
+
+    public static final String COLLAPSE_PROXIES = "collapse-proxies";
+    public static final String COLLAPSE_REFLECTION = "collapse-reflection";
+    public static final String NORMALIZE_LAMBDAS = "normalize-lambdas";
+    public static final String FOLD_RECURSION = "fold-recursion";
+
+    /**
+     * Keeps all frames as they are.
+     */
+    public static final FrameTransformation NONE = new FrameTransformation(List.of(), false);
+
+    /**
+     * The class and the method of a frame.
+     */
+    public record Frame(String className, String methodName) {
+    }
+
+    @FunctionalInterface
+    public interface FrameTransformer {
+
+        /**
+         * @return the frame itself, a different frame, or null to collapse the frame into its caller
+         */
+        Frame transform(final Frame frame);
+
+    }
+
+    /**
+     * Collapses the frames of Spring CGLIB proxies and of JDK dynamic proxies, so the calls through a proxy are
+     * shown like direct calls.
+     */
+    public static final FrameTransformer PROXIES = frame -> {
+        final String className = frame.className();
+        if (className.contains("$$SpringCGLIB$$") || className.contains("$$EnhancerBySpringCGLIB$$")
+                || className.contains("$$FastClassBySpringCGLIB$$")
+                || className.substring(className.lastIndexOf('.') + 1).startsWith("$Proxy")) {
+            return null;
+        }
+        return frame;
+    };
+
+    /**
+     * Collapses the frames of reflective calls and method handles, so a method invoked by reflection is shown
+     * like called directly.
+     */
+    public static final FrameTransformer REFLECTION = frame -> {
+        final String className = frame.className();
+        if (className.startsWith("jdk.internal.reflect.") || className.startsWith("sun.reflect.")
+                || className.startsWith("java.lang.invoke.")
+                || ("java.lang.reflect.Method".equals(className) && "invoke".equals(frame.methodName()))) {
+            return null;
+        }
+        return frame;
+    };
+
+    /**
+     * Removes the generated suffix of lambda classes, like {@code Service$$Lambda/0x0000000800c4f040} or
+     * {@code Service$$Lambda$827.69267246}, so the frames of a lambda are the same in every run of the
+     * application and the lambdas of a class are shown as one.
+     */
+    public static final FrameTransformer LAMBDAS = frame -> {
+        final int lambda = frame.className().indexOf("$$Lambda");
+        if (lambda < 0 || frame.className().length() == lambda + "$$Lambda".length()) {
+            return frame;
+        }
+        return new Frame(frame.className().substring(0, lambda + "$$Lambda".length()), frame.methodName());
+    };
+
+    private final List<FrameTransformer> transformers;
+    private final boolean foldRecursion;
+
+    public FrameTransformation(final List<FrameTransformer> transformers, final boolean foldRecursion) {
+        this.transformers = List.copyOf(transformers);
+        this.foldRecursion = foldRecursion;
+    }
+
+    /**
+     * Creates the pipeline from the names {@value #COLLAPSE_PROXIES}, {@value #COLLAPSE_REFLECTION},
+     * {@value #NORMALIZE_LAMBDAS} and {@value #FOLD_RECURSION}.
+     *
+     * @throws IllegalArgumentException for unknown names
+     */
+    public static FrameTransformation of(final List<String> names) {
+        final List<FrameTransformer> transformers = new ArrayList<>();
+        boolean foldRecursion = false;
+        for (final String name : names) {
+            switch (name.trim()) {
+                case COLLAPSE_PROXIES -> transformers.add(PROXIES);
+                case COLLAPSE_REFLECTION -> transformers.add(REFLECTION);
+                case NORMALIZE_LAMBDAS -> transformers.add(LAMBDAS);
+                case FOLD_RECURSION -> foldRecursion = true;
+                default -> throw new IllegalArgumentException("Unknown frame transformer " + name);
+            }
+        }
+        return transformers.isEmpty() && !foldRecursion ? NONE : new FrameTransformation(transformers, foldRecursion);
+    }
+
+    /**
+     * @return the transformed frame, or null if the frame is collapsed into its caller
+     */
+    public Frame transform(final Frame frame) {
+        Frame transformed = frame;
+        for (final FrameTransformer transformer : this.transformers) {
+            transformed = transformer.transform(transformed);
+            if (transformed == null) {
+                return null;
+            }
+        }
+        return transformed;
+    }
+
+    public boolean hasTransformers() {
+        return !this.transformers.isEmpty();
+    }
+
+    /**
+     * @return true if a call of a method by the same method is folded into the caller
+     */
+    public boolean isFoldRecursion() {
+        return this.foldRecursion;
+    }
+}
@@ -0,0 +1,626 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.actuator.model;
+
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedMethod;
+import jdk.jfr.consumer.RecordedStackTrace;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Compact flame graph tree. Nodes are identified by an int index and stored in primitive arrays, the methods
+ * of the frames are interned into a {@link SymbolTable}. The child of a node for a given symbol is found by an
+ * open addressing hash table keyed by parent node and symbol, and the children of a node are linked as a list
+ * of siblings. A node costs about 44 bytes, no matter how long the method names are.
+ * <p>
+ * With line numbers, the frames of different lines of a method are different nodes, named
+ * {@code className.methodName:lineNumber}.
+ * <p>
+ * Frames are transformed by a {@link FrameTransformation} while they are added, the transformation of a method
+ * is done once and memoized by its symbol.
+ * <p>
+ * Instances are not thread safe.
+ */
+public class FrameTree {
+
+    public static final int ROOT = 0;
+    public static final int NONE = -1;
+
+    /**
+     * Name of the node the pruned children of a node are collapsed into.
+     */
+    public static final String OTHER = "other";
+
+    private static final long EMPTY = -1L;
+    private static final byte UNKNOWN = 0;
+    private static final byte INCLUDED = 1;
+    private static final byte EXCLUDED = 2;
+    private static final int MAX_MEMOIZED_METHODS = 65_536;
+    private static final int UNTRANSFORMED = -2;
+
+    private final SymbolTable symbols;
+    private final boolean lineNumbers;
+    private final FrameTransformation transformation;
+
+    private int size;
+    private int[] symbolOf;
+    private long[] valueOf;
+    private int[] firstChildOf;
+    private int[] nextSiblingOf;
+
+    private long[] childKeys;
+    private int[] childNodes;
+    private int childMask;
+
+    private final Map<RecordedMethod, Integer> symbolOfMethod;
+
+    // Filter decisions per symbol, only valid for the filter they were made for
+    private FlameGraph.FrameFilter decisionsFilter;
+    private byte[] decisions;
+
+    // Transformed symbol per symbol, NONE for collapsed frames
+    private int[] transformedOf;
+
+    public FrameTree() {
+        this(false);
+    }
+
+    /**
+     * @param lineNumbers true to keep the line numbers of the frames
+     */
+    public FrameTree(final boolean lineNumbers) {
+        this(lineNumbers, FrameTransformation.NONE);
+    }
+
+    /**
+     * @param lineNumbers    true to keep the line numbers of the frames
+     * @param transformation the transformation of the frames added to this tree
+     */
+    public FrameTree(final boolean lineNumbers, final FrameTransformation transformation) {
+        this.symbols = new SymbolTable();
+        this.lineNumbers = lineNumbers;
+        this.transformation = transformation;
+        this.symbolOfMethod = new IdentityHashMap<>();
+        this.symbolOf = new int[1024];
+        this.valueOf = new long[1024];
+        this.firstChildOf = new int[1024];
+        this.nextSiblingOf = new int[1024];
+        this.childKeys = new long[2048];
+        this.childNodes = new int[2048];
+        this.childMask = this.childKeys.length - 1;
+        Arrays.fill(this.childKeys, EMPTY);
+        this.decisions = new byte[0];
+        this.transformedOf = new int[0];
+
+        // The root does not represent a method
+        this.symbolOf[ROOT] = NONE;
+        this.firstChildOf[ROOT] = NONE;
+        this.nextSiblingOf[ROOT] = NONE;
+        this.size = 1;
+    }
+
+    /**
+     * Adds the Java frames of a stack trace passing the filter, starting at the outermost frame.
+     */
+    public void addStackTrace(final RecordedStackTrace stackTrace, final FlameGraph.FrameFilter frameFilter,
+                              final long weight) {
+        addStackTrace(stackTrace, null, frameFilter, weight);
+    }
+
+    /**
+     * Adds the Java frames of a stack trace passing the filter, followed by a leaf frame for a class, e.g. the
+     * class of an allocated object. The leaf frame is named by the class name only and is never filtered.
+     */
+    public void addStackTrace(final RecordedStackTrace stackTrace, final String leafClassName,
+                              final FlameGraph.FrameFilter frameFilter, final long weight) {
+        addStackTrace(stackTrace, null, leafClassName, frameFilter, weight);
+    }
+
+    /**
+     * Adds the stack trace below a frame for a group of stack traces, e.g. the thread it was recorded in. Like the
+     * leaf frame, the group frame is named by the class name only and is never filtered.
+     *
+     * @param groupName the name of the group frame, or null to add the stack trace to the root
+     */
+    public void addStackTrace(final RecordedStackTrace stackTrace, final String groupName, final String leafClassName,
+                              final FlameGraph.FrameFilter frameFilter, final long weight) {
+        if (stackTrace == null) {
+            return;
+        }
+        final List<RecordedFrame> frames = stackTrace.getFrames();
+        int node = ROOT;
+        if (groupName != null) {
+            node = child(node, this.symbols.intern(groupName, null));
+            this.valueOf[node] += weight;
+        }
+        for (int i = frames.size() - 1; i >= 0; i--) {
+            final RecordedFrame frame = frames.get(i);
+            if (frame.isJavaFrame()) {
+                final int method = transformed(symbolOf(frame.getMethod()));
+                if (method == NONE) {
+                    continue;
+                }
+                final int symbol = this.lineNumbers ? this.symbols.internLine(method, frame.getLineNumber()) : method;
+                if (includes(symbol, frameFilter) && !folds(node, symbol)) {
+                    node = child(node, symbol);
+                    this.valueOf[node] += weight;
+                }
+            }
+        }
+        if (leafClassName != null) {
+            node = child(node, this.symbols.intern(leafClassName, null));
+            this.valueOf[node] += weight;
+        }
+    }
+
+    /**
+     * Returns the symbol of a method. The JFR parser resolves every method of a chunk once and shares the
+     * object between all frames of the method, so the symbol is memoized by the identity of the object. This
+     * saves reading and hashing the class and method names for every frame.
+     */
+    private int symbolOf(final RecordedMethod method) {
+        final Integer memoized = this.symbolOfMethod.get(method);
+        if (memoized != null) {
+            return memoized;
+        }
+        if (this.symbolOfMethod.size() == MAX_MEMOIZED_METHODS) {
+            // The methods of earlier chunks are not seen again, e.g. while a recording is streamed
+            this.symbolOfMethod.clear();
+        }
+        final int symbol = this.symbols.intern(method.getType().getName(), method.getName());
+        this.symbolOfMethod.put(method, symbol);
+        return symbol;
+    }
+
+    /**
+     * Releases the memoized methods of the parser once a recording has been read, so they are not kept alive
+     * by a cached tree.
+     */
+    void forgetMethods() {
+        this.symbolOfMethod.clear();
+    }
+
+    /**
+     * @return the symbol of the transformed frame, or {@link #NONE} if the frame is collapsed into its caller
+     */
+    private int transformed(final int symbol) {
+        if (!this.transformation.hasTransformers() || this.symbols.methodNameOf(symbol) == null) {
+            return symbol;
+        }
+        if (symbol >= this.transformedOf.length) {
+            final int length = this.transformedOf.length;
+            this.transformedOf = Arrays.copyOf(this.transformedOf, Math.max(symbol + 1, length * 2));
+            Arrays.fill(this.transformedOf, length, this.transformedOf.length, UNTRANSFORMED);
+        }
+        int transformed = this.transformedOf[symbol];
+        if (transformed == UNTRANSFORMED) {
+            final FrameTransformation.Frame frame = this.transformation.transform(new FrameTransformation.Frame(
+                    this.symbols.classNameOf(symbol), this.symbols.methodNameOf(symbol)));
+            transformed = frame == null ? NONE
+                    : this.symbols.intern(frame.className(), frame.methodName(), this.symbols.lineNumberOf(symbol));
+            this.transformedOf[symbol] = transformed;
+        }
+        return transformed;
+    }
+
+    /**
+     * @return true if the frame is a direct recursive call of the frame of the node, and recursion is folded
+     */
+    private boolean folds(final int node, final int symbol) {
+        return this.transformation.isFoldRecursion() && this.symbolOf[node] == symbol;
+    }
+
+    /**
+     * Adds the same frames of another tree passing the filter. Excluded frames are skipped, so their samples
+     * are added to the closest included ancestor, exactly like {@link #addStackTrace} does for every sample.
+     */
+    public void addAll(final FrameTree source, final FlameGraph.FrameFilter frameFilter) {
+        addAll(source, frameFilter, 1);
+    }
+
+    /**
+     * Adds the same frames of another tree passing the filter, with their values multiplied by a factor, e.g. to
+     * turn a number of samples into the time they represent.
+     */
+    public void addAll(final FrameTree source, final FlameGraph.FrameFilter frameFilter, final long factor) {
+        addChildren(source, ROOT, ROOT, frameFilter, factor);
+    }
+
+    private void addChildren(final FrameTree source, final int sourceNode, final int targetNode,
+                             final FlameGraph.FrameFilter frameFilter, final long factor) {
+        for (int child = source.firstChildOf[sourceNode]; child != NONE; child = source.nextSiblingOf[child]) {
+            final int symbol = transformed(internLike(source, source.symbolOf[child]));
+            int next = targetNode;
+            if (symbol != NONE && includes(symbol, frameFilter) && !folds(targetNode, symbol)) {
+                next = child(targetNode, symbol);
+                this.valueOf[next] += source.valueOf[child] * factor;
+            }
+            addChildren(source, child, next, frameFilter, factor);
+        }
+    }
+
+    /**
+     * Builds a smaller copy of this tree. Nodes are copied in descending order of their values, until the next
+     * node is below the minimum value or the maximum number of nodes has been copied. The values of the children
+     * left out are collapsed into an {@link #OTHER} child of their parent, which is not counted as a copied node.
+     * Nodes deeper than the maximum depth are left out completely, their values are still part of their
+     * ancestors. Only the copied nodes are visited.
+     *
+     * @param minValue the minimum value of a node
+     * @param maxDepth the maximum depth, the children of the root have depth 1
+     * @param maxNodes the maximum number of copied nodes
+     */
+    public FrameTree pruned(final long minValue, final int maxDepth, final int maxNodes) {
+        final FrameTree target = new FrameTree(this.lineNumbers);
+        final PriorityQueue<int[]> candidates = new PriorityQueue<>(
+                (a, b) -> Long.compare(this.valueOf[b[0]], this.valueOf[a[0]]));
+        long[] otherOf = new long[1024];
+        addCandidates(candidates, ROOT, ROOT, 1, maxDepth);
+
+        int copied = 0;
+        while (!candidates.isEmpty()) {
+            // Source node, parent in the target tree and depth
+            final int[] candidate = candidates.poll();
+            final int node = candidate[0];
+            final int targetParent = candidate[1];
+            if (copied == maxNodes || this.valueOf[node] < minValue) {
+                if (targetParent >= otherOf.length) {
+                    otherOf = Arrays.copyOf(otherOf, Math.max(targetParent + 1, otherOf.length * 2));
+                }
+                otherOf[targetParent] += this.valueOf[node];
+                continue;
+            }
+            final int targetNode = target.child(targetParent, target.internLike(this, this.symbolOf[node]));
+            target.valueOf[targetNode] = this.valueOf[node];
+            copied++;
+            addCandidates(candidates, node, targetNode, candidate[2] + 1, maxDepth);
+        }
+
+        final int other = target.symbols.intern(OTHER, null);
+        final int copiedSize = target.size;
+        for (int parent = 0; parent < Math.min(copiedSize, otherOf.length); parent++) {
+            if (otherOf[parent] > 0) {
+                final int otherNode = target.child(parent, other);
+                target.valueOf[otherNode] = otherOf[parent];
+            }
+        }
+        return target;
+    }
+
+    /**
+     * Builds the inverted tree, which starts at the leaf frames. The self value of every node is added along its
+     * call path in reverse order, so the children of the root are the methods the samples were taken in, and
+     * the children of a node are its callers. The total value stays the same. Only the call path of the node
+     * visited is kept on a stack, so the tree is walked once.
+     */
+    public FrameTree inverted() {
+        final FrameTree target = new FrameTree(this.lineNumbers);
+        final int[] targetSymbolOf = new int[this.symbols.size()];
+        Arrays.fill(targetSymbolOf, NONE);
+        addInverted(target, ROOT, new int[64], 0, targetSymbolOf);
+        return target;
+    }
+
+    private void addInverted(final FrameTree target, final int node, int[] path, final int depth,
+                             final int[] targetSymbolOf) {
+        if (depth == path.length) {
+            path = Arrays.copyOf(path, depth * 2);
+        }
+        for (int child = this.firstChildOf[node]; child != NONE; child = this.nextSiblingOf[child]) {
+            final int symbol = this.symbolOf[child];
+            if (targetSymbolOf[symbol] == NONE) {
+                targetSymbolOf[symbol] = target.internLike(this, symbol);
+            }
+            path[depth] = targetSymbolOf[symbol];
+            final long self = selfValueOf(child);
+            if (self > 0) {
+                int targetNode = ROOT;
+                for (int i = depth; i >= 0; i--) {
+                    targetNode = target.child(targetNode, path[i]);
+                    target.valueOf[targetNode] += self;
+                }
+            }
+            addInverted(target, child, path, depth + 1, targetSymbolOf);
+        }
+    }
+
+    private void addCandidates(final PriorityQueue<int[]> candidates, final int node, final int targetNode,
+                               final int depth, final int maxDepth) {
+        if (depth > maxDepth) {
+            return;
+        }
+        for (int child = this.firstChildOf[node]; child != NONE; child = this.nextSiblingOf[child]) {
+            candidates.add(new int[]{child, targetNode, depth});
+        }
+    }
+
+    /**
+     * @return the symbol for the same frame as a symbol of another tree, the line number is dropped if this tree
+     * does not keep line numbers
+     */
+    private int internLike(final FrameTree source, final int sourceSymbol) {
+        return this.symbols.intern(source.symbols.classNameOf(sourceSymbol), source.symbols.methodNameOf(sourceSymbol),
+                lineNumberLike(source, sourceSymbol));
+    }
+
+    private int lineNumberLike(final FrameTree source, final int sourceSymbol) {
+        return this.lineNumbers ? source.symbols.lineNumberOf(sourceSymbol) : -1;
+    }
+
+    private boolean includes(final int symbol, final FlameGraph.FrameFilter frameFilter) {
+        if (frameFilter == FlameGraph.ALL || this.symbols.methodNameOf(symbol) == null) {
+            return true;
+        }
+        if (frameFilter != this.decisionsFilter) {
+            this.decisionsFilter = frameFilter;
+            Arrays.fill(this.decisions, UNKNOWN);
+        }
+        if (symbol >= this.decisions.length) {
+            this.decisions = Arrays.copyOf(this.decisions, Math.max(symbol + 1, this.decisions.length * 2));
+        }
+        byte decision = this.decisions[symbol];
+        if (decision == UNKNOWN) {
+            decision = frameFilter.includes(this.symbols.classNameOf(symbol)) ? INCLUDED : EXCLUDED;
+            this.decisions[symbol] = decision;
+        }
+        return decision == INCLUDED;
+    }
+
+    /**
+     * Returns the child of a node for a symbol, and creates it if it does not exist yet.
+     */
+    int child(final int parent, final int symbol) {
+        final long key = ((long) parent << 32) | (symbol & 0xFFFFFFFFL);
+        int slot = slotOf(key);
+        while (true) {
+            final long existing = this.childKeys[slot];
+            if (existing == key) {
+                return this.childNodes[slot];
+            }
+            if (existing == EMPTY) {
+                break;
+            }
+            slot = (slot + 1) & this.childMask;
+        }
+
+        final int node = newNode(parent, symbol);
+        this.childKeys[slot] = key;
+        this.childNodes[slot] = node;
+        // Keep the load factor of the hash table at or below 0.5
+        if (this.size * 2 > this.childKeys.length) {
+            growChildTable();
+        }
+        return node;
+    }
+
+    /**
+     * Returns the child of a node for the same frame as a node of another tree.
+     *
+     * @return the child, or {@link #NONE} if the node has no such child
+     */
+    public int childLike(final int parent, final FrameTree other, final int otherNode) {
+        final int otherSymbol = other.symbolOf[otherNode];
+        final int symbol = this.symbols.find(other.symbols.classNameOf(otherSymbol),
+                other.symbols.methodNameOf(otherSymbol), lineNumberLike(other, otherSymbol));
+        if (symbol < 0) {
+            return NONE;
+        }
+        final long key = ((long) parent << 32) | (symbol & 0xFFFFFFFFL);
+        for (int slot = slotOf(key); this.childKeys[slot] != EMPTY; slot = (slot + 1) & this.childMask) {
+            if (this.childKeys[slot] == key) {
+                return this.childNodes[slot];
+            }
+        }
+        return NONE;
+    }
+
+    private int newNode(final int parent, final int symbol) {
+        if (this.size == this.symbolOf.length) {
+            final int capacity = this.size * 2;
+            this.symbolOf = Arrays.copyOf(this.symbolOf, capacity);
+            this.valueOf = Arrays.copyOf(this.valueOf, capacity);
+            this.firstChildOf = Arrays.copyOf(this.firstChildOf, capacity);
+            this.nextSiblingOf = Arrays.copyOf(this.nextSiblingOf, capacity);
+        }
+        final int node = this.size++;
+        this.symbolOf[node] = symbol;
+        this.firstChildOf[node] = NONE;
+        this.nextSiblingOf[node] = this.firstChildOf[parent];
+        this.firstChildOf[parent] = node;
+        return node;
+    }
+
+    private void growChildTable() {
+        final long[] oldKeys = this.childKeys;
+        final int[] oldNodes = this.childNodes;
+        this.childKeys = new long[oldKeys.length * 2];
+        this.childNodes = new int[oldNodes.length * 2];
+        this.childMask = this.childKeys.length - 1;
+        Arrays.fill(this.childKeys, EMPTY);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slotOf(oldKeys[i]);
+                while (this.childKeys[slot] != EMPTY) {
+                    slot = (slot + 1) & this.childMask;
+                }
+                this.childKeys[slot] = oldKeys[i];
+                this.childNodes[slot] = oldNodes[i];
+            }
+        }
+    }
+
+    private int slotOf(final long key) {
+        final long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & this.childMask;
+    }
+
+    /**
+     * Relinks the children of every node in ascending order of their values, which is the order they are
+     * serialized in. Children added later are not sorted.
+     */
+    public void sortChildren() {
+        int[] children = new int[16];
+        int[] scratch = new int[16];
+        for (int node = 0; node < this.size; node++) {
+            final int first = this.firstChildOf[node];
+            if (first == NONE || this.nextSiblingOf[first] == NONE) {
+                continue;
+            }
+            int count = 0;
+            for (int child = first; child != NONE; child = this.nextSiblingOf[child]) {
+                if (count == children.length) {
+                    children = Arrays.copyOf(children, count * 2);
+                    scratch = new int[children.length];
+                }
+                children[count++] = child;
+            }
+            sortByValue(children, scratch, 0, count);
+            int previous = NONE;
+            for (int i = count - 1; i >= 0; i--) {
+                this.nextSiblingOf[children[i]] = previous;
+                previous = children[i];
+            }
+            this.firstChildOf[node] = previous;
+        }
+    }
+
+    /**
+     * Stable merge sort of nodes by their values, without boxing them for a comparator.
+     */
+    private void sortByValue(final int[] nodes, final int[] scratch, final int from, final int to) {
+        if (to - from < 2) {
+            return;
+        }
+        final int middle = (from + to) >>> 1;
+        sortByValue(nodes, scratch, from, middle);
+        sortByValue(nodes, scratch, middle, to);
+        if (this.valueOf[nodes[middle - 1]] <= this.valueOf[nodes[middle]]) {
+            return;
+        }
+        System.arraycopy(nodes, from, scratch, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right == to || (left < middle && this.valueOf[scratch[left]] <= this.valueOf[scratch[right]])) {
+                nodes[i] = scratch[left++];
+            } else {
+                nodes[i] = scratch[right++];
+            }
+        }
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public long valueOf(final int node) {
+        return this.valueOf[node];
+    }
+
+    /**
+     * @return the sum of the values of the children of the root, the root itself has no value
+     */
+    public long totalValue() {
+        long total = 0;
+        for (int child = this.firstChildOf[ROOT]; child != NONE; child = this.nextSiblingOf[child]) {
+            total += this.valueOf[child];
+        }
+        return total;
+    }
+
+    /**
+     * Returns the node of a call path, given by the names of its frames starting at the outermost one. The
+     * children of every node on the path are searched linearly, which is quick since the path is short and
+     * only the children on the path are visited.
+     *
+     * @return the node, the root for an empty path, or {@link #NONE} if the tree has no such path
+     */
+    public int nodeOf(final List<String> path) {
+        int node = ROOT;
+        for (final String name : path) {
+            int child = this.firstChildOf[node];
+            while (child != NONE && !nameOf(child).equals(name)) {
+                child = this.nextSiblingOf[child];
+            }
+            if (child == NONE) {
+                return NONE;
+            }
+            node = child;
+        }
+        return node;
+    }
+
+    /**
+     * @return the number of symbols, which are numbered from 0
+     */
+    public int symbolCount() {
+        return this.symbols.size();
+    }
+
+    /**
+     * @return the symbol of the frames with a name, or {@link #NONE} if the tree has no such frame
+     */
+    public int symbolNamed(final String name) {
+        final int symbol = this.symbols.findByName(name);
+        return symbol < 0 ? NONE : symbol;
+    }
+
+    public int firstChildOf(final int node) {
+        return this.firstChildOf[node];
+    }
+
+    public int nextSiblingOf(final int node) {
+        return this.nextSiblingOf[node];
+    }
+
+    /**
+     * @return the value of a node minus the values of its children, e.g. the samples with the node as the leaf
+     */
+    public long selfValueOf(final int node) {
+        long self = this.valueOf[node];
+        for (int child = this.firstChildOf[node]; child != NONE; child = this.nextSiblingOf[child]) {
+            self -= this.valueOf[child];
+        }
+        return self;
+    }
+
+    /**
+     * @return the symbol of the frame of a node, nodes for the same method have the same symbol
+     */
+    public int symbolOf(final int node) {
+        return this.symbolOf[node];
+    }
+
+    public String nameOf(final int node) {
+        return this.symbols.nameOf(this.symbolOf[node]);
+    }
+
+    /**
+     * @return the line number of the frame of a node, or -1 if it is unknown or line numbers are not kept
+     */
+    public int lineNumberOf(final int node) {
+        return this.symbols.lineNumberOf(this.symbolOf[node]);
+    }
+
+    public String classNameOf(final int node) {
+        return this.symbols.classNameOf(this.symbolOf[node]);
+    }
+}
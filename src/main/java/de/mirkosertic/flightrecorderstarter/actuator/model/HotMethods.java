@@ -0,0 +1,150 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.actuator.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The methods of a flame graph with the highest self or total values. The self value of a method is the value of
+ * the samples taken in it, the total value also contains the values of the methods it called. In recursive calls,
+ * only the outermost frame of a method counts for its total value. The percentages are shares of the total value
+ * of the flame graph.
+ * <p>
+ * If the flame graph keeps line numbers, every line of a method is listed on its own.
+ */
+public class HotMethods {
+
+    public static class Method {
+
+        private final String name;
+        private final long self;
+        private final long total;
+        private final double selfPercent;
+        private final double totalPercent;
+
+        Method(final String name, final long self, final long total, final long graphTotal) {
+            this.name = name;
+            this.self = self;
+            this.total = total;
+            this.selfPercent = graphTotal == 0 ? 0 : 100.0 * self / graphTotal;
+            this.totalPercent = graphTotal == 0 ? 0 : 100.0 * total / graphTotal;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public long getSelf() {
+            return this.self;
+        }
+
+        public long getTotal() {
+            return this.total;
+        }
+
+        public double getSelfPercent() {
+            return this.selfPercent;
+        }
+
+        public double getTotalPercent() {
+            return this.totalPercent;
+        }
+    }
+
+    private final long total;
+    private final List<Method> methods;
+
+    private HotMethods(final long total, final List<Method> methods) {
+        this.total = total;
+        this.methods = methods;
+    }
+
+    /**
+     * Walks the tree of the flame graph once, summing up the values per symbol.
+     *
+     * @param byTotal true to sort by the total values, otherwise by the self values
+     * @param limit   the maximum number of methods
+     */
+    public static HotMethods of(final FlameGraph graph, final boolean byTotal, final int limit) {
+        final FrameTree tree = graph.getTree();
+        final Walk walk = new Walk(tree);
+        walk.visit(FrameTree.ROOT);
+
+        final long graphTotal = tree.totalValue();
+        final List<Method> methods = new ArrayList<>();
+        for (int symbol = 0; symbol < walk.nodeOf.length; symbol++) {
+            if (walk.nodeOf[symbol] != FrameTree.NONE) {
+                methods.add(new Method(tree.nameOf(walk.nodeOf[symbol]), walk.selfOf[symbol], walk.totalOf[symbol],
+                        graphTotal));
+            }
+        }
+        final Comparator<Method> order = byTotal
+                ? Comparator.comparingLong(Method::getTotal).thenComparingLong(Method::getSelf)
+                : Comparator.comparingLong(Method::getSelf).thenComparingLong(Method::getTotal);
+        return new HotMethods(graphTotal, methods.stream()
+                .sorted(order.reversed())
+                .limit(limit)
+                .toList());
+    }
+
+    private static class Walk {
+
+        private final FrameTree tree;
+        private final long[] selfOf;
+        private final long[] totalOf;
+        // A node of every symbol for its name, and the number of frames of every symbol on the current call path
+        private final int[] nodeOf;
+        private final int[] onPathOf;
+
+        private Walk(final FrameTree tree) {
+            this.tree = tree;
+            this.selfOf = new long[tree.symbolCount()];
+            this.totalOf = new long[tree.symbolCount()];
+            this.nodeOf = new int[tree.symbolCount()];
+            this.onPathOf = new int[tree.symbolCount()];
+            Arrays.fill(this.nodeOf, FrameTree.NONE);
+        }
+
+        private void visit(final int node) {
+            for (int child = this.tree.firstChildOf(node); child != FrameTree.NONE;
+                 child = this.tree.nextSiblingOf(child)) {
+                final int symbol = this.tree.symbolOf(child);
+                this.nodeOf[symbol] = child;
+                this.selfOf[symbol] += this.tree.selfValueOf(child);
+                if (this.onPathOf[symbol] == 0) {
+                    this.totalOf[symbol] += this.tree.valueOf(child);
+                }
+                this.onPathOf[symbol]++;
+                visit(child);
+                this.onPathOf[symbol]--;
+            }
+        }
+    }
+
+    /**
+     * @return the total value of the flame graph
+     */
+    public long getTotal() {
+        return this.total;
+    }
+
+    public List<Method> getMethods() {
+        return this.methods;
+    }
+}
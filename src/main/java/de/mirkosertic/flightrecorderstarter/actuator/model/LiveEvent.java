@@ -0,0 +1,142 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.actuator.model;
+
+import jdk.jfr.ValueDescriptor;
+import jdk.jfr.consumer.RecordedClass;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedMethod;
+import jdk.jfr.consumer.RecordedObject;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordedThread;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A JSON friendly copy of a {@link RecordedEvent}, as event objects of a stream are reused by JFR.
+ */
+public class LiveEvent {
+
+    private static final int MAX_STACK_DEPTH = 5;
+    private static final int MAX_NESTING = 2;
+
+    private String type;
+    private Instant startTime;
+    private long durationNanos;
+    private String thread;
+    private List<String> stackTrace;
+    private Map<String, Object> fields;
+
+    public static LiveEvent from(final RecordedEvent event) {
+        final LiveEvent result = new LiveEvent();
+        result.type = event.getEventType().getName();
+        result.startTime = event.getStartTime();
+        result.durationNanos = event.getDuration().toNanos();
+        if (event.getThread() != null) {
+            result.thread = event.getThread().getJavaName();
+        }
+        // Events without a stack trace get an empty one, so clients do not need to check for null
+        result.stackTrace = event.getStackTrace() != null ? stackTraceOf(event.getStackTrace()) : List.of();
+        result.fields = fieldsOf(event, 0);
+        return result;
+    }
+
+    private static List<String> stackTraceOf(final RecordedStackTrace stackTrace) {
+        final List<RecordedFrame> frames = stackTrace.getFrames();
+        final List<String> result = new ArrayList<>(Math.min(frames.size(), MAX_STACK_DEPTH));
+        for (int i = 0; i < frames.size() && i < MAX_STACK_DEPTH; i++) {
+            final RecordedFrame frame = frames.get(i);
+            final RecordedMethod method = frame.getMethod();
+            result.add(method.getType().getName() + "." + method.getName() + ":" + frame.getLineNumber());
+        }
+        return result;
+    }
+
+    private static Map<String, Object> fieldsOf(final RecordedObject object, final int nesting) {
+        final Map<String, Object> result = new LinkedHashMap<>();
+        for (final ValueDescriptor descriptor : object.getFields()) {
+            final String name = descriptor.getName();
+            // These are already part of the event itself
+            if (nesting == 0 && ("startTime".equals(name) || "duration".equals(name) || "eventThread".equals(name) || "stackTrace".equals(name))) {
+                continue;
+            }
+            result.put(name, valueOf(object.getValue(name), nesting));
+        }
+        return result;
+    }
+
+    private static Object valueOf(final Object value, final int nesting) {
+        if (value instanceof RecordedThread thread) {
+            return thread.getJavaName() != null ? thread.getJavaName() : thread.getOSName();
+        }
+        if (value instanceof RecordedClass recordedClass) {
+            return recordedClass.getName();
+        }
+        if (value instanceof RecordedMethod method) {
+            return method.getType().getName() + "." + method.getName();
+        }
+        if (value instanceof RecordedStackTrace stackTrace) {
+            return stackTraceOf(stackTrace);
+        }
+        if (value instanceof RecordedObject recordedObject) {
+            return nesting < MAX_NESTING ? fieldsOf(recordedObject, nesting + 1) : recordedObject.toString();
+        }
+        if (value instanceof Object[] array) {
+            final List<Object> result = new ArrayList<>(array.length);
+            for (final Object element : array) {
+                result.add(valueOf(element, nesting));
+            }
+            return result;
+        }
+        if (value instanceof Duration duration) {
+            return duration.toNanos();
+        }
+        if (value instanceof Instant instant) {
+            return instant.toString();
+        }
+        return value;
+    }
+
+    public String getType() {
+        return this.type;
+    }
+
+    public Instant getStartTime() {
+        return this.startTime;
+    }
+
+    public long getDurationNanos() {
+        return this.durationNanos;
+    }
+
+    public String getThread() {
+        return this.thread;
+    }
+
+    public List<String> getStackTrace() {
+        return this.stackTrace;
+    }
+
+    public Map<String, Object> getFields() {
+        return this.fields;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.actuator.model;
+
+import jdk.jfr.consumer.RecordedEvent;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The time threads were blocked on the monitors of a class, or parked on objects of a class, summed up over the
+ * events of {@link EventProfile#locks(boolean)}.
+ */
+public class MonitorContention {
+
+    private final String monitorClass;
+    private long eventCount;
+    private long totalDurationNanos;
+    private long maxDurationNanos;
+
+    MonitorContention(final String monitorClass) {
+        this.monitorClass = monitorClass;
+    }
+
+    /**
+     * @return the monitor classes with the longest total blocked time, in descending order
+     */
+    public static List<MonitorContention> from(final File file, final int limit) throws IOException {
+        final EventProfile profile = EventProfile.locks(true);
+        final Map<String, MonitorContention> byClass = new HashMap<>();
+        final RecordingAnalysis analysis = new RecordingAnalysis(file.toPath());
+        analysis.add(new RecordingAnalysis.Analyzer() {
+            @Override
+            public Set<String> eventTypes() {
+                return profile.getEventTypes();
+            }
+
+            @Override
+            public void accept(final RecordedEvent event) {
+                final String monitorClass = EventProfile.monitorClassNameOf(event);
+                if (monitorClass != null) {
+                    byClass.computeIfAbsent(monitorClass, MonitorContention::new).add(profile.weightOf(event));
+                }
+            }
+        });
+        analysis.run();
+        return byClass.values().stream()
+                .sorted(Comparator.comparingLong(MonitorContention::getTotalDurationNanos).reversed())
+                .limit(limit)
+                .toList();
+    }
+
+    private void add(final long durationNanos) {
+        this.eventCount++;
+        this.totalDurationNanos += durationNanos;
+        this.maxDurationNanos = Math.max(this.maxDurationNanos, durationNanos);
+    }
+
+    public String getMonitorClass() {
+        return this.monitorClass;
+    }
+
+    public long getEventCount() {
+        return this.eventCount;
+    }
+
+    public long getTotalDurationNanos() {
+        return this.totalDurationNanos;
+    }
+
+    public long getMaxDurationNanos() {
+        return this.maxDurationNanos;
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.actuator.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Includes and excludes classes by any number of name prefixes. The longest prefix matching a class name decides,
+ * so e.g. {@code com.example.} can be included while {@code com.example.generated.} is excluded. Classes not
+ * matching any prefix are only included if there are no include prefixes at all. Like
+ * {@link FlameGraph.PackageNamePrefixFrameFilter}, the CGLIB proxies Spring generates next to the proxied classes
+ * are never included.
+ * <p>
+ * The prefixes are compiled into a trie, so a class name is matched in a single scan over its characters, no
+ * matter how many prefixes there are. Filters are immutable and can be extended by {@link #include} and
+ * {@link #exclude}. They are equal if they have the same prefixes, so they can be part of cache keys.
+ */
+public final class PrefixFrameFilter implements FlameGraph.FrameFilter {
+
+    private static final byte NO_DECISION = 0;
+    private static final byte INCLUDE = 1;
+    private static final byte EXCLUDE = 2;
+    private static final String CGLIB_MARKER = "$$";
+    private static final String[] CGLIB_PROXIES = {"$$FastClassBySpringCGLIB$$", "$$EnhancerBySpringCGLIB$$",
+            "$$SpringCGLIB$$"};
+
+    private final Set<String> includes;
+    private final Set<String> excludes;
+
+    // The trie, the edges of every node are sorted by their characters
+    private final char[][] edgesOf;
+    private final int[][] targetsOf;
+    private final byte[] decisionOf;
+
+    public PrefixFrameFilter(final Iterable<String> includes, final Iterable<String> excludes) {
+        this.includes = sortedSetOf(includes);
+        this.excludes = sortedSetOf(excludes);
+
+        final List<TreeMap<Character, Integer>> children = new ArrayList<>();
+        final List<Byte> decisions = new ArrayList<>();
+        children.add(new TreeMap<>());
+        decisions.add(NO_DECISION);
+        for (final String prefix : this.includes) {
+            add(children, decisions, prefix, INCLUDE);
+        }
+        // An exclude wins over an include of the same prefix
+        for (final String prefix : this.excludes) {
+            add(children, decisions, prefix, EXCLUDE);
+        }
+
+        this.edgesOf = new char[children.size()][];
+        this.targetsOf = new int[children.size()][];
+        this.decisionOf = new byte[children.size()];
+        for (int node = 0; node < children.size(); node++) {
+            final TreeMap<Character, Integer> edges = children.get(node);
+            this.edgesOf[node] = new char[edges.size()];
+            this.targetsOf[node] = new int[edges.size()];
+            int i = 0;
+            for (final Map.Entry<Character, Integer> edge : edges.entrySet()) {
+                this.edgesOf[node][i] = edge.getKey();
+                this.targetsOf[node][i] = edge.getValue();
+                i++;
+            }
+            this.decisionOf[node] = decisions.get(node);
+        }
+    }
+
+    private static Set<String> sortedSetOf(final Iterable<String> prefixes) {
+        final TreeSet<String> set = new TreeSet<>();
+        prefixes.forEach(set::add);
+        return Collections.unmodifiableSet(set);
+    }
+
+    private static void add(final List<TreeMap<Character, Integer>> children, final List<Byte> decisions,
+                            final String prefix, final byte decision) {
+        int node = 0;
+        for (int i = 0; i < prefix.length(); i++) {
+            final Integer next = children.get(node).get(prefix.charAt(i));
+            if (next != null) {
+                node = next;
+            } else {
+                children.add(new TreeMap<>());
+                decisions.add(NO_DECISION);
+                children.get(node).put(prefix.charAt(i), children.size() - 1);
+                node = children.size() - 1;
+            }
+        }
+        decisions.set(node, decision);
+    }
+
+    /**
+     * @return a filter with the prefixes of this one and the additional include prefixes
+     */
+    public PrefixFrameFilter include(final String... prefixes) {
+        final List<String> extended = new ArrayList<>(this.includes);
+        extended.addAll(Arrays.asList(prefixes));
+        return new PrefixFrameFilter(extended, this.excludes);
+    }
+
+    /**
+     * @return a filter with the prefixes of this one and the additional exclude prefixes
+     */
+    public PrefixFrameFilter exclude(final String... prefixes) {
+        final List<String> extended = new ArrayList<>(this.excludes);
+        extended.addAll(Arrays.asList(prefixes));
+        return new PrefixFrameFilter(this.includes, extended);
+    }
+
+    @Override
+    public boolean includes(final String className) {
+        byte decision = this.decisionOf[0];
+        int node = 0;
+        for (int i = 0; i < className.length(); i++) {
+            final int edge = Arrays.binarySearch(this.edgesOf[node], className.charAt(i));
+            if (edge < 0) {
+                break;
+            }
+            node = this.targetsOf[node][edge];
+            if (this.decisionOf[node] != NO_DECISION) {
+                decision = this.decisionOf[node];
+            }
+        }
+        if (decision == EXCLUDE || decision == NO_DECISION && !this.includes.isEmpty()) {
+            return false;
+        }
+        return !isCglibProxy(className);
+    }
+
+    private static boolean isCglibProxy(final String className) {
+        // Most classes have no $$ in their names, so they are only scanned once
+        if (!className.contains(CGLIB_MARKER)) {
+            return false;
+        }
+        for (final String proxy : CGLIB_PROXIES) {
+            if (className.contains(proxy)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Set<String> getIncludes() {
+        return this.includes;
+    }
+
+    public Set<String> getExcludes() {
+        return this.excludes;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final PrefixFrameFilter other = (PrefixFrameFilter) o;
+        return this.includes.equals(other.includes) && this.excludes.equals(other.excludes);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * this.includes.hashCode() + this.excludes.hashCode();
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.actuator.model;
+
+/**
+ * Limits the size of a flame graph for large recordings, see {@link FrameTree#pruned}. A value of 0 disables
+ * the respective limit.
+ *
+ * @param minPercent the minimum share of the total value of a node in percent
+ * @param maxDepth   the maximum depth of a node
+ * @param maxNodes   the maximum number of nodes
+ */
+public record Pruning(double minPercent, int maxDepth, int maxNodes) {
+
+    public static final Pruning NONE = new Pruning(0, 0, 0);
+
+    public Pruning {
+        if (minPercent < 0 || minPercent > 100 || maxDepth < 0 || maxNodes < 0) {
+            throw new IllegalArgumentException("minPercent must be between 0 and 100, maxDepth and maxNodes must not be negative");
+        }
+    }
+
+    public boolean isNone() {
+        return this.minPercent == 0 && this.maxDepth == 0 && this.maxNodes == 0;
+    }
+
+    /**
+     * @return the pruned flame graph, or the flame graph itself if nothing is limited
+     */
+    public FlameGraph apply(final FlameGraph graph) {
+        if (isNone()) {
+            return graph;
+        }
+        final FrameTree tree = graph.getTree();
+        final long minValue = (long) Math.ceil(tree.totalValue() * this.minPercent / 100);
+        return new FlameGraph(tree.pruned(minValue,
+                this.maxDepth == 0 ? Integer.MAX_VALUE : this.maxDepth,
+                this.maxNodes == 0 ? Integer.MAX_VALUE : this.maxNodes));
+    }
+}
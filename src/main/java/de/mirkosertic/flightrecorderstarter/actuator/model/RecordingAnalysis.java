@@ -0,0 +1,132 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.actuator.model;
+
+import jdk.jfr.consumer.EventStream;
+import jdk.jfr.consumer.RecordedEvent;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Reads a recording once and passes its events to several {@link Analyzer}s, e.g. the flame graphs of the CPU
+ * samples and of the allocations and a {@link RecordingSummary}. Handlers are only registered for the event types
+ * of the analyzers, so the parser skips the events of all other types like GC or class loading events without
+ * creating them. The events are passed in the order they were written to the recording, which is only roughly
+ * the order of their start times. Events are reused by the parser, so analyzers must not keep them.
+ */
+public final class RecordingAnalysis {
+
+    /**
+     * Analyzes the events of some event types of a recording.
+     */
+    public interface Analyzer {
+
+        /**
+         * @return the names of the event types passed to {@link #accept}
+         */
+        Set<String> eventTypes();
+
+        void accept(final RecordedEvent event);
+
+        /**
+         * Called once all events have been read.
+         */
+        default void finish() {
+        }
+    }
+
+    private final Path file;
+    private final List<Analyzer> analyzers = new ArrayList<>();
+
+    public RecordingAnalysis(final Path file) {
+        this.file = file;
+    }
+
+    /**
+     * @return the analyzer, so it can be created and added in one expression
+     */
+    public <A extends Analyzer> A add(final A analyzer) {
+        this.analyzers.add(analyzer);
+        return analyzer;
+    }
+
+    /**
+     * Reads the recording and passes the events to the analyzers.
+     *
+     * @throws IOException if the file is no complete recording, or an analyzer failed with an
+     *                     {@link UncheckedIOException}
+     */
+    public void run() throws IOException {
+        // The stream ends silently at data it cannot read, so the chunks are checked first
+        if (RecordingChunks.of(this.file).isEmpty()) {
+            throw new IOException("Not a complete flight recording: " + this.file);
+        }
+        final Map<String, List<Analyzer>> analyzersByType = new HashMap<>();
+        for (final Analyzer analyzer : this.analyzers) {
+            for (final String eventType : analyzer.eventTypes()) {
+                analyzersByType.computeIfAbsent(eventType, type -> new ArrayList<>()).add(analyzer);
+            }
+        }
+        final RuntimeException[] failure = new RuntimeException[1];
+        // No try-with-resources, as the handlers close the stream as well
+        final EventStream stream = EventStream.openFile(this.file);
+        try {
+            stream.setOrdered(false);
+            for (final Map.Entry<String, List<Analyzer>> eventType : analyzersByType.entrySet()) {
+                final Consumer<RecordedEvent> handler = handlerOf(eventType.getValue());
+                stream.onEvent(eventType.getKey(), event -> {
+                    // The stream would log the exception and continue with the next event
+                    try {
+                        handler.accept(event);
+                    } catch (final RuntimeException e) {
+                        failure[0] = e;
+                        stream.close();
+                    }
+                });
+            }
+            stream.start();
+        } finally {
+            stream.close();
+        }
+        if (failure[0] instanceof final UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        this.analyzers.forEach(Analyzer::finish);
+    }
+
+    private static Consumer<RecordedEvent> handlerOf(final List<Analyzer> analyzers) {
+        if (analyzers.size() == 1) {
+            return analyzers.get(0)::accept;
+        }
+        final Analyzer[] all = analyzers.toArray(new Analyzer[0]);
+        return event -> {
+            for (final Analyzer analyzer : all) {
+                analyzer.accept(event);
+            }
+        };
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.actuator.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Splits a JFR file into its chunks. A recording file is a sequence of chunks, and every chunk has its own
+ * metadata and constant pools, so it can be parsed on its own. The layout of the chunk header is
+ * <pre>
+ *   magic "FLR\0" (4 bytes), major version (2), minor version (2), chunk size (8), constant pool offset (8),
+ *   metadata offset (8), start time in epoch nanoseconds (8), duration in nanoseconds (8), ...
+ * </pre>
+ * with all numbers in big endian byte order.
+ */
+final class RecordingChunks {
+
+    private static final byte[] MAGIC = {'F', 'L', 'R', '\0'};
+    private static final int HEADER_SIZE = 68;
+
+    record Chunk(long position, long size, long startNanos, long durationNanos) {
+
+        long endNanos() {
+            return this.startNanos + this.durationNanos;
+        }
+    }
+
+    private RecordingChunks() {
+    }
+
+    /**
+     * @return the chunks of the file, or an empty list if the file does not consist of complete chunks, e.g.
+     * because it is still being written
+     */
+    static List<Chunk> of(final Path file) throws IOException {
+        final List<Chunk> chunks = new ArrayList<>();
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long fileSize = channel.size();
+            final ByteBuffer header = ByteBuffer.allocate(48);
+            long position = 0;
+            while (position < fileSize) {
+                header.clear();
+                if (fileSize - position < HEADER_SIZE || channel.read(header, position) < header.capacity()) {
+                    return List.of();
+                }
+                final byte[] magic = new byte[MAGIC.length];
+                header.get(0, magic);
+                final long size = header.getLong(8);
+                if (!Arrays.equals(magic, MAGIC) || size < HEADER_SIZE || size > fileSize - position) {
+                    return List.of();
+                }
+                chunks.add(new Chunk(position, size, header.getLong(32), header.getLong(40)));
+                position += size;
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * @return a chunk spanning the given chunks, which must follow each other in the file
+     */
+    static Chunk spanOf(final List<Chunk> chunks) {
+        final Chunk first = chunks.get(0);
+        final Chunk last = chunks.get(chunks.size() - 1);
+        return new Chunk(first.position(), last.position() + last.size() - first.position(), first.startNanos(),
+                last.endNanos() - first.startNanos());
+    }
+
+    /**
+     * Copies a chunk into a temporary file, which is owned by the caller. The file is created next to the
+     * recording, so chunks of recordings in the configured {@code flightrecorder.jfr-base-path} do not fill up the
+     * default temporary directory.
+     */
+    static Path extract(final Path file, final Chunk chunk) throws IOException {
+        final Path directory = file.toAbsolutePath().getParent();
+        final Path target = directory != null ? Files.createTempFile(directory, "chunk", ".jfr")
+                : Files.createTempFile("chunk", ".jfr");
+        try (final FileChannel source = FileChannel.open(file, StandardOpenOption.READ);
+             final FileChannel destination = FileChannel.open(target, StandardOpenOption.WRITE)) {
+            long transferred = 0;
+            while (transferred < chunk.size()) {
+                transferred += source.transferTo(chunk.position() + transferred, chunk.size() - transferred, destination);
+            }
+        } catch (final IOException | RuntimeException e) {
+            Files.deleteIfExists(target);
+            throw e;
+        }
+        return target;
+    }
+}
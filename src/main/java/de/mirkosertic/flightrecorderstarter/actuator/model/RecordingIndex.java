@@ -0,0 +1,96 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.actuator.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Index of the chunks of a recording file with their positions and the time they cover, read from the chunk
+ * headers only. It is used to parse only the chunks overlapping a {@link TimeWindow}. The index of a finished
+ * recording does not change, so it can be built once and kept with the recording.
+ */
+public final class RecordingIndex {
+
+    private final File file;
+    private final List<RecordingChunks.Chunk> chunks;
+
+    private RecordingIndex(final File file, final List<RecordingChunks.Chunk> chunks) {
+        this.file = file;
+        this.chunks = chunks;
+    }
+
+    public static RecordingIndex of(final File file) throws IOException {
+        return new RecordingIndex(file, RecordingChunks.of(file.toPath()));
+    }
+
+    public File getFile() {
+        return this.file;
+    }
+
+    /**
+     * @return the number of chunks, which is 0 if the file does not consist of complete chunks
+     */
+    public int getChunkCount() {
+        return this.chunks.size();
+    }
+
+    /**
+     * @return the start of the first chunk, or null if the file does not consist of complete chunks
+     */
+    public Instant getStart() {
+        if (this.chunks.isEmpty()) {
+            return null;
+        }
+        return Instant.EPOCH.plusNanos(this.chunks.get(0).startNanos());
+    }
+
+    /**
+     * @return the end of the last chunk, or null if the file does not consist of complete chunks
+     */
+    public Instant getEnd() {
+        if (this.chunks.isEmpty()) {
+            return null;
+        }
+        return Instant.EPOCH.plusNanos(this.chunks.get(this.chunks.size() - 1).endNanos());
+    }
+
+    /**
+     * JFR writes an event into the chunk in which it ends, so an event starting within the window may be in the
+     * chunk following the window. That chunk is included as well, and the events are still filtered by their
+     * start time.
+     *
+     * @return the chunks overlapping the window, and the chunk following them
+     */
+    List<RecordingChunks.Chunk> chunksIn(final TimeWindow window) {
+        if (window.isAll()) {
+            return this.chunks;
+        }
+        final List<RecordingChunks.Chunk> overlapping = new ArrayList<>();
+        for (final RecordingChunks.Chunk chunk : this.chunks) {
+            if (window.overlaps(chunk.startNanos(), chunk.endNanos())) {
+                overlapping.add(chunk);
+            } else if (!overlapping.isEmpty()) {
+                overlapping.add(chunk);
+                break;
+            }
+        }
+        return overlapping;
+    }
+}
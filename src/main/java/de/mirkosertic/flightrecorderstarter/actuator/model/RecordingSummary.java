@@ -0,0 +1,127 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.actuator.model;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedThread;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The number of events per event type with their total and maximum duration, and the number of threads they were
+ * recorded in. It shows at a glance which flame graphs of a recording have data.
+ */
+public class RecordingSummary implements RecordingAnalysis.Analyzer {
+
+    /**
+     * The event types of all {@link EventProfile}s.
+     */
+    public static final Set<String> PROFILED_EVENT_TYPES = Set.of(EventProfile.EXECUTION_SAMPLE,
+            EventProfile.NATIVE_METHOD_SAMPLE, EventProfile.OBJECT_ALLOCATION_SAMPLE,
+            EventProfile.OBJECT_ALLOCATION_IN_NEW_TLAB, EventProfile.OBJECT_ALLOCATION_OUTSIDE_TLAB,
+            EventProfile.JAVA_MONITOR_ENTER, EventProfile.JAVA_MONITOR_WAIT, EventProfile.THREAD_PARK,
+            EventProfile.SOCKET_READ, EventProfile.SOCKET_WRITE, EventProfile.FILE_READ, EventProfile.FILE_WRITE);
+
+    public static class EventTypeSummary {
+
+        private final String name;
+        private long eventCount;
+        private long totalDurationNanos;
+        private long maxDurationNanos;
+
+        EventTypeSummary(final String name) {
+            this.name = name;
+        }
+
+        private void add(final long durationNanos) {
+            this.eventCount++;
+            this.totalDurationNanos += durationNanos;
+            this.maxDurationNanos = Math.max(this.maxDurationNanos, durationNanos);
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public long getEventCount() {
+            return this.eventCount;
+        }
+
+        /**
+         * @return the total duration, which is zero for samples since they are instant events
+         */
+        public long getTotalDurationNanos() {
+            return this.totalDurationNanos;
+        }
+
+        public long getMaxDurationNanos() {
+            return this.maxDurationNanos;
+        }
+    }
+
+    private final Set<String> eventTypes;
+    private final Map<String, EventTypeSummary> byEventType = new HashMap<>();
+    private final Set<Long> threadIds = new HashSet<>();
+
+    public RecordingSummary(final Set<String> eventTypes) {
+        this.eventTypes = eventTypes;
+    }
+
+    /**
+     * @return the summary of the {@link #PROFILED_EVENT_TYPES}
+     */
+    public static RecordingSummary from(final File file) throws IOException {
+        final RecordingAnalysis analysis = new RecordingAnalysis(file.toPath());
+        final RecordingSummary summary = analysis.add(new RecordingSummary(PROFILED_EVENT_TYPES));
+        analysis.run();
+        return summary;
+    }
+
+    @Override
+    public Set<String> eventTypes() {
+        return this.eventTypes;
+    }
+
+    @Override
+    public void accept(final RecordedEvent event) {
+        this.byEventType.computeIfAbsent(event.getEventType().getName(), EventTypeSummary::new)
+                .add(event.getDuration().toNanos());
+        final RecordedThread thread = ThreadGrouping.threadOf(event);
+        if (thread != null) {
+            this.threadIds.add(thread.getId());
+        }
+    }
+
+    /**
+     * @return the event types with events, the most frequent first
+     */
+    public List<EventTypeSummary> getEvents() {
+        return this.byEventType.values().stream()
+                .sorted(Comparator.comparingLong(EventTypeSummary::getEventCount).reversed())
+                .toList();
+    }
+
+    public int getThreadCount() {
+        return this.threadIds.size();
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.actuator.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Interns method identities into int symbols. Lookups are done by class and method name, which the JFR parser
+ * keeps as shared constant pool strings, so interning a known method allocates nothing. The display name
+ * {@code className.methodName} is only built once per symbol, when it is requested. Symbols without a method name
+ * stand for a class, e.g. the class of allocated objects, and are displayed by the class name only.
+ * <p>
+ * A method can also be interned together with a line number, which results in a symbol per line displayed as
+ * {@code className.methodName:lineNumber}. These symbols are looked up by the symbol of the method and the line.
+ */
+class SymbolTable {
+
+    private static final int NO_LINE = -1;
+
+    private final Map<String, Map<String, Integer>> symbolsByClass;
+    private final Map<Long, Integer> symbolsByLine;
+    private String[] classNames;
+    private String[] methodNames;
+    private int[] lineNumbers;
+    private String[] names;
+    private int size;
+
+    SymbolTable() {
+        this.symbolsByClass = new HashMap<>();
+        this.symbolsByLine = new HashMap<>();
+        this.classNames = new String[256];
+        this.methodNames = new String[256];
+        this.lineNumbers = new int[256];
+        this.names = new String[256];
+    }
+
+    int intern(final String className, final String methodName) {
+        final Map<String, Integer> methods = this.symbolsByClass.computeIfAbsent(className, key -> new HashMap<>());
+        final Integer existing = methods.get(methodName);
+        if (existing != null) {
+            return existing;
+        }
+        final int symbol = newSymbol(className, methodName, NO_LINE);
+        methods.put(methodName, symbol);
+        return symbol;
+    }
+
+    /**
+     * Interns a line of a method. Lines are only known for Java methods, so negative line numbers and symbols
+     * without a method name result in the symbol of the method.
+     */
+    int intern(final String className, final String methodName, final int lineNumber) {
+        return internLine(intern(className, methodName), lineNumber);
+    }
+
+    /**
+     * Interns a line of the method of a symbol returned by {@link #intern(String, String)}.
+     */
+    int internLine(final int method, final int lineNumber) {
+        if (lineNumber < 0 || this.methodNames[method] == null) {
+            return method;
+        }
+        final long key = ((long) method << 32) | lineNumber;
+        final Integer existing = this.symbolsByLine.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        final int symbol = newSymbol(this.classNames[method], this.methodNames[method], lineNumber);
+        this.symbolsByLine.put(key, symbol);
+        return symbol;
+    }
+
+    private int newSymbol(final String className, final String methodName, final int lineNumber) {
+        if (this.size == this.classNames.length) {
+            final int capacity = this.size * 2;
+            this.classNames = Arrays.copyOf(this.classNames, capacity);
+            this.methodNames = Arrays.copyOf(this.methodNames, capacity);
+            this.lineNumbers = Arrays.copyOf(this.lineNumbers, capacity);
+            this.names = Arrays.copyOf(this.names, capacity);
+        }
+        final int symbol = this.size++;
+        this.classNames[symbol] = className;
+        this.methodNames[symbol] = methodName;
+        this.lineNumbers[symbol] = lineNumber;
+        return symbol;
+    }
+
+    /**
+     * @return the symbol of a method, or -1 if it has not been interned
+     */
+    int find(final String className, final String methodName) {
+        final Map<String, Integer> methods = this.symbolsByClass.get(className);
+        if (methods == null) {
+            return -1;
+        }
+        final Integer existing = methods.get(methodName);
+        return existing == null ? -1 : existing;
+    }
+
+    /**
+     * @return the symbol of a line of a method, or -1 if it has not been interned
+     */
+    int find(final String className, final String methodName, final int lineNumber) {
+        final int method = find(className, methodName);
+        if (method < 0 || lineNumber < 0 || methodName == null) {
+            return method;
+        }
+        final Integer existing = this.symbolsByLine.get(((long) method << 32) | lineNumber);
+        return existing == null ? -1 : existing;
+    }
+
+    /**
+     * @return the symbol with a display name, or -1 if there is none. All symbols are compared, so this is only
+     * meant for single lookups, e.g. of a method requested by its name.
+     */
+    int findByName(final String name) {
+        for (int symbol = 0; symbol < this.size; symbol++) {
+            if (nameOf(symbol).equals(name)) {
+                return symbol;
+            }
+        }
+        return -1;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    String classNameOf(final int symbol) {
+        return this.classNames[symbol];
+    }
+
+    String methodNameOf(final int symbol) {
+        return this.methodNames[symbol];
+    }
+
+    /**
+     * @return the line number, or -1 if the symbol stands for a whole method or a class
+     */
+    int lineNumberOf(final int symbol) {
+        return this.lineNumbers[symbol];
+    }
+
+    String nameOf(final int symbol) {
+        String name = this.names[symbol];
+        if (name == null) {
+            if (this.methodNames[symbol] == null) {
+                name = this.classNames[symbol];
+            } else if (this.lineNumbers[symbol] == NO_LINE) {
+                name = this.classNames[symbol] + "." + this.methodNames[symbol];
+            } else {
+                name = this.classNames[symbol] + "." + this.methodNames[symbol] + ":" + this.lineNumbers[symbol];
+            }
+            this.names[symbol] = name;
+        }
+        return name;
+    }
+}
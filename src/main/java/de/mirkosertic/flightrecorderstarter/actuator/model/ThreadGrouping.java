@@ -0,0 +1,166 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.actuator.model;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedThread;
+
+import java.util.regex.Pattern;
+
+/**
+ * Groups the stack traces of a flame graph by the threads they were recorded in, and selects the threads. With a
+ * level, every thread or thread pool gets a frame of its own below the root, named like {@code [main]}. Threads of a
+ * pool are numbered, e.g. {@code http-nio-8080-exec-12} or {@code reactor-http-nio-3}, so the numbers at the end of
+ * their names are replaced by {@code *} to group them, e.g. {@code [http-nio-8080-exec-*]}.
+ * <p>
+ * Threads are selected by a pattern found in their names, in which {@code *} stands for any characters and
+ * {@code ?} for a single character, e.g. {@code exec-?} or {@code http-*-exec}. The pattern comes from a request,
+ * so it is no regular expression, which could take exponential time to match, and its length is limited.
+ * <p>
+ * Groupings are equal if they have the same name, which contains the level and the filter.
+ */
+public final class ThreadGrouping {
+
+    public static final String LEVEL_THREAD = "thread";
+    public static final String LEVEL_POOL = "pool";
+    public static final int MAX_FILTER_LENGTH = 100;
+
+    /**
+     * No level and all threads.
+     */
+    public static final ThreadGrouping NONE = new ThreadGrouping(null, null);
+
+    private static final Pattern THREAD_NUMBER = Pattern.compile("\\d+$");
+    private static final String UNKNOWN_THREAD = "unknown";
+
+    private final String level;
+    private final String filter;
+
+    private ThreadGrouping(final String level, final String filter) {
+        this.level = level;
+        this.filter = filter;
+    }
+
+    /**
+     * @param level  {@value #LEVEL_THREAD}, {@value #LEVEL_POOL}, or null for no level
+     * @param filter a pattern found in the names of the threads to include, or null for all threads
+     * @throws IllegalArgumentException if the level is unknown or the filter is longer than
+     *                                  {@value #MAX_FILTER_LENGTH} characters
+     */
+    public static ThreadGrouping of(final String level, final String filter) {
+        if (level != null && !LEVEL_THREAD.equals(level) && !LEVEL_POOL.equals(level)) {
+            throw new IllegalArgumentException("Unknown thread level " + level);
+        }
+        if (filter != null && filter.length() > MAX_FILTER_LENGTH) {
+            throw new IllegalArgumentException("Thread filter is longer than " + MAX_FILTER_LENGTH + " characters");
+        }
+        if (level == null && filter == null) {
+            return NONE;
+        }
+        return new ThreadGrouping(level, filter);
+    }
+
+    public boolean isNone() {
+        return this.level == null && this.filter == null;
+    }
+
+    /**
+     * @return true if only some threads are included
+     */
+    public boolean isFiltered() {
+        return this.filter != null;
+    }
+
+    /**
+     * @return the thread of an event, for samples the sampled thread
+     */
+    static RecordedThread threadOf(final RecordedEvent event) {
+        return event.hasField("sampledThread") ? event.getThread("sampledThread") : event.getThread();
+    }
+
+    /**
+     * @return the name of the frame of the thread, or null if it is not included. The name is empty without a
+     * level.
+     */
+    String frameNameOf(final RecordedThread thread) {
+        final String threadName = thread == null ? UNKNOWN_THREAD
+                : thread.getJavaName() != null ? thread.getJavaName() : thread.getOSName();
+        if (this.filter != null && !contains(threadName, this.filter)) {
+            return null;
+        }
+        if (this.level == null) {
+            return "";
+        }
+        final String group = LEVEL_POOL.equals(this.level) ? THREAD_NUMBER.matcher(threadName).replaceFirst("*")
+                : threadName;
+        return "[" + group + "]";
+    }
+
+    /**
+     * Finds a pattern with the wildcards {@code *} and {@code ?} in a name. On a mismatch, only the last {@code *}
+     * is extended by a character, so it takes at most the product of both lengths.
+     */
+    static boolean contains(final String name, final String pattern) {
+        int n = 0;
+        int p = 0;
+        // The pattern can start anywhere, as if it started with a *
+        int star = -1;
+        int starMatch = 0;
+        while (n < name.length()) {
+            if (p < pattern.length() && (pattern.charAt(p) == '?' || pattern.charAt(p) == name.charAt(n))) {
+                n++;
+                p++;
+            } else if (p < pattern.length() && pattern.charAt(p) == '*') {
+                star = p++;
+                starMatch = n;
+            } else if (p == pattern.length()) {
+                // The pattern can end anywhere, as if it ended with a *
+                return true;
+            } else {
+                p = star + 1;
+                n = ++starMatch;
+            }
+        }
+        while (p < pattern.length() && pattern.charAt(p) == '*') {
+            p++;
+        }
+        return p == pattern.length();
+    }
+
+    /**
+     * @return the name of the grouping, which is part of the name of the {@link EventProfile}
+     */
+    public String getName() {
+        final String name = this.level == null ? "threads" : "by-" + this.level;
+        return this.filter == null ? name : name + "~" + this.filter;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        return getName().equals(((ThreadGrouping) o).getName());
+    }
+
+    @Override
+    public int hashCode() {
+        return getName().hashCode();
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.actuator.model;
+
+import java.time.Instant;
+
+/**
+ * The part of a recording events are taken from, including its start and excluding its end. A missing start or
+ * end leaves the window open on that side. Windows are equal if they have the same bounds, so they can be part of
+ * cache keys.
+ *
+ * @param from the start of the window, or null
+ * @param to   the end of the window, or null
+ */
+public record TimeWindow(Instant from, Instant to) {
+
+    /**
+     * The whole recording.
+     */
+    public static final TimeWindow ALL = new TimeWindow(null, null);
+
+    public TimeWindow {
+        if (from != null && to != null && !from.isBefore(to)) {
+            throw new IllegalArgumentException("from must be before to");
+        }
+    }
+
+    public boolean isAll() {
+        return this.from == null && this.to == null;
+    }
+
+    public boolean contains(final Instant time) {
+        return (this.from == null || !time.isBefore(this.from)) && (this.to == null || time.isBefore(this.to));
+    }
+
+    /**
+     * @return true if the window overlaps the time between the given epoch nanoseconds, including both
+     */
+    boolean overlaps(final long startNanos, final long endNanos) {
+        return (this.from == null || endNanos >= epochNanosOf(this.from))
+                && (this.to == null || startNanos < epochNanosOf(this.to));
+    }
+
+    private static long epochNanosOf(final Instant instant) {
+        return instant.getEpochSecond() * 1_000_000_000L + instant.getNano();
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.actuator.model;
+
+import jdk.jfr.consumer.RecordedEvent;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The number of events of a profile per second of a recording, e.g. to select the {@link TimeWindow} of a
+ * latency spike. The seconds span the whole recording as given by its {@link RecordingIndex}, so seconds
+ * without events are included. Like for flame graphs, the fallback events of the profile are only counted if
+ * there are no events of the primary event types they replace.
+ */
+public class Timeline {
+
+    public static final long INTERVAL_MILLIS = 1000;
+
+    private final long start;
+    private final long[] counts;
+
+    private Timeline(final long start, final long[] counts) {
+        this.start = start;
+        this.counts = counts;
+    }
+
+    public static Timeline of(final RecordingIndex index, final EventProfile profile) throws IOException {
+        final TreeMap<Long, Long> events = new TreeMap<>();
+        final TreeMap<Long, Long> fallbackEvents = new TreeMap<>();
+        final long[] replacedEvents = new long[1];
+        final Set<String> eventTypes = profile.getAllEventTypes();
+        final RecordingAnalysis analysis = new RecordingAnalysis(index.getFile().toPath());
+        analysis.add(new RecordingAnalysis.Analyzer() {
+            @Override
+            public Set<String> eventTypes() {
+                return eventTypes;
+            }
+
+            @Override
+            public void accept(final RecordedEvent event) {
+                final String eventType = event.getEventType().getName();
+                if (profile.isReplacedByFallback(eventType)) {
+                    replacedEvents[0]++;
+                }
+                final TreeMap<Long, Long> counted = profile.getEventTypes().contains(eventType) ? events
+                        : fallbackEvents;
+                counted.merge(event.getStartTime().getEpochSecond(), 1L, Long::sum);
+            }
+        });
+        analysis.run();
+        if (replacedEvents[0] == 0) {
+            fallbackEvents.forEach((second, count) -> events.merge(second, count, Long::sum));
+        }
+
+        long first = index.getStart() != null ? index.getStart().getEpochSecond() : Long.MAX_VALUE;
+        long last = index.getEnd() != null ? index.getEnd().minusNanos(1).getEpochSecond() : Long.MIN_VALUE;
+        if (!events.isEmpty()) {
+            first = Math.min(first, events.firstKey());
+            last = Math.max(last, events.lastKey());
+        }
+        if (first > last) {
+            return new Timeline(0, new long[0]);
+        }
+        final long[] counts = new long[Math.toIntExact(last - first + 1)];
+        for (final Map.Entry<Long, Long> second : events.entrySet()) {
+            counts[(int) (second.getKey() - first)] = second.getValue();
+        }
+        return new Timeline(first * INTERVAL_MILLIS, counts);
+    }
+
+    /**
+     * @return the start of the first second in epoch milliseconds
+     */
+    public long getStart() {
+        return this.start;
+    }
+
+    public long getIntervalMillis() {
+        return INTERVAL_MILLIS;
+    }
+
+    /**
+     * @return the number of events per second
+     */
+    public long[] getCounts() {
+        return this.counts;
+    }
+
+    /**
+     * @return the window of the seconds from the first to the last given one, both included
+     */
+    public TimeWindow windowOf(final int fromSecond, final int toSecond) {
+        return new TimeWindow(Instant.ofEpochMilli(this.start + fromSecond * INTERVAL_MILLIS),
+                Instant.ofEpochMilli(this.start + (toSecond + 1) * INTERVAL_MILLIS));
+    }
+}
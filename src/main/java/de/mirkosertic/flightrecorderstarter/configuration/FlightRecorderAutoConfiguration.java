@@ -15,6 +15,7 @@
  */
 package de.mirkosertic.flightrecorderstarter.configuration;
 
+import de.mirkosertic.flightrecorderstarter.core.FlameGraphCacheMetrics;
 import de.mirkosertic.flightrecorderstarter.core.FlightRecorder;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
 import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
@@ -36,7 +37,16 @@ public class FlightRecorderAutoConfiguration {
 
     @Bean
     public FlightRecorder flightRecorder(final FlightRecorderDynamicConfiguration configuration) {
-        return new FlightRecorder(configuration);
+        final FlightRecorder flightRecorder = new FlightRecorder(configuration);
+        if (configuration.isContinuousRecordingEnabled()) {
+            flightRecorder.startContinuousRecording();
+        }
+        return flightRecorder;
+    }
+
+    @Bean
+    public FlameGraphCacheMetrics flameGraphCacheMetrics(final FlightRecorder flightRecorder) {
+        return new FlameGraphCacheMetrics(flightRecorder.getFlameGraphCache());
     }
 
 }
\ No newline at end of file
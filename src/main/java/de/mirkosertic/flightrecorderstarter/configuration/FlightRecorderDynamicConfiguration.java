@@ -36,6 +36,16 @@ public class FlightRecorderDynamicConfiguration {
     private int oldRecordingsMax;
     private String jfrBasePath;
     private String jfrCustomConfig;
+    private boolean continuousRecordingEnabled;
+    private long continuousRecordingMaxAge;
+    private ChronoUnit continuousRecordingMaxAgeTimeUnit;
+    private long continuousRecordingMaxSize;
+    private String continuousRecordingConfig;
+    private int streamBufferSize;
+    private int streamMaxEventsPerSecond;
+    private boolean incrementalFlameGraphEnabled;
+    private long flameGraphCacheMaxNodes;
+    private List<String> frameTransformers = List.of();
 
     private List<Trigger> trigger;
 
@@ -102,4 +112,84 @@ public class FlightRecorderDynamicConfiguration {
     public void setJfrCustomConfig(final String jfrCustomConfig) {
         this.jfrCustomConfig = jfrCustomConfig;
     }
+
+    public boolean isContinuousRecordingEnabled() {
+        return this.continuousRecordingEnabled;
+    }
+
+    public void setContinuousRecordingEnabled(final boolean continuousRecordingEnabled) {
+        this.continuousRecordingEnabled = continuousRecordingEnabled;
+    }
+
+    public long getContinuousRecordingMaxAge() {
+        return this.continuousRecordingMaxAge;
+    }
+
+    public void setContinuousRecordingMaxAge(final long continuousRecordingMaxAge) {
+        this.continuousRecordingMaxAge = continuousRecordingMaxAge;
+    }
+
+    public ChronoUnit getContinuousRecordingMaxAgeTimeUnit() {
+        return this.continuousRecordingMaxAgeTimeUnit;
+    }
+
+    public void setContinuousRecordingMaxAgeTimeUnit(final ChronoUnit continuousRecordingMaxAgeTimeUnit) {
+        this.continuousRecordingMaxAgeTimeUnit = continuousRecordingMaxAgeTimeUnit;
+    }
+
+    public long getContinuousRecordingMaxSize() {
+        return this.continuousRecordingMaxSize;
+    }
+
+    public void setContinuousRecordingMaxSize(final long continuousRecordingMaxSize) {
+        this.continuousRecordingMaxSize = continuousRecordingMaxSize;
+    }
+
+    public String getContinuousRecordingConfig() {
+        return this.continuousRecordingConfig;
+    }
+
+    public void setContinuousRecordingConfig(final String continuousRecordingConfig) {
+        this.continuousRecordingConfig = continuousRecordingConfig;
+    }
+
+    public int getStreamBufferSize() {
+        return this.streamBufferSize;
+    }
+
+    public void setStreamBufferSize(final int streamBufferSize) {
+        this.streamBufferSize = streamBufferSize;
+    }
+
+    public int getStreamMaxEventsPerSecond() {
+        return this.streamMaxEventsPerSecond;
+    }
+
+    public void setStreamMaxEventsPerSecond(final int streamMaxEventsPerSecond) {
+        this.streamMaxEventsPerSecond = streamMaxEventsPerSecond;
+    }
+
+    public boolean isIncrementalFlameGraphEnabled() {
+        return this.incrementalFlameGraphEnabled;
+    }
+
+    public void setIncrementalFlameGraphEnabled(final boolean incrementalFlameGraphEnabled) {
+        this.incrementalFlameGraphEnabled = incrementalFlameGraphEnabled;
+    }
+
+    public long getFlameGraphCacheMaxNodes() {
+        return this.flameGraphCacheMaxNodes;
+    }
+
+    public void setFlameGraphCacheMaxNodes(final long flameGraphCacheMaxNodes) {
+        this.flameGraphCacheMaxNodes = flameGraphCacheMaxNodes;
+    }
+
+    public List<String> getFrameTransformers() {
+        return this.frameTransformers;
+    }
+
+    public void setFrameTransformers(final List<String> frameTransformers) {
+        this.frameTransformers = frameTransformers;
+    }
 }
@@ -16,6 +16,7 @@ public class ManagementConfiguration {
 
     @Bean
     FlightRecorderStaticController flightRecorderStaticController(final ApplicationContext applicationContext, final FlightRecorder flightRecorder, final ObjectMapper mapper) {
-        return new FlightRecorderStaticController(applicationContext, flightRecorder, mapper);
+        return new FlightRecorderStaticController(applicationContext, flightRecorder, flightRecorder.getFlameGraphCache(),
+                flightRecorder.getFrameTransformation(), mapper);
     }
 }
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.controller;
+
+import de.mirkosertic.flightrecorderstarter.actuator.model.DifferentialFlameGraph;
+import de.mirkosertic.flightrecorderstarter.actuator.model.FlameGraph;
+import de.mirkosertic.flightrecorderstarter.actuator.model.FrameTree;
+import tools.jackson.core.JsonGenerator;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Serializes a flame graph as dictionary encoded JSON while it is read. Every frame name is written once to the
+ * {@code names} table, and the nodes are written in breadth first order as arrays of integers:
+ * <pre>
+ * {"names":["Recording","java.lang.Thread.run",...],"nodes":[[0,668,3],[1,33,2],...]}
+ * </pre>
+ * A node is {@code [nameIndex, value, childCount]}, and the nodes of a {@link DifferentialFlameGraph} have the
+ * delta as fourth element. The first node is the root, and the children of a node are consecutive and sorted by
+ * their values like in the tree format. They follow the children of the nodes before it, so the index of the
+ * first child is one plus the sum of the child counts of the nodes before it. It is not written, since these
+ * ever growing numbers compress badly, and the decoder computes them in the same single pass.
+ */
+class CompactFlameGraphJsonInputStream extends GeneratedInputStream {
+
+    private static final String ROOT_NAME = "Recording";
+
+    private final FrameTree tree;
+    private final DifferentialFlameGraph differential;
+    private final JsonGenerator generator;
+
+    // The nodes in breadth first order, the name index by symbol, starting at 1 after the root name, and a node
+    // with each name
+    private final int[] order;
+    private final int[] nameOf;
+    private final int[] nodeOfName;
+    private final int names;
+
+    private int nextName;
+    private int nextNode;
+
+    CompactFlameGraphJsonInputStream(final FlameGraph graph, final ObjectMapper objectMapper, final boolean gzip)
+            throws IOException {
+        super(gzip);
+        this.tree = graph.getTree();
+        this.differential = graph instanceof final DifferentialFlameGraph diff ? diff : null;
+        this.generator = objectMapper.createGenerator(out());
+
+        // A single pass numbers the nodes and the names used by them, excluded frames are not part of the table
+        this.order = new int[this.tree.size()];
+        int[] nameOfSymbol = new int[1024];
+        int[] nodeOfName = new int[1024];
+        int size = 1;
+        int names = 1;
+        for (int i = 0; i < size; i++) {
+            for (int child = this.tree.firstChildOf(this.order[i]); child != FrameTree.NONE;
+                 child = this.tree.nextSiblingOf(child)) {
+                this.order[size++] = child;
+                final int symbol = this.tree.symbolOf(child);
+                if (symbol >= nameOfSymbol.length) {
+                    nameOfSymbol = Arrays.copyOf(nameOfSymbol, Math.max(symbol + 1, nameOfSymbol.length * 2));
+                }
+                if (nameOfSymbol[symbol] == 0) {
+                    if (names == nodeOfName.length) {
+                        nodeOfName = Arrays.copyOf(nodeOfName, names * 2);
+                    }
+                    nodeOfName[names] = child;
+                    nameOfSymbol[symbol] = names++;
+                }
+            }
+        }
+        this.nameOf = nameOfSymbol;
+        this.nodeOfName = nodeOfName;
+        this.names = names;
+
+        this.generator.writeStartObject();
+        this.generator.writeName("names");
+        this.generator.writeStartArray();
+    }
+
+    @Override
+    boolean hasNext() {
+        return this.nextNode < this.order.length;
+    }
+
+    @Override
+    void writeNext() {
+        if (this.nextName < this.names) {
+            writeName(this.nextName++);
+            return;
+        }
+        if (this.nextNode == 0) {
+            this.generator.writeEndArray();
+            this.generator.writeName("nodes");
+            this.generator.writeStartArray();
+        }
+        final int node = this.order[this.nextNode++];
+        int childCount = 0;
+        for (int child = this.tree.firstChildOf(node); child != FrameTree.NONE;
+             child = this.tree.nextSiblingOf(child)) {
+            childCount++;
+        }
+        this.generator.writeStartArray();
+        this.generator.writeNumber(node == FrameTree.ROOT ? 0 : this.nameOf[this.tree.symbolOf(node)]);
+        this.generator.writeNumber(this.tree.valueOf(node));
+        this.generator.writeNumber(childCount);
+        if (this.differential != null) {
+            this.generator.writeNumber(this.differential.deltaOf(node));
+        }
+        this.generator.writeEndArray();
+    }
+
+    private void writeName(final int name) {
+        this.generator.writeString(name == 0 ? ROOT_NAME : this.tree.nameOf(this.nodeOfName[name]));
+    }
+
+    @Override
+    void flush() {
+        this.generator.flush();
+    }
+
+    @Override
+    void finish() {
+        this.generator.writeEndArray();
+        this.generator.writeEndObject();
+        // The generator only closes its target if the object mapper is configured to do so
+        this.generator.close();
+    }
+}
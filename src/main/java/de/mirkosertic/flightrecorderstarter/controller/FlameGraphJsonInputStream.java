@@ -0,0 +1,136 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.controller;
+
+import de.mirkosertic.flightrecorderstarter.actuator.model.DifferentialFlameGraph;
+import de.mirkosertic.flightrecorderstarter.actuator.model.FlameGraph;
+import de.mirkosertic.flightrecorderstarter.actuator.model.FrameTree;
+import tools.jackson.core.JsonGenerator;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Serializes a flame graph as JSON while it is read. The tree is walked depth first with an explicit stack, and
+ * a chunk of nodes is written with a Jackson generator whenever the previous chunk has been consumed. The document
+ * has the same structure as the serialized {@link FlameGraph#getRoot()}, and the children are already sorted by
+ * their values. The nodes of a {@link DifferentialFlameGraph} also have a {@code delta}, which d3-flamegraph uses
+ * to color them.
+ * <p>
+ * The document can also be limited to the subtree of a node and to a number of levels below it. Nodes at the
+ * last level have no children then, and are marked as {@code truncated} if they have children in the tree.
+ */
+class FlameGraphJsonInputStream extends GeneratedInputStream {
+
+    private static final String ROOT_NAME = "Recording";
+
+    private final FrameTree tree;
+    private final DifferentialFlameGraph differential;
+    private final JsonGenerator generator;
+    private final int maxDepth;
+
+    // The next child to write for each level of the path to the current node
+    private int[] pending;
+    private int depth;
+
+    FlameGraphJsonInputStream(final FlameGraph graph, final ObjectMapper objectMapper, final boolean gzip)
+            throws IOException {
+        this(graph, objectMapper, FrameTree.ROOT, Integer.MAX_VALUE, gzip);
+    }
+
+    /**
+     * @param node     the node to start at, which is named like the root if it is the root
+     * @param maxDepth the number of levels below the node to write
+     */
+    FlameGraphJsonInputStream(final FlameGraph graph, final ObjectMapper objectMapper, final int node,
+                              final int maxDepth, final boolean gzip) throws IOException {
+        super(gzip);
+        this.tree = graph.getTree();
+        this.differential = graph instanceof final DifferentialFlameGraph diff ? diff : null;
+        this.generator = objectMapper.createGenerator(out());
+        this.maxDepth = maxDepth;
+        this.pending = new int[64];
+
+        if (writeStart(node == FrameTree.ROOT ? ROOT_NAME : this.tree.nameOf(node), node, maxDepth == 0)) {
+            this.pending[this.depth++] = this.tree.firstChildOf(node);
+        }
+    }
+
+    @Override
+    boolean hasNext() {
+        return this.depth > 0;
+    }
+
+    @Override
+    void writeNext() {
+        final int node = this.pending[this.depth - 1];
+        if (node == FrameTree.NONE) {
+            this.generator.writeEndArray();
+            this.generator.writeEndObject();
+            this.depth--;
+            return;
+        }
+        this.pending[this.depth - 1] = this.tree.nextSiblingOf(node);
+        if (!writeStart(this.tree.nameOf(node), node, this.depth == this.maxDepth)) {
+            return;
+        }
+        if (this.depth == this.pending.length) {
+            this.pending = Arrays.copyOf(this.pending, this.depth * 2);
+        }
+        this.pending[this.depth++] = this.tree.firstChildOf(node);
+    }
+
+    @Override
+    void flush() {
+        this.generator.flush();
+    }
+
+    @Override
+    void finish() {
+        // The generator only closes its target if the object mapper is configured to do so
+        this.generator.close();
+    }
+
+    /**
+     * Writes a node up to its children.
+     *
+     * @return false if the node has been written completely, since it is at the last level
+     */
+    private boolean writeStart(final String name, final int node, final boolean lastLevel) {
+        this.generator.writeStartObject();
+        this.generator.writeName("name");
+        this.generator.writeString(name);
+        this.generator.writeName("value");
+        this.generator.writeNumber(this.tree.valueOf(node));
+        if (this.differential != null) {
+            this.generator.writeName("delta");
+            this.generator.writeNumber(this.differential.deltaOf(node));
+        }
+        if (lastLevel && this.tree.firstChildOf(node) != FrameTree.NONE) {
+            this.generator.writeName("truncated");
+            this.generator.writeBoolean(true);
+        }
+        this.generator.writeName("children");
+        this.generator.writeStartArray();
+        if (lastLevel) {
+            this.generator.writeEndArray();
+            this.generator.writeEndObject();
+            return false;
+        }
+        return true;
+    }
+}
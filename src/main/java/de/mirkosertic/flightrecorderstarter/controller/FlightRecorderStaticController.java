@@ -1,21 +1,43 @@
 package de.mirkosertic.flightrecorderstarter.controller;
 
+import de.mirkosertic.flightrecorderstarter.actuator.model.Butterfly;
+import de.mirkosertic.flightrecorderstarter.actuator.model.DifferentialFlameGraph;
+import de.mirkosertic.flightrecorderstarter.actuator.model.EventProfile;
 import de.mirkosertic.flightrecorderstarter.actuator.model.FlameGraph;
+import de.mirkosertic.flightrecorderstarter.actuator.model.FrameTree;
+import de.mirkosertic.flightrecorderstarter.actuator.model.FrameTransformation;
+import de.mirkosertic.flightrecorderstarter.actuator.model.HotMethods;
+import de.mirkosertic.flightrecorderstarter.actuator.model.MonitorContention;
+import de.mirkosertic.flightrecorderstarter.actuator.model.PrefixFrameFilter;
+import de.mirkosertic.flightrecorderstarter.actuator.model.Pruning;
+import de.mirkosertic.flightrecorderstarter.actuator.model.RecordingIndex;
+import de.mirkosertic.flightrecorderstarter.actuator.model.RecordingSummary;
+import de.mirkosertic.flightrecorderstarter.actuator.model.ThreadGrouping;
+import de.mirkosertic.flightrecorderstarter.actuator.model.TimeWindow;
+import de.mirkosertic.flightrecorderstarter.actuator.model.Timeline;
+import de.mirkosertic.flightrecorderstarter.core.FlameGraphCache;
 import de.mirkosertic.flightrecorderstarter.core.FlightRecorder;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.ApplicationContext;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.InputStreamResource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import tools.jackson.databind.ObjectMapper;
 
 import java.io.File;
+import java.io.IOException;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -27,10 +49,22 @@ public class FlightRecorderStaticController {
     private final static Logger LOGGER = Logger.getLogger(FlightRecorderStaticController.class.getCanonicalName());
     public static final String DATA_JSON = "/data.json";
     public static final String RAWDATA_JSON = "/rawdata.json";
+    public static final String ALLOCATIONS_JSON = "/allocations.json";
+    public static final String LOCKS_JSON = "/locks.json";
+    public static final String MONITORS_JSON = "/monitors.json";
+    public static final String STACKS_FOLDED = "/stacks.folded";
+    public static final String PROFILE_PB_GZ = "/profile.pb.gz";
+    public static final String TREE = "/tree";
+    public static final String BUTTERFLY_JSON = "/butterfly.json";
+    public static final String HOTMETHODS_JSON = "/hotmethods.json";
+    public static final String TIMELINE_JSON = "/timeline.json";
+    public static final String SUMMARY_JSON = "/summary.json";
 
 
     private final ApplicationContext applicationContext;
     private final FlightRecorder flightRecorder;
+    private final FlameGraphCache flameGraphCache;
+    private final FrameTransformation frameTransformation;
     private final ObjectMapper objectMapper;
 
     static final MediaType TEXT_CSS = new MediaType("text", "css");
@@ -41,10 +75,18 @@ public class FlightRecorderStaticController {
     static final String D3_FLAMEGRAPH_COLOR_MAPPER_MIN_JS = "/d3-flamegraph-colorMapper.min.js";
     static final String D3_FLAMEGRAPH_TOOLTIP_MIN_JS = "/d3-flamegraph-tooltip.min.js";
     static final String D3_FLAMEGRAPH_CSS = "/d3-flamegraph.css";
+    static final String FLAMEGRAPH_CANVAS_JS = "/flamegraph-canvas.js";
+    static final String FLAMEGRAPH_COMPACT_JS = "/flamegraph-compact.js";
 
     static final String RAM_FLAMEGRAPH_HTML = "/rawflamegraph.html";
     static final String FLAMEGRAPH_HTML = "/flamegraph.html";
+    static final String ALLOCATIONS_HTML = "/allocations.html";
+    static final String LOCKS_HTML = "/locks.html";
+    static final String DIFF_FLAMEGRAPH_HTML = "/diff.html";
+    static final String TREE_HTML = "/tree.html";
+    static final String CANVAS_FLAMEGRAPH_HTML = "/canvas.html";
     static final String RECORDING_ID = "/{recordingId}";
+    static final String DIFF = "/{baselineRecordingId}/diff/{recordingId}";
 
     static final String CACHE_CONTROL_KEY = "Cache-Control";
     static final String CACHE_CONTROL_VALUE = "no-cache, no-store, must-revalidate";
@@ -52,13 +94,31 @@ public class FlightRecorderStaticController {
     static final String PRAGMA_VALUE = "no-cache";
     static final String EXPIRES_KEY = "Expires";
     static final String EXPIRES_VALUE = "0";
+    static final String GZIP = "gzip";
+    static final String MODE_CPU = "cpu";
+    static final String MODE_WALL = "wall";
+    static final String FORMAT_TREE = "tree";
+    static final String FORMAT_COMPACT = "compact";
+    static final String SORT_SELF = "self";
+    static final String SORT_TOTAL = "total";
+    static final String INVERTED = "inverted";
 
 
     public FlightRecorderStaticController(
             final ApplicationContext applicationContext,
-            final FlightRecorder flightRecorder, final ObjectMapper objectMapper) {
+            final FlightRecorder flightRecorder, final FlameGraphCache flameGraphCache,
+            final ObjectMapper objectMapper) {
+        this(applicationContext, flightRecorder, flameGraphCache, FrameTransformation.NONE, objectMapper);
+    }
+
+    public FlightRecorderStaticController(
+            final ApplicationContext applicationContext,
+            final FlightRecorder flightRecorder, final FlameGraphCache flameGraphCache,
+            final FrameTransformation frameTransformation, final ObjectMapper objectMapper) {
         this.applicationContext = applicationContext;
         this.flightRecorder = flightRecorder;
+        this.flameGraphCache = flameGraphCache;
+        this.frameTransformation = frameTransformation;
         this.objectMapper = objectMapper;
     }
 
@@ -103,6 +163,22 @@ public class FlightRecorderStaticController {
                 .body(new ClassPathResource(D3_FLAMEGRAPH_CSS));
     }
 
+    @GetMapping(FLAMEGRAPH_CANVAS_JS)
+    public ResponseEntity<?> downloadFlameGraphCanvasJs() {
+        return ResponseEntity.ok()
+                .headers(createHttpHeaders())
+                .contentType(TEXT_JAVASCRIPT)
+                .body(new ClassPathResource(FLAMEGRAPH_CANVAS_JS));
+    }
+
+    @GetMapping(FLAMEGRAPH_COMPACT_JS)
+    public ResponseEntity<?> downloadFlameGraphCompactJs() {
+        return ResponseEntity.ok()
+                .headers(createHttpHeaders())
+                .contentType(TEXT_JAVASCRIPT)
+                .body(new ClassPathResource(FLAMEGRAPH_COMPACT_JS));
+    }
+
 
     @GetMapping(RECORDING_ID + FLAMEGRAPH_HTML)
     public ResponseEntity<?> downloadRecordingFlameGraph(@PathVariable final long recordingId) {
@@ -122,31 +198,272 @@ public class FlightRecorderStaticController {
                 .body(new ClassPathResource(RAM_FLAMEGRAPH_HTML));
     }
 
+    @GetMapping(RECORDING_ID + ALLOCATIONS_HTML)
+    public ResponseEntity<?> downloadRecordingAllocationFlameGraph(@PathVariable final long recordingId) {
+
+        return ResponseEntity.ok()
+                .headers(createHttpHeaders())
+                .contentType(MediaType.TEXT_HTML)
+                .body(new ClassPathResource(ALLOCATIONS_HTML));
+    }
+
+    @GetMapping(RECORDING_ID + LOCKS_HTML)
+    public ResponseEntity<?> downloadRecordingLockFlameGraph(@PathVariable final long recordingId) {
+
+        return ResponseEntity.ok()
+                .headers(createHttpHeaders())
+                .contentType(MediaType.TEXT_HTML)
+                .body(new ClassPathResource(LOCKS_HTML));
+    }
+
+    /**
+     * Flame graph drawn to a canvas, for flame graphs too large for the SVG of the other pages. It shows
+     * {@link #DATA_JSON}, or {@link #RAWDATA_JSON} with {@code raw=true}.
+     */
+    @GetMapping(RECORDING_ID + CANVAS_FLAMEGRAPH_HTML)
+    public ResponseEntity<?> downloadRecordingCanvasFlameGraph(@PathVariable final long recordingId) {
+
+        return ResponseEntity.ok()
+                .headers(createHttpHeaders())
+                .contentType(MediaType.TEXT_HTML)
+                .body(new ClassPathResource(CANVAS_FLAMEGRAPH_HTML));
+    }
+
+    @GetMapping(RECORDING_ID + TREE_HTML)
+    public ResponseEntity<?> downloadRecordingTreeFlameGraph(@PathVariable final long recordingId) {
+
+        return ResponseEntity.ok()
+                .headers(createHttpHeaders())
+                .contentType(MediaType.TEXT_HTML)
+                .body(new ClassPathResource(TREE_HTML));
+    }
+
+    @GetMapping(DIFF + FLAMEGRAPH_HTML)
+    public ResponseEntity<?> downloadDifferentialFlameGraph(@PathVariable final long baselineRecordingId,
+                                                            @PathVariable final long recordingId) {
+
+        return ResponseEntity.ok()
+                .headers(createHttpHeaders())
+                .contentType(MediaType.TEXT_HTML)
+                .body(new ClassPathResource(DIFF_FLAMEGRAPH_HTML));
+    }
+
+    /**
+     * Flame graph of the frames of the application. The {@code mode} selects the events, {@code cpu} counts
+     * the execution samples, {@code wall} sums up the wall-clock time of samples and socket and file I/O.
+     * Large flame graphs can be limited by {@code minPercent}, {@code maxDepth} and {@code maxNodes}, see
+     * {@link Pruning}, and are much smaller in the {@code compact} format. With {@code inverted}, the flame graph
+     * is bottom-up and starts at the methods the samples were taken in. With {@code threads}, the stack traces are
+     * grouped below a frame per {@code thread} or thread {@code pool}, and {@code threadFilter} selects threads by
+     * a pattern with wildcards, see {@link #threadGroupingOf}.
+     */
     @GetMapping(RECORDING_ID + DATA_JSON)
-    public ResponseEntity<?> downloadRecordingJson(@PathVariable final long recordingId) {
-        LOGGER.log(Level.INFO, "Closing recording with ID {0} and downloading file", recordingId);
-        try {
-            final File file = this.flightRecorder.stopRecording(recordingId);
+    public ResponseEntity<?> downloadRecordingJson(@PathVariable final long recordingId,
+                                                   @RequestParam(defaultValue = "false") final boolean snapshot,
+                                                   @RequestParam(required = false) final String from,
+                                                   @RequestParam(required = false) final String to,
+                                                   @RequestParam(required = false) final String threads,
+                                                   @RequestParam(required = false) final String threadFilter,
+                                                   @RequestParam(defaultValue = MODE_CPU) final String mode,
+                                                   @RequestParam(defaultValue = "0") final double minPercent,
+                                                   @RequestParam(defaultValue = "0") final int maxDepth,
+                                                   @RequestParam(defaultValue = "0") final int maxNodes,
+                                                   @RequestParam(defaultValue = FORMAT_TREE) final String format,
+                                                   @RequestParam(defaultValue = "false") final boolean inverted,
+                                                   @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) final String acceptEncoding) {
+        if (!isKnownFormat(format)) {
+            return ResponseEntity.badRequest().body("Unknown format " + format);
+        }
+        return withOptions(mode, from, to, threads, threadFilter, minPercent, maxDepth, maxNodes,
+                options -> withFlameGraph(recordingId, snapshot, options.profile(), applicationFrameFilter(),
+                        options.window(), inverted, graph -> flameGraphResponse(options.pruning().apply(graph),
+                                format, acceptsGzip(acceptEncoding))));
+    }
 
-            if (file == null) {
-                return ResponseEntity.notFound().build();
-            }
+    /**
+     * Like {@link #DATA_JSON}, but with the frames of all classes.
+     */
+    @GetMapping(RECORDING_ID + RAWDATA_JSON)
+    public ResponseEntity<?> downloadRecordingRawJson(@PathVariable final long recordingId,
+                                                      @RequestParam(defaultValue = "false") final boolean snapshot,
+                                                      @RequestParam(required = false) final String from,
+                                                      @RequestParam(required = false) final String to,
+                                                      @RequestParam(required = false) final String threads,
+                                                      @RequestParam(required = false) final String threadFilter,
+                                                      @RequestParam(defaultValue = MODE_CPU) final String mode,
+                                                      @RequestParam(defaultValue = "0") final double minPercent,
+                                                      @RequestParam(defaultValue = "0") final int maxDepth,
+                                                      @RequestParam(defaultValue = "0") final int maxNodes,
+                                                      @RequestParam(defaultValue = FORMAT_TREE) final String format,
+                                                      @RequestParam(defaultValue = "false") final boolean inverted,
+                                                      @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) final String acceptEncoding) {
+        if (!isKnownFormat(format)) {
+            return ResponseEntity.badRequest().body("Unknown format " + format);
+        }
+        return withOptions(mode, from, to, threads, threadFilter, minPercent, maxDepth, maxNodes,
+                options -> withFlameGraph(recordingId, snapshot, options.profile(), FlameGraph.ALL,
+                        options.window(), inverted, graph -> flameGraphResponse(options.pruning().apply(graph),
+                                format, acceptsGzip(acceptEncoding))));
+    }
 
-            final String bootClass = findBootClass(this.applicationContext);
-            final FlameGraph graph;
-            if (bootClass == null) {
-                graph = FlameGraph.from(file);
-            } else {
-                final int p = bootClass.lastIndexOf(".");
-                final String basePackage = bootClass.substring(0, p + 1);
-                graph = FlameGraph.from(file, new FlameGraph.PackageNamePrefixFrameFilter(basePackage));
-            }
-            final String jsonData = this.objectMapper.writeValueAsString(graph.getRoot());
-            return ResponseEntity.ok()
+    /**
+     * A subtree of the flame graph, so large flame graphs can be loaded level by level. The {@code path} is the
+     * call path of the subtree, given by the frame names separated by {@code ;} like in {@link #STACKS_FOLDED},
+     * and the subtree contains {@code depth} levels below it. Nodes with more levels below them are marked as
+     * {@code truncated}. The flame graph is cached, so every drill-down only walks the path. With
+     * {@code inverted}, the path starts at a leaf method and continues with its callers.
+     */
+    @GetMapping(RECORDING_ID + TREE)
+    public ResponseEntity<?> downloadRecordingSubtree(@PathVariable final long recordingId,
+                                                      @RequestParam(defaultValue = "") final String path,
+                                                      @RequestParam(defaultValue = "3") final int depth,
+                                                      @RequestParam(defaultValue = "false") final boolean snapshot,
+                                                      @RequestParam(required = false) final String from,
+                                                      @RequestParam(required = false) final String to,
+                                                      @RequestParam(required = false) final String threads,
+                                                      @RequestParam(required = false) final String threadFilter,
+                                                      @RequestParam(defaultValue = MODE_CPU) final String mode,
+                                                      @RequestParam(defaultValue = "false") final boolean raw,
+                                                      @RequestParam(defaultValue = "false") final boolean inverted,
+                                                      @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) final String acceptEncoding) {
+        if (depth < 1) {
+            return ResponseEntity.badRequest().body("depth must be at least 1");
+        }
+        final List<String> frames = path.isEmpty() ? List.of() : List.of(path.split(";"));
+        return withOptions(mode, from, to, threads, threadFilter, 0, 0, 0,
+                options -> withFlameGraph(recordingId, snapshot, options.profile(),
+                        raw ? FlameGraph.ALL : applicationFrameFilter(), options.window(), inverted,
+                        graph -> {
+                            final int node = graph.getTree().nodeOf(frames);
+                            if (node == FrameTree.NONE) {
+                                return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Unknown path " + path);
+                            }
+                            final boolean gzip = acceptsGzip(acceptEncoding);
+                            return streamedResponse(
+                                    new FlameGraphJsonInputStream(graph, this.objectMapper, node, depth, gzip),
+                                    MediaType.APPLICATION_JSON, gzip);
+                        }));
+    }
+
+    /**
+     * The callers and callees of a {@code method}, given by its frame name like {@code java.lang.Thread.run},
+     * with their self and total values, see {@link Butterfly}. They are aggregated from the cached flame graph, so
+     * the recording is only parsed once for all methods. {@code mode}, {@code raw} and {@code snapshot} work like
+     * for {@link #TREE}.
+     */
+    @GetMapping(RECORDING_ID + BUTTERFLY_JSON)
+    public ResponseEntity<?> downloadRecordingButterflyJson(@PathVariable final long recordingId,
+                                                            @RequestParam final String method,
+                                                            @RequestParam(defaultValue = "false") final boolean snapshot,
+                                                            @RequestParam(required = false) final String from,
+                                                            @RequestParam(required = false) final String to,
+                                                            @RequestParam(defaultValue = MODE_CPU) final String mode,
+                                                            @RequestParam(defaultValue = "false") final boolean raw) {
+        return withOptions(mode, from, to, null, null, 0, 0, 0,
+                options -> withFlameGraph(recordingId, snapshot, options.profile(),
+                        raw ? FlameGraph.ALL : applicationFrameFilter(), options.window(), false,
+                        graph -> {
+                            final Butterfly butterfly = Butterfly.of(graph, method);
+                            if (butterfly == null) {
+                                return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Unknown method " + method);
+                            }
+                            return ResponseEntity.ok()
+                                    .headers(createHttpHeaders())
+                                    .contentType(MediaType.APPLICATION_JSON)
+                                    .body(butterfly);
+                        }));
+    }
+
+    /**
+     * The {@code limit} methods with the highest self or total values, sorted by {@code sort}, see
+     * {@link HotMethods}. The table is computed from the cached flame graph. With {@code lines}, every line of a
+     * method is listed on its own, which needs a flame graph keeping the line numbers, so the recording is parsed
+     * once more for it. {@code mode}, {@code raw} and {@code snapshot} work like for {@link #TREE}.
+     */
+    @GetMapping(RECORDING_ID + HOTMETHODS_JSON)
+    public ResponseEntity<?> downloadRecordingHotMethodsJson(@PathVariable final long recordingId,
+                                                             @RequestParam(defaultValue = "false") final boolean snapshot,
+                                                             @RequestParam(required = false) final String from,
+                                                             @RequestParam(required = false) final String to,
+                                                             @RequestParam(defaultValue = MODE_CPU) final String mode,
+                                                             @RequestParam(defaultValue = "false") final boolean raw,
+                                                             @RequestParam(defaultValue = "false") final boolean lines,
+                                                             @RequestParam(defaultValue = SORT_SELF) final String sort,
+                                                             @RequestParam(defaultValue = "20") final int limit) {
+        if (!SORT_SELF.equals(sort) && !SORT_TOTAL.equals(sort)) {
+            return ResponseEntity.badRequest().body("Unknown sort " + sort);
+        }
+        if (limit < 1) {
+            return ResponseEntity.badRequest().body("limit must be at least 1");
+        }
+        return withOptions(mode, from, to, null, null, 0, 0, 0,
+                options -> withFlameGraph(recordingId, snapshot,
+                        lines ? options.profile().withLineNumbers() : options.profile(),
+                        raw ? FlameGraph.ALL : applicationFrameFilter(), options.window(), false,
+                        graph -> ResponseEntity.ok()
+                                .headers(createHttpHeaders())
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .body(HotMethods.of(graph, SORT_TOTAL.equals(sort), limit))));
+    }
+
+    /**
+     * The number of events of the {@code mode} per second of the recording, see {@link Timeline}, e.g. to select
+     * the {@code from} and {@code to} parameters of the flame graphs for a part of a long recording. The recording
+     * is parsed on every request.
+     */
+    @GetMapping(RECORDING_ID + TIMELINE_JSON)
+    public ResponseEntity<?> downloadRecordingTimelineJson(@PathVariable final long recordingId,
+                                                           @RequestParam(defaultValue = "false") final boolean snapshot,
+                                                           @RequestParam(defaultValue = MODE_CPU) final String mode) {
+        final EventProfile profile = profileOf(mode);
+        if (profile == null) {
+            return ResponseEntity.badRequest().body("Unknown mode " + mode);
+        }
+        try {
+            return withRecordingFile(recordingId, snapshot, file -> ResponseEntity.ok()
                     .headers(createHttpHeaders())
                     .contentType(MediaType.APPLICATION_JSON)
-                    .body(jsonData);
+                    .body(Timeline.of(indexOf(recordingId, file), profile)));
+        } catch (final Exception e) {
+            LOGGER.log(Level.WARNING, "Could not create json data for flight recording", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(e.getMessage());
+        }
+    }
 
+    /**
+     * Flame graph of a recording compared to a baseline recording, e.g. of the previous deployment. The values
+     * are those of the recording, and every node has the delta to the normalized value of the baseline. Both
+     * recordings are stopped, and the comparison is cached like the flame graphs it is computed from. Like
+     * {@link #DATA_JSON}, only frames of the application are shown unless {@code raw} is set.
+     */
+    @GetMapping(DIFF + DATA_JSON)
+    public ResponseEntity<?> downloadDifferentialJson(@PathVariable final long baselineRecordingId,
+                                                      @PathVariable final long recordingId,
+                                                      @RequestParam(defaultValue = MODE_CPU) final String mode,
+                                                      @RequestParam(defaultValue = "false") final boolean raw,
+                                                      @RequestParam(defaultValue = FORMAT_TREE) final String format,
+                                                      @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) final String acceptEncoding) {
+        if (!isKnownFormat(format)) {
+            return ResponseEntity.badRequest().body("Unknown format " + format);
+        }
+        final EventProfile profile = profileOf(mode);
+        if (profile == null) {
+            return ResponseEntity.badRequest().body("Unknown mode " + mode);
+        }
+        try {
+            final FlameGraph.FrameFilter frameFilter = raw ? FlameGraph.ALL : applicationFrameFilter();
+            final FlameGraph baseline = finishedFlameGraph(baselineRecordingId, profile, frameFilter);
+            if (baseline == null) {
+                return ResponseEntity.notFound().build();
+            }
+            final FlameGraph candidate = finishedFlameGraph(recordingId, profile, frameFilter);
+            if (candidate == null) {
+                return ResponseEntity.notFound().build();
+            }
+            return flameGraphResponse(this.flameGraphCache.get(recordingId, baselineRecordingId,
+                    List.of(profile, frameFilter), () -> DifferentialFlameGraph.of(baseline, candidate)),
+                    format, acceptsGzip(acceptEncoding));
         } catch (final Exception e) {
             LOGGER.log(Level.WARNING, "Could not create json data for flight recording", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -154,24 +471,225 @@ public class FlightRecorderStaticController {
         }
     }
 
-    @GetMapping(RECORDING_ID + RAWDATA_JSON)
-    public ResponseEntity<?> downloadRecordingRawJson(@PathVariable final long recordingId) {
-        LOGGER.log(Level.INFO, "Closing recording with ID {0} and downloading file", recordingId);
+    /**
+     * Flame graph of the allocated bytes. Like {@link #DATA_JSON}, only frames of the application are shown
+     * unless {@code raw} is set, and the classes of the allocated objects are added as leaf frames unless
+     * {@code allocatedClass} is false.
+     */
+    @GetMapping(RECORDING_ID + ALLOCATIONS_JSON)
+    public ResponseEntity<?> downloadRecordingAllocationsJson(@PathVariable final long recordingId,
+                                                              @RequestParam(defaultValue = "false") final boolean snapshot,
+                                                              @RequestParam(required = false) final String from,
+                                                              @RequestParam(required = false) final String to,
+                                                              @RequestParam(required = false) final String threads,
+                                                              @RequestParam(required = false) final String threadFilter,
+                                                              @RequestParam(defaultValue = "false") final boolean raw,
+                                                              @RequestParam(defaultValue = "true") final boolean allocatedClass,
+                                                              @RequestParam(defaultValue = "0") final double minPercent,
+                                                              @RequestParam(defaultValue = "0") final int maxDepth,
+                                                              @RequestParam(defaultValue = "0") final int maxNodes,
+                                                              @RequestParam(defaultValue = FORMAT_TREE) final String format,
+                                                              @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) final String acceptEncoding) {
+        if (!isKnownFormat(format)) {
+            return ResponseEntity.badRequest().body("Unknown format " + format);
+        }
+        return withOptions(EventProfile.allocations(allocatedClass), from, to, threads, threadFilter, minPercent,
+                maxDepth, maxNodes,
+                options -> withFlameGraph(recordingId, snapshot, options.profile(),
+                        raw ? FlameGraph.ALL : applicationFrameFilter(), options.window(), false,
+                        graph -> flameGraphResponse(options.pruning().apply(graph), format,
+                                acceptsGzip(acceptEncoding))));
+    }
+
+    /**
+     * Flame graph of the time threads were blocked on monitors or parked, in nanoseconds. Like {@link #DATA_JSON},
+     * only frames of the application are shown unless {@code raw} is set, and the classes of the monitors are
+     * added as leaf frames unless {@code monitorClass} is false.
+     */
+    @GetMapping(RECORDING_ID + LOCKS_JSON)
+    public ResponseEntity<?> downloadRecordingLocksJson(@PathVariable final long recordingId,
+                                                        @RequestParam(defaultValue = "false") final boolean snapshot,
+                                                        @RequestParam(required = false) final String from,
+                                                        @RequestParam(required = false) final String to,
+                                                        @RequestParam(required = false) final String threads,
+                                                        @RequestParam(required = false) final String threadFilter,
+                                                        @RequestParam(defaultValue = "false") final boolean raw,
+                                                        @RequestParam(defaultValue = "true") final boolean monitorClass,
+                                                        @RequestParam(defaultValue = "0") final double minPercent,
+                                                        @RequestParam(defaultValue = "0") final int maxDepth,
+                                                        @RequestParam(defaultValue = "0") final int maxNodes,
+                                                        @RequestParam(defaultValue = FORMAT_TREE) final String format,
+                                                        @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) final String acceptEncoding) {
+        if (!isKnownFormat(format)) {
+            return ResponseEntity.badRequest().body("Unknown format " + format);
+        }
+        return withOptions(EventProfile.locks(monitorClass), from, to, threads, threadFilter, minPercent, maxDepth,
+                maxNodes,
+                options -> withFlameGraph(recordingId, snapshot, options.profile(),
+                        raw ? FlameGraph.ALL : applicationFrameFilter(), options.window(), false,
+                        graph -> flameGraphResponse(options.pruning().apply(graph), format,
+                                acceptsGzip(acceptEncoding))));
+    }
+
+    /**
+     * The flame graph with the frames of all classes in the collapsed stack format, one line per call path, which
+     * is read by e.g. Brendan Gregg's flamegraph.pl or speedscope.
+     */
+    @GetMapping(RECORDING_ID + STACKS_FOLDED)
+    public ResponseEntity<?> downloadRecordingFoldedStacks(@PathVariable final long recordingId,
+                                                           @RequestParam(defaultValue = "false") final boolean snapshot,
+                                                           @RequestParam(defaultValue = MODE_CPU) final String mode,
+                                                           @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) final String acceptEncoding) {
+        final EventProfile profile = profileOf(mode);
+        if (profile == null) {
+            return ResponseEntity.badRequest().body("Unknown mode " + mode);
+        }
         try {
+            final boolean gzip = acceptsGzip(acceptEncoding);
+            return withFlameGraph(recordingId, snapshot, profile, FlameGraph.ALL,
+                    graph -> streamedResponse(new FoldedStacksInputStream(graph, gzip), MediaType.TEXT_PLAIN, gzip));
+        } catch (final Exception e) {
+            LOGGER.log(Level.WARNING, "Could not create folded stacks for flight recording", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(e.getMessage());
+        }
+    }
 
-            final File file = this.flightRecorder.stopRecording(recordingId);
+    /**
+     * The flame graph with the frames of all classes as a gzip compressed pprof profile, which is read by e.g.
+     * {@code go tool pprof}.
+     */
+    @GetMapping(RECORDING_ID + PROFILE_PB_GZ)
+    public ResponseEntity<?> downloadRecordingPprof(@PathVariable final long recordingId,
+                                                    @RequestParam(defaultValue = "false") final boolean snapshot,
+                                                    @RequestParam(defaultValue = MODE_CPU) final String mode) {
+        final EventProfile profile = profileOf(mode);
+        if (profile == null) {
+            return ResponseEntity.badRequest().body("Unknown mode " + mode);
+        }
+        try {
+            return withFlameGraph(recordingId, snapshot, profile, FlameGraph.ALL, graph -> {
+                final HttpHeaders headers = createHttpHeaders();
+                headers.add(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=profile_" + recordingId + "_" + profile.getName() + ".pb.gz");
+                return ResponseEntity.ok()
+                        .headers(headers)
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .body(new InputStreamResource(new PprofInputStream(graph, profile)));
+            });
+        } catch (final Exception e) {
+            LOGGER.log(Level.WARNING, "Could not create pprof profile for flight recording", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(e.getMessage());
+        }
+    }
 
-            if (file == null) {
-                return ResponseEntity.notFound().build();
-            }
+    /**
+     * The monitor classes threads were blocked on the longest in total.
+     */
+    @GetMapping(RECORDING_ID + MONITORS_JSON)
+    public ResponseEntity<?> downloadRecordingMonitorsJson(@PathVariable final long recordingId,
+                                                           @RequestParam(defaultValue = "false") final boolean snapshot,
+                                                           @RequestParam(defaultValue = "10") final int limit) {
+        try {
+            return withRecordingFile(recordingId, snapshot, file -> ResponseEntity.ok()
+                    .headers(createHttpHeaders())
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(MonitorContention.from(file, limit)));
+        } catch (final Exception e) {
+            LOGGER.log(Level.WARNING, "Could not create json data for flight recording", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(e.getMessage());
+        }
+    }
 
-            final FlameGraph graph = FlameGraph.from(file);
-            final String jsonData = this.objectMapper.writeValueAsString(graph.getRoot());
-            return ResponseEntity.ok()
+    /**
+     * The number of events of every event type used by the flame graphs, with their total and maximum duration,
+     * see {@link RecordingSummary}.
+     */
+    @GetMapping(RECORDING_ID + SUMMARY_JSON)
+    public ResponseEntity<?> downloadRecordingSummaryJson(@PathVariable final long recordingId,
+                                                          @RequestParam(defaultValue = "false") final boolean snapshot) {
+        try {
+            return withRecordingFile(recordingId, snapshot, file -> ResponseEntity.ok()
                     .headers(createHttpHeaders())
                     .contentType(MediaType.APPLICATION_JSON)
-                    .body(jsonData);
+                    .body(RecordingSummary.from(file)));
+        } catch (final Exception e) {
+            LOGGER.log(Level.WARNING, "Could not create json data for flight recording", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(e.getMessage());
+        }
+    }
+
+    static EventProfile profileOf(final String mode) {
+        return switch (mode) {
+            case MODE_CPU -> EventProfile.EXECUTION_SAMPLES;
+            case MODE_WALL -> EventProfile.WALL_CLOCK;
+            default -> null;
+        };
+    }
+
+    private FlameGraph.FrameFilter applicationFrameFilter() {
+        final String bootClass = findBootClass(this.applicationContext);
+        if (bootClass == null) {
+            return FlameGraph.ALL;
+        }
+        final int p = bootClass.lastIndexOf(".");
+        final String basePackage = bootClass.substring(0, p + 1);
+        return new PrefixFrameFilter(List.of(basePackage), List.of());
+    }
 
+    /**
+     * Parses the bounds of a time window, given as ISO-8601 instants like {@code 2024-01-31T10:15:30Z} or as
+     * epoch milliseconds like the {@code start} of the {@link #TIMELINE_JSON}. Both bounds are optional.
+     *
+     * @throws IllegalArgumentException if a bound is invalid, or the window is empty
+     */
+    static TimeWindow timeWindowOf(final String from, final String to) {
+        return new TimeWindow(instantOf("from", from), instantOf("to", to));
+    }
+
+    /**
+     * Parses the grouping of the stack traces by thread. {@code threads} inserts a frame per {@code thread} or per
+     * thread {@code pool} below the root, and {@code threadFilter} is a pattern found in the names of the threads
+     * to include, see {@link ThreadGrouping}.
+     *
+     * @throws IllegalArgumentException if the level is unknown or the filter is too long
+     */
+    static ThreadGrouping threadGroupingOf(final String threads, final String threadFilter) {
+        return ThreadGrouping.of(threads == null || threads.isEmpty() ? null : threads,
+                threadFilter == null || threadFilter.isEmpty() ? null : threadFilter);
+    }
+
+    private static ResponseEntity<?> withOptions(final String mode, final String from, final String to,
+                                                 final String threads, final String threadFilter,
+                                                 final double minPercent, final int maxDepth, final int maxNodes,
+                                                 final FlameGraphOptionsHandler handler) {
+        final EventProfile profile = profileOf(mode);
+        if (profile == null) {
+            return ResponseEntity.badRequest().body("Unknown mode " + mode);
+        }
+        return withOptions(profile, from, to, threads, threadFilter, minPercent, maxDepth, maxNodes, handler);
+    }
+
+    /**
+     * Validates the options shared by the flame graph endpoints and passes them to the handler. Invalid options
+     * result in {@code 400 Bad Request} before the recording is touched.
+     */
+    private static ResponseEntity<?> withOptions(final EventProfile profile, final String from, final String to,
+                                                 final String threads, final String threadFilter,
+                                                 final double minPercent, final int maxDepth, final int maxNodes,
+                                                 final FlameGraphOptionsHandler handler) {
+        final FlameGraphOptions options;
+        try {
+            options = new FlameGraphOptions(profile.withThreads(threadGroupingOf(threads, threadFilter)),
+                    timeWindowOf(from, to), new Pruning(minPercent, maxDepth, maxNodes));
+        } catch (final IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+        try {
+            return handler.handle(options);
         } catch (final Exception e) {
             LOGGER.log(Level.WARNING, "Could not create json data for flight recording", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -179,6 +697,214 @@ public class FlightRecorderStaticController {
         }
     }
 
+    private static Instant instantOf(final String name, final String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            if (value.chars().allMatch(Character::isDigit)) {
+                return Instant.ofEpochMilli(Long.parseLong(value));
+            }
+            return Instant.parse(value);
+        } catch (final DateTimeException | NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + " " + value);
+        }
+    }
+
+    /**
+     * Serves the top-down flame graph of the whole recording, like the overload with a time window.
+     */
+    private ResponseEntity<?> withFlameGraph(final long recordingId, final boolean snapshot,
+                                             final EventProfile profile, final FlameGraph.FrameFilter frameFilter,
+                                             final FlameGraphHandler handler) throws IOException {
+        return withFlameGraph(recordingId, snapshot, profile, frameFilter, TimeWindow.ALL, false, handler);
+    }
+
+    /**
+     * Serves the flame graph of a recording. Without a snapshot, the recording is stopped first like before, and
+     * the flame graph parsed from the finished recording is cached. A snapshot of a running recording is served
+     * from the execution samples aggregated while it runs, and only parses the recording file if there are none.
+     * The aggregated flame graph has no timestamps, so for a time window only the chunks of the recording file
+     * overlapping the window are parsed. Pruned flame graphs are built from the complete one by the handler and
+     * are not cached, since they are much smaller and quick to build. With {@code inverted}, the handler gets the
+     * bottom-up flame graph.
+     */
+    private ResponseEntity<?> withFlameGraph(final long recordingId, final boolean snapshot,
+                                             final EventProfile profile, final FlameGraph.FrameFilter frameFilter,
+                                             final TimeWindow window, final boolean inverted,
+                                             final FlameGraphHandler handler)
+            throws IOException {
+        if (!snapshot) {
+            final FlameGraph graph = finishedFlameGraph(recordingId, profile, frameFilter, window, inverted);
+            if (graph == null) {
+                return ResponseEntity.notFound().build();
+            }
+            return handler.handle(graph);
+        }
+
+        if (window.isAll()) {
+            final FlameGraph aggregated = aggregatedFlameGraph(recordingId, profile, frameFilter);
+            if (aggregated != null) {
+                return handler.handle(inverted ? aggregated.inverted() : aggregated);
+            }
+        }
+        return withRecordingFile(recordingId, true, file -> {
+            final FlameGraph graph = FlameGraph.from(indexOf(recordingId, file), profile, frameFilter,
+                    this.frameTransformation, window);
+            return handler.handle(inverted ? graph.inverted() : graph);
+        });
+    }
+
+    private FlameGraph finishedFlameGraph(final long recordingId, final EventProfile profile,
+                                          final FlameGraph.FrameFilter frameFilter) throws IOException {
+        return finishedFlameGraph(recordingId, profile, frameFilter, TimeWindow.ALL, false);
+    }
+
+    /**
+     * Stops the recording and returns its cached flame graph, which is always parsed from the recording file. The
+     * aggregate of a running recording may have missed samples, and must not end up in the cache. Flame graphs of filtered threads are not cached, as
+     * the filters are arbitrary and every filter would add an entry. Inverting walks the whole tree, so the
+     * bottom-up flame graph is cached as a variant of its own, and drilling down into it with {@link #TREE} only
+     * walks the path.
+     *
+     * @return the flame graph, or null if there is no such recording
+     */
+    private FlameGraph finishedFlameGraph(final long recordingId, final EventProfile profile,
+                                          final FlameGraph.FrameFilter frameFilter, final TimeWindow window,
+                                          final boolean inverted)
+            throws IOException {
+        LOGGER.log(Level.INFO, "Closing recording with ID {0} and downloading file", recordingId);
+        final File file = this.flightRecorder.stopRecording(recordingId);
+        if (file == null) {
+            return null;
+        }
+        if (profile.getThreads().isFiltered()) {
+            final FlameGraph graph = FlameGraph.from(indexOf(recordingId, file), profile, frameFilter,
+                    this.frameTransformation, window);
+            return inverted ? graph.inverted() : graph;
+        }
+        final FlameGraph graph = this.flameGraphCache.get(recordingId, List.of(profile, frameFilter, window),
+                () -> FlameGraph.from(indexOf(recordingId, file), profile, frameFilter, this.frameTransformation,
+                        window));
+        if (!inverted) {
+            return graph;
+        }
+        return this.flameGraphCache.get(recordingId, List.of(profile, frameFilter, window, INVERTED), graph::inverted);
+    }
+
+    /**
+     * @return the index of the recording file, which is kept with finished recordings
+     */
+    private RecordingIndex indexOf(final long recordingId, final File file) throws IOException {
+        final RecordingIndex index = this.flightRecorder.getRecordingIndex(recordingId, file);
+        return index != null ? index : RecordingIndex.of(file);
+    }
+
+    private FlameGraph aggregatedFlameGraph(final long recordingId, final EventProfile profile,
+                                            final FlameGraph.FrameFilter frameFilter) {
+        if (!EventProfile.EXECUTION_SAMPLES.equals(profile)) {
+            return null;
+        }
+        return this.flightRecorder.getFlameGraph(recordingId, frameFilter);
+    }
+
+    static boolean isKnownFormat(final String format) {
+        return FORMAT_TREE.equals(format) || FORMAT_COMPACT.equals(format);
+    }
+
+    /**
+     * Streams the flame graph as JSON, which is serialized chunk by chunk while the response is written. Both
+     * Spring MVC and WebFlux write an {@link InputStreamResource} without reading it upfront to determine its
+     * length. The {@code compact} format writes every frame name only once, see
+     * {@link CompactFlameGraphJsonInputStream}.
+     */
+    private ResponseEntity<?> flameGraphResponse(final FlameGraph graph, final String format, final boolean gzip)
+            throws IOException {
+        final GeneratedInputStream content = FORMAT_COMPACT.equals(format)
+                ? new CompactFlameGraphJsonInputStream(graph, this.objectMapper, gzip)
+                : new FlameGraphJsonInputStream(graph, this.objectMapper, gzip);
+        return streamedResponse(content, MediaType.APPLICATION_JSON, gzip);
+    }
+
+    private ResponseEntity<?> streamedResponse(final GeneratedInputStream content, final MediaType contentType,
+                                               final boolean gzip) {
+        final HttpHeaders headers = createHttpHeaders();
+        headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            headers.add(HttpHeaders.CONTENT_ENCODING, GZIP);
+        }
+        return ResponseEntity.ok()
+                .headers(headers)
+                .contentType(contentType)
+                .body(new InputStreamResource(content));
+    }
+
+    static boolean acceptsGzip(final String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (final String coding : acceptEncoding.split(",")) {
+            final String[] parts = coding.split(";");
+            if (GZIP.equalsIgnoreCase(parts[0].trim())) {
+                return parts.length == 1 || !parts[1].replace(" ", "").matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The validated options of a flame graph request, the profile already selects the threads.
+     */
+    record FlameGraphOptions(EventProfile profile, TimeWindow window, Pruning pruning) {
+    }
+
+    @FunctionalInterface
+    interface FlameGraphOptionsHandler {
+
+        ResponseEntity<?> handle(final FlameGraphOptions options) throws IOException;
+
+    }
+
+    @FunctionalInterface
+    interface FlameGraphHandler {
+
+        ResponseEntity<?> handle(final FlameGraph graph) throws IOException;
+
+    }
+
+    @FunctionalInterface
+    interface RecordingFileHandler {
+
+        ResponseEntity<?> handle(final File file) throws IOException;
+
+    }
+
+    /**
+     * Passes the recording file to the handler. If a snapshot is requested and the recording is still running,
+     * a temporary snapshot of the data recorded so far is used, otherwise the recording is stopped first.
+     */
+    private ResponseEntity<?> withRecordingFile(final long recordingId, final boolean snapshot,
+                                                final RecordingFileHandler handler) throws IOException {
+        if (snapshot) {
+            final File snapshotFile = this.flightRecorder.snapshotRecording(recordingId);
+            if (snapshotFile != null) {
+                LOGGER.log(Level.INFO, "Using snapshot of running recording with ID {0}", recordingId);
+                try {
+                    return handler.handle(snapshotFile);
+                } finally {
+                    snapshotFile.delete();
+                }
+            }
+        }
+
+        LOGGER.log(Level.INFO, "Closing recording with ID {0} and downloading file", recordingId);
+        final File file = this.flightRecorder.stopRecording(recordingId);
+        if (file == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return handler.handle(file);
+    }
+
     private HttpHeaders createHttpHeaders() {
         final HttpHeaders headers = new HttpHeaders();
         headers.add(CACHE_CONTROL_KEY, CACHE_CONTROL_VALUE);
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.controller;
+
+import de.mirkosertic.flightrecorderstarter.actuator.model.FlameGraph;
+import de.mirkosertic.flightrecorderstarter.actuator.model.FrameTree;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes a flame graph in the collapsed stack format of Brendan Gregg's FlameGraph tools while it is read. Every
+ * call path with a self value gets one line with the frames from the outermost to the innermost one, separated by
+ * semicolons, followed by a space and the value.
+ */
+class FoldedStacksInputStream extends GeneratedInputStream {
+
+    private final FrameTree tree;
+    private final StringBuilder line;
+
+    // The next child to write for each level of the path to the current node, and the length of the line up to it
+    private int[] pending;
+    private int[] lineLength;
+    private int depth;
+
+    FoldedStacksInputStream(final FlameGraph graph, final boolean gzip) throws IOException {
+        super(gzip);
+        this.tree = graph.getTree();
+        this.line = new StringBuilder();
+        this.pending = new int[64];
+        this.lineLength = new int[64];
+        this.pending[this.depth++] = this.tree.firstChildOf(FrameTree.ROOT);
+    }
+
+    @Override
+    boolean hasNext() {
+        return this.depth > 0;
+    }
+
+    @Override
+    void writeNext() throws IOException {
+        final int node = this.pending[this.depth - 1];
+        if (node == FrameTree.NONE) {
+            this.depth--;
+            return;
+        }
+        this.pending[this.depth - 1] = this.tree.nextSiblingOf(node);
+        this.line.setLength(this.lineLength[this.depth - 1]);
+        if (this.depth > 1) {
+            this.line.append(';');
+        }
+        this.line.append(this.tree.nameOf(node));
+
+        final long self = this.tree.selfValueOf(node);
+        if (self > 0) {
+            final int length = this.line.length();
+            this.line.append(' ').append(self).append('\n');
+            out().write(this.line.toString().getBytes(StandardCharsets.UTF_8));
+            this.line.setLength(length);
+        }
+
+        if (this.depth == this.pending.length) {
+            this.pending = Arrays.copyOf(this.pending, this.depth * 2);
+            this.lineLength = Arrays.copyOf(this.lineLength, this.depth * 2);
+        }
+        this.lineLength[this.depth] = this.line.length();
+        this.pending[this.depth++] = this.tree.firstChildOf(node);
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.controller;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Generates its content while it is read, so a response is written in chunks without ever holding the whole
+ * document in memory. Subclasses write the next part of the content to {@link #out()} whenever the previous chunk
+ * has been consumed, optionally compressed with gzip.
+ */
+abstract class GeneratedInputStream extends InputStream {
+
+    static final int CHUNK_SIZE = 16 * 1024;
+
+    private final ChunkBuffer buffer;
+    private final GZIPOutputStream gzip;
+
+    private int position;
+    private boolean finished;
+
+    GeneratedInputStream(final boolean gzip) throws IOException {
+        this.buffer = new ChunkBuffer();
+        this.gzip = gzip ? new GZIPOutputStream(this.buffer, CHUNK_SIZE) : null;
+    }
+
+    /**
+     * @return the stream the content is written to
+     */
+    final OutputStream out() {
+        return this.gzip != null ? this.gzip : this.buffer;
+    }
+
+    /**
+     * @return false if the whole content has been written
+     */
+    abstract boolean hasNext();
+
+    /**
+     * Writes the next small part of the content.
+     */
+    abstract void writeNext() throws IOException;
+
+    /**
+     * Flushes content buffered by a subclass to {@link #out()}.
+     */
+    void flush() throws IOException {
+    }
+
+    /**
+     * Writes the end of the content, e.g. closes a generator.
+     */
+    void finish() throws IOException {
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return this.buffer.bytes()[this.position++] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        final int count = Math.min(len, this.buffer.size() - this.position);
+        System.arraycopy(this.buffer.bytes(), this.position, b, off, count);
+        this.position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return this.buffer.size() - this.position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!this.finished) {
+            end();
+        }
+    }
+
+    /**
+     * @return false if everything has been read
+     */
+    private boolean fill() throws IOException {
+        while (this.position == this.buffer.size()) {
+            if (this.finished) {
+                return false;
+            }
+            this.buffer.reset();
+            this.position = 0;
+            while (this.buffer.size() < CHUNK_SIZE && hasNext()) {
+                writeNext();
+            }
+            if (hasNext()) {
+                flush();
+            } else {
+                end();
+            }
+        }
+        return true;
+    }
+
+    private void end() throws IOException {
+        this.finished = true;
+        finish();
+        if (this.gzip != null) {
+            this.gzip.finish();
+        }
+    }
+
+    /**
+     * Gives access to the written bytes without copying them.
+     */
+    private static class ChunkBuffer extends ByteArrayOutputStream {
+
+        ChunkBuffer() {
+            super(CHUNK_SIZE * 2);
+        }
+
+        byte[] bytes() {
+            return this.buf;
+        }
+    }
+}
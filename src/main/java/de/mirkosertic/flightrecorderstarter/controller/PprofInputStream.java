@@ -0,0 +1,203 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.controller;
+
+import de.mirkosertic.flightrecorderstarter.actuator.model.EventProfile;
+import de.mirkosertic.flightrecorderstarter.actuator.model.FlameGraph;
+import de.mirkosertic.flightrecorderstarter.actuator.model.FrameTree;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes a flame graph as a gzip compressed pprof profile while it is read, see
+ * <a href="https://github.com/google/pprof/blob/main/proto/profile.proto">profile.proto</a>. Every call path with
+ * a self value is written as a sample while the tree is walked. Every method gets one function and one location,
+ * which are written after the samples together with the string table, since protobuf fields can be written in
+ * any order. The flame graph has no line numbers, so the locations only refer to functions.
+ */
+class PprofInputStream extends GeneratedInputStream {
+
+    // Field numbers of the Profile message shifted by three bits, with the wire type of length delimited fields
+    private static final int PROFILE_SAMPLE_TYPE = 1 << 3 | 2;
+    private static final int PROFILE_SAMPLE = 2 << 3 | 2;
+    private static final int PROFILE_LOCATION = 4 << 3 | 2;
+    private static final int PROFILE_FUNCTION = 5 << 3 | 2;
+    private static final int PROFILE_STRING_TABLE = 6 << 3 | 2;
+
+    // The fixed strings at the start of the string table, the first one is always empty
+    private static final int TYPE_STRING = 1;
+    private static final int UNIT_STRING = 2;
+
+    private final FrameTree tree;
+    private final EventProfile profile;
+    private final ByteArrayOutputStream message;
+    private final ByteArrayOutputStream packed;
+
+    // The location and function ids by symbol, starting at 1, and the function names by id
+    private int[] locationOf;
+    private final List<String> functionNames;
+
+    // Functions and locations are written once all samples are written, then the strings
+    private int nextFunction;
+    private int nextString;
+
+    // The next child to write for each level of the path to the current node, and the nodes of that path
+    private int[] pending;
+    private int[] path;
+    private int depth;
+
+    PprofInputStream(final FlameGraph graph, final EventProfile profile) throws IOException {
+        super(true);
+        this.tree = graph.getTree();
+        this.profile = profile;
+        this.message = new ByteArrayOutputStream();
+        this.packed = new ByteArrayOutputStream();
+        this.locationOf = new int[1024];
+        this.functionNames = new ArrayList<>();
+        this.nextFunction = 1;
+        this.pending = new int[64];
+        this.path = new int[64];
+        this.pending[this.depth++] = this.tree.firstChildOf(FrameTree.ROOT);
+
+        // ValueType with the type and the unit of the values
+        writeVarintField(this.message, 1, TYPE_STRING);
+        writeVarintField(this.message, 2, UNIT_STRING);
+        writeMessage(out(), PROFILE_SAMPLE_TYPE, this.message);
+    }
+
+    @Override
+    boolean hasNext() {
+        return this.nextString <= UNIT_STRING + this.functionNames.size();
+    }
+
+    @Override
+    void writeNext() throws IOException {
+        if (this.depth == 0) {
+            if (this.nextFunction <= this.functionNames.size()) {
+                writeFunction(this.nextFunction++);
+            } else {
+                writeString(this.nextString++);
+            }
+            return;
+        }
+        final int node = this.pending[this.depth - 1];
+        if (node == FrameTree.NONE) {
+            this.depth--;
+            return;
+        }
+        this.pending[this.depth - 1] = this.tree.nextSiblingOf(node);
+        this.path[this.depth - 1] = node;
+
+        final long self = this.tree.selfValueOf(node);
+        if (self > 0) {
+            writeSample(self);
+        }
+
+        if (this.depth == this.pending.length) {
+            this.pending = Arrays.copyOf(this.pending, this.depth * 2);
+            this.path = Arrays.copyOf(this.path, this.depth * 2);
+        }
+        this.pending[this.depth++] = this.tree.firstChildOf(node);
+    }
+
+    /**
+     * Writes a Sample with the locations of the current path, starting at the innermost frame.
+     */
+    private void writeSample(final long value) throws IOException {
+        this.packed.reset();
+        for (int i = this.depth - 1; i >= 0; i--) {
+            writeVarint(this.packed, locationOf(this.path[i]));
+        }
+        writeMessage(this.message, 1 << 3 | 2, this.packed);
+        this.packed.reset();
+        writeVarint(this.packed, value);
+        writeMessage(this.message, 2 << 3 | 2, this.packed);
+        writeMessage(out(), PROFILE_SAMPLE, this.message);
+    }
+
+    private int locationOf(final int node) {
+        final int symbol = this.tree.symbolOf(node);
+        if (symbol >= this.locationOf.length) {
+            this.locationOf = Arrays.copyOf(this.locationOf, Math.max(symbol + 1, this.locationOf.length * 2));
+        }
+        if (this.locationOf[symbol] == 0) {
+            this.functionNames.add(this.tree.nameOf(node));
+            this.locationOf[symbol] = this.functionNames.size();
+        }
+        return this.locationOf[symbol];
+    }
+
+    /**
+     * Writes the Function with its name as name and system name, and a Location with a single Line of it.
+     */
+    private void writeFunction(final int id) throws IOException {
+        // The function names follow the fixed strings
+        writeVarintField(this.message, 1, id);
+        writeVarintField(this.message, 2, UNIT_STRING + id);
+        writeVarintField(this.message, 3, UNIT_STRING + id);
+        writeMessage(out(), PROFILE_FUNCTION, this.message);
+
+        writeVarintField(this.packed, 1, id);
+        writeVarintField(this.message, 1, id);
+        writeMessage(this.message, 4 << 3 | 2, this.packed);
+        writeMessage(out(), PROFILE_LOCATION, this.message);
+    }
+
+    private void writeString(final int index) throws IOException {
+        final String value = switch (index) {
+            case 0 -> "";
+            case TYPE_STRING -> this.profile.getName();
+            case UNIT_STRING -> this.profile.getUnit();
+            default -> this.functionNames.get(index - UNIT_STRING - 1);
+        };
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out(), PROFILE_STRING_TABLE);
+        writeVarint(out(), bytes.length);
+        out().write(bytes);
+    }
+
+    /**
+     * Writes the buffered message as a length delimited field and clears the buffer.
+     */
+    private static void writeMessage(final OutputStream target, final int tag, final ByteArrayOutputStream message)
+            throws IOException {
+        writeVarint(target, tag);
+        writeVarint(target, message.size());
+        message.writeTo(target);
+        message.reset();
+    }
+
+    private static void writeVarintField(final OutputStream target, final int field, final long value)
+            throws IOException {
+        writeVarint(target, field << 3);
+        writeVarint(target, value);
+    }
+
+    private static void writeVarint(final OutputStream target, final long value) throws IOException {
+        long remaining = value;
+        while ((remaining & ~0x7FL) != 0) {
+            target.write((int) (remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        target.write((int) remaining);
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.core;
+
+import java.time.temporal.ChronoUnit;
+
+public class DumpRecordingCommand {
+
+    private Long duration;
+    private ChronoUnit timeUnit;
+    private String description;
+
+    public Long getDuration() {
+        return this.duration;
+    }
+
+    public void setDuration(final Long duration) {
+        this.duration = duration;
+    }
+
+    public ChronoUnit getTimeUnit() {
+        return this.timeUnit;
+    }
+
+    public void setTimeUnit(final ChronoUnit timeUnit) {
+        this.timeUnit = timeUnit;
+    }
+
+    public String getDescription() {
+        return this.description;
+    }
+
+    public void setDescription(final String description) {
+        this.description = description;
+    }
+}
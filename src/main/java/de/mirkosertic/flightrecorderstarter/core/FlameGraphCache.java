@@ -0,0 +1,219 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.core;
+
+import de.mirkosertic.flightrecorderstarter.actuator.model.DifferentialFlameGraph;
+import de.mirkosertic.flightrecorderstarter.actuator.model.FlameGraph;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of computed flame graphs of finished recordings, keyed by recording id and a variant like the frame
+ * filter. Concurrent requests for the same key are coalesced, so the flame graph is computed only once. The
+ * cache is bounded by the total number of tree nodes, and the least recently used entries are evicted first.
+ * A {@link DifferentialFlameGraph} shares the tree of its candidate, which is cached on its own, so it is only
+ * charged for its deltas. A delta is a single long, while a tree node takes about five times as much memory.
+ * Flame graphs comparing a recording with a baseline recording are removed if either recording is removed.
+ */
+public class FlameGraphCache {
+
+    @FunctionalInterface
+    public interface FlameGraphLoader {
+
+        FlameGraph load() throws IOException;
+
+    }
+
+    private static final long NO_BASELINE = Long.MIN_VALUE;
+    private static final int DELTAS_PER_NODE = 5;
+
+    private record Key(long recordingId, long baselineRecordingId, Object variant) {
+    }
+
+    private static class Entry {
+        private final CompletableFuture<FlameGraph> future = new CompletableFuture<>();
+        private volatile long lastAccess;
+        private long weight;
+        private boolean accounted;
+    }
+
+    private final long maxWeight;
+    private final Map<Key, Entry> entries;
+    private final AtomicLong ticks;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+    private long weight;
+
+    /**
+     * @param maxWeight the maximum total number of tree nodes to keep, 0 disables caching but still coalesces
+     *                  concurrent computations
+     */
+    public FlameGraphCache(final long maxWeight) {
+        this.maxWeight = maxWeight;
+        this.entries = new ConcurrentHashMap<>();
+        this.ticks = new AtomicLong();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+    }
+
+    /**
+     * Returns the cached flame graph, or computes it. A loader result of null is passed on, but not cached.
+     */
+    public FlameGraph get(final long recordingId, final Object variant, final FlameGraphLoader loader) throws IOException {
+        return get(new Key(recordingId, NO_BASELINE, variant), loader);
+    }
+
+    /**
+     * Returns the cached flame graph comparing a recording with a baseline recording, or computes it.
+     */
+    public FlameGraph get(final long recordingId, final long baselineRecordingId, final Object variant,
+                          final FlameGraphLoader loader) throws IOException {
+        return get(new Key(recordingId, baselineRecordingId, variant), loader);
+    }
+
+    private FlameGraph get(final Key key, final FlameGraphLoader loader) throws IOException {
+        Entry entry = this.entries.get(key);
+        if (entry == null) {
+            final Entry created = new Entry();
+            entry = this.entries.putIfAbsent(key, created);
+            if (entry == null) {
+                this.misses.increment();
+                return load(key, created, loader);
+            }
+        }
+        this.hits.increment();
+        entry.lastAccess = this.ticks.incrementAndGet();
+        return await(entry.future);
+    }
+
+    private FlameGraph load(final Key key, final Entry entry, final FlameGraphLoader loader) throws IOException {
+        final FlameGraph graph;
+        try {
+            graph = loader.load();
+        } catch (final Throwable e) {
+            // Also for errors like an OutOfMemoryError, as waiting requests would block forever otherwise
+            this.entries.remove(key, entry);
+            entry.future.completeExceptionally(e);
+            throw e;
+        }
+        if (graph == null) {
+            this.entries.remove(key, entry);
+            entry.future.complete(null);
+            return null;
+        }
+
+        entry.lastAccess = this.ticks.incrementAndGet();
+        entry.future.complete(graph);
+        synchronized (this) {
+            // The recording might have been deleted in the meantime
+            if (this.entries.get(key) == entry) {
+                entry.weight = weightOf(graph);
+                entry.accounted = true;
+                this.weight += entry.weight;
+                evictIfNeeded();
+            }
+        }
+        return graph;
+    }
+
+    private static long weightOf(final FlameGraph graph) {
+        if (graph instanceof final DifferentialFlameGraph differential) {
+            return (differential.getDeltaCount() + DELTAS_PER_NODE - 1) / DELTAS_PER_NODE;
+        }
+        return graph.getTree().size();
+    }
+
+    private static FlameGraph await(final CompletableFuture<FlameGraph> future) throws IOException {
+        try {
+            return future.join();
+        } catch (final CompletionException e) {
+            if (e.getCause() instanceof final IOException ioException) {
+                throw ioException;
+            }
+            if (e.getCause() instanceof final RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof final Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+
+    private void evictIfNeeded() {
+        while (this.weight > this.maxWeight) {
+            Map.Entry<Key, Entry> eldest = null;
+            for (final Map.Entry<Key, Entry> candidate : this.entries.entrySet()) {
+                if (candidate.getValue().accounted
+                        && (eldest == null || candidate.getValue().lastAccess < eldest.getValue().lastAccess)) {
+                    eldest = candidate;
+                }
+            }
+            if (eldest == null) {
+                return;
+            }
+            this.entries.remove(eldest.getKey());
+            this.weight -= eldest.getValue().weight;
+            this.evictions.increment();
+        }
+    }
+
+    /**
+     * Removes all flame graphs of a recording.
+     */
+    public synchronized void invalidate(final long recordingId) {
+        final Iterator<Map.Entry<Key, Entry>> iterator = this.entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<Key, Entry> candidate = iterator.next();
+            if (candidate.getKey().recordingId() == recordingId
+                    || candidate.getKey().baselineRecordingId() == recordingId) {
+                iterator.remove();
+                if (candidate.getValue().accounted) {
+                    this.weight -= candidate.getValue().weight;
+                }
+            }
+        }
+    }
+
+    public long getHitCount() {
+        return this.hits.sum();
+    }
+
+    public long getMissCount() {
+        return this.misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return this.evictions.sum();
+    }
+
+    public synchronized long getWeight() {
+        return this.weight;
+    }
+
+    public int size() {
+        return this.entries.size();
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.core;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Publishes the statistics of the {@link FlameGraphCache} with the same meter names Micrometer uses for other
+ * caches, tagged with {@code cache=flightrecorder.flamegraphs}.
+ */
+public class FlameGraphCacheMetrics implements MeterBinder {
+
+    static final String CACHE_NAME = "flightrecorder.flamegraphs";
+
+    private final FlameGraphCache cache;
+
+    public FlameGraphCacheMetrics(final FlameGraphCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        final Tags tags = Tags.of("cache", CACHE_NAME);
+        FunctionCounter.builder("cache.gets", this.cache, FlameGraphCache::getHitCount)
+                .tags(tags).tag("result", "hit")
+                .description("The number of times a flame graph was taken from the cache or an ongoing computation")
+                .register(registry);
+        FunctionCounter.builder("cache.gets", this.cache, FlameGraphCache::getMissCount)
+                .tags(tags).tag("result", "miss")
+                .description("The number of times a flame graph had to be computed")
+                .register(registry);
+        FunctionCounter.builder("cache.evictions", this.cache, FlameGraphCache::getEvictionCount)
+                .tags(tags)
+                .description("The number of flame graphs evicted because the cache was full")
+                .register(registry);
+        Gauge.builder("cache.size", this.cache, FlameGraphCache::size)
+                .tags(tags)
+                .description("The number of cached flame graphs")
+                .register(registry);
+        Gauge.builder("cache.weight", this.cache, FlameGraphCache::getWeight)
+                .tags(tags)
+                .description("The number of tree nodes of all cached flame graphs")
+                .register(registry);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.core;
+
+import de.mirkosertic.flightrecorderstarter.actuator.model.FlameGraphAggregator;
+import jdk.jfr.consumer.RecordingStream;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Aggregates the execution samples of a running recording session into a flame graph while they are recorded.
+ * JFR delivers every execution sample to all recordings running at that time, so a stream sampling with the
+ * same period as the session sees the samples that end up in the recording file. The stream starts asynchronously
+ * after the recording, so the samples taken in between are missing, and the flame graph is an approximation.
+ */
+class FlameGraphStream implements AutoCloseable {
+
+    private final static Logger LOGGER = Logger.getLogger(FlameGraphStream.class.getCanonicalName());
+
+    static final String EXECUTION_SAMPLE = "jdk.ExecutionSample";
+
+    private final RecordingStream stream;
+    private final FlameGraphAggregator aggregator;
+    private volatile Instant stopTime;
+    private boolean finished;
+
+    FlameGraphStream(final String samplingPeriod) {
+        this.aggregator = new FlameGraphAggregator();
+        this.stream = new RecordingStream();
+        this.stream.setSettings(Map.of(
+                EXECUTION_SAMPLE + "#enabled", "true",
+                EXECUTION_SAMPLE + "#period", samplingPeriod));
+        this.stream.onEvent(EXECUTION_SAMPLE, event -> {
+            // Samples taken after the recording session stopped are not part of its file
+            final Instant until = this.stopTime;
+            if (until == null || !event.getStartTime().isAfter(until)) {
+                this.aggregator.add(event.getStackTrace());
+            }
+        });
+    }
+
+    void start() {
+        this.stream.startAsync();
+    }
+
+    FlameGraphAggregator getAggregator() {
+        return this.aggregator;
+    }
+
+    /**
+     * Stops sampling and waits until all samples up to the stop time of the recording session are aggregated.
+     * Later calls return immediately, or wait for a concurrent call to complete.
+     *
+     * @param recordingStopTime the time the recording session stopped
+     */
+    synchronized void finish(final Instant recordingStopTime) {
+        if (this.finished) {
+            return;
+        }
+        this.finished = true;
+        this.stopTime = recordingStopTime;
+        try {
+            this.stream.stop();
+        } catch (final IllegalStateException e) {
+            LOGGER.log(Level.FINE, "Flame graph stream was already stopped", e);
+        } finally {
+            this.stream.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        this.stream.close();
+    }
+}
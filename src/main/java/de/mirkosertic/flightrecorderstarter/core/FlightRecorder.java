@@ -15,9 +15,14 @@
  */
 package de.mirkosertic.flightrecorderstarter.core;
 
+import de.mirkosertic.flightrecorderstarter.actuator.model.FlameGraph;
 import de.mirkosertic.flightrecorderstarter.actuator.model.FlightRecorderPublicSession;
+import de.mirkosertic.flightrecorderstarter.actuator.model.FrameTransformation;
+import de.mirkosertic.flightrecorderstarter.actuator.model.RecordingIndex;
 import de.mirkosertic.flightrecorderstarter.configuration.FlightRecorderDynamicConfiguration;
 import jdk.jfr.Configuration;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorderListener;
 import jdk.jfr.Recording;
 import jdk.jfr.RecordingState;
 import org.springframework.scheduling.annotation.Scheduled;
@@ -30,40 +35,86 @@ import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
-public class FlightRecorder {
+public class FlightRecorder implements AutoCloseable {
 
     private final static Logger LOGGER = Logger.getLogger(FlightRecorder.class.getCanonicalName());
 
+    static final int DEFAULT_STREAM_BUFFER_SIZE = 1000;
+
     private final Map<Long, RecordingSession> recordings;
     private final FlightRecorderDynamicConfiguration configuration;
+    private final FlightRecorderListener stateListener;
+    private volatile Recording continuousRecording;
+    private final Set<LiveEventSubscription> subscriptions;
+    private final FlameGraphCache flameGraphCache;
+    private final FrameTransformation frameTransformation;
 
     public FlightRecorder(final FlightRecorderDynamicConfiguration configuration) {
-        this(configuration, new HashMap<>());
+        this(configuration, new ConcurrentHashMap<>());
     }
 
     FlightRecorder(final FlightRecorderDynamicConfiguration configuration,
                    final Map<Long, RecordingSession> recordings) {
         this.configuration = configuration;
         this.recordings = recordings;
+        this.subscriptions = ConcurrentHashMap.newKeySet();
+        this.flameGraphCache = new FlameGraphCache(configuration.getFlameGraphCacheMaxNodes());
+        this.frameTransformation = FrameTransformation.of(configuration.getFrameTransformers());
+        // Recordings with a delay or a duration start and stop on their own, so we need to be notified to keep
+        // the cached state and the flame graph aggregation up to date
+        this.stateListener = new FlightRecorderListener() {
+            @Override
+            public void recordingStateChanged(final Recording recording) {
+                final RecordingSession recordingSession = FlightRecorder.this.recordings.get(recording.getId());
+                if (recordingSession != null) {
+                    recordingSession.refresh();
+                    if (recordingSession.getState() == RecordingState.RUNNING) {
+                        startFlameGraphStream(recordingSession);
+                    } else if (recordingSession.isFinished()) {
+                        if (recordingSession.getFlameGraphStream() != null) {
+                            // Finishing waits for the remaining samples, which must not block the JFR timer thread
+                            Thread.ofVirtual().name("flightrecorder-flamegraph").start(() -> finishFlameGraphStream(recordingSession));
+                        }
+                    }
+                }
+            }
+        };
+        jdk.jfr.FlightRecorder.addListener(this.stateListener);
+    }
+
+    @Override
+    public void close() {
+        jdk.jfr.FlightRecorder.removeListener(this.stateListener);
+        stopContinuousRecording();
+        for (final LiveEventSubscription subscription : List.copyOf(this.subscriptions)) {
+            subscription.close();
+        }
+        // The files of the recordings are temporary, so they are removed with their sessions
+        for (final long recordingId : List.copyOf(this.recordings.keySet())) {
+            deleteRecording(recordingId);
+        }
     }
 
     public long newRecording(final StartRecordingCommand command) {
         final Recording recording = new Recording(getConfigurationSettings(Configuration.getConfigurations(), command.getCustomSettings()));
         recording.setName("Spring Boot Starter Flight Recording");
-        synchronized (this.recordings) {
-            this.recordings.put(recording.getId(), new RecordingSession(recording, command.getDescription()));
-        }
+        this.recordings.put(recording.getId(), new RecordingSession(recording, command.getDescription()));
         return recording.getId();
     }
 
     Map<String, String> getConfigurationSettings(final List<Configuration> configs, final Map<String, String> customSettings) {
-        final Map<String, String> settings = new HashMap<>();
-
         final String chosenConfiguration = this.configuration.getJfrCustomConfig() != null ? this.configuration.getJfrCustomConfig() : "profile";
+        return getConfigurationSettings(configs, chosenConfiguration, customSettings);
+    }
+
+    Map<String, String> getConfigurationSettings(final List<Configuration> configs, final String chosenConfiguration,
+                                                 final Map<String, String> customSettings) {
+        final Map<String, String> settings = new HashMap<>();
 
         for (final Configuration config : configs) {
             LOGGER.log(Level.INFO, "Found configuration {0}" , config.getName());
@@ -82,41 +133,178 @@ public class FlightRecorder {
     }
 
     public void startRecording(final long recordingId, final Duration delayDuration) {
-        synchronized (this.recordings) {
-            final RecordingSession recordingSession = this.recordings.get(recordingId);
-            if (recordingSession != null) {
+        final RecordingSession recordingSession = this.recordings.get(recordingId);
+        if (recordingSession != null) {
+            synchronized (recordingSession) {
                 if (delayDuration == null) {
                     recordingSession.getRecording().start();
                 } else {
                     recordingSession.getRecording().scheduleStart(delayDuration);
                 }
-            } else {
-                LOGGER.log(Level.WARNING, "No recording with id {0} found" , recordingId);
+                recordingSession.refresh();
             }
+        } else {
+            LOGGER.log(Level.WARNING, "No recording with id {0} found" , recordingId);
         }
     }
 
     public File stopRecording(final long recordingId) {
-        synchronized (this.recordings) {
-            final RecordingSession recordingSession = this.recordings.get(recordingId);
-            if (recordingSession != null) {
+        final RecordingSession recordingSession = this.recordings.get(recordingId);
+        if (recordingSession != null) {
+            synchronized (recordingSession) {
                 final Recording recording = recordingSession.getRecording();
                 if (recording.getState() == RecordingState.RUNNING) {
                     recording.stop();
+                    recordingSession.refresh();
                 }
-                return recording.getDestination().toFile();
-            } else {
-                LOGGER.log(Level.WARNING, "No recording with id {0} found", recordingId);
-                return null;
+                finishFlameGraphStream(recordingSession);
+                return fileOf(recordingSession);
             }
+        } else {
+            LOGGER.log(Level.WARNING, "No recording with id {0} found", recordingId);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the data recorded so far into a new temporary file, without stopping the recording. The caller
+     * owns the returned file and is responsible for deleting it.
+     *
+     * @param recordingId the recording id
+     * @return the snapshot file, or null if there is no running recording with this id
+     * @throws IOException if the data cannot be written
+     */
+    public File snapshotRecording(final long recordingId) throws IOException {
+        final RecordingSession recordingSession = this.recordings.get(recordingId);
+        if (recordingSession == null) {
+            LOGGER.log(Level.WARNING, "No recording with id {0} found", recordingId);
+            return null;
+        }
+        if (recordingSession.getState() != RecordingState.RUNNING) {
+            return null;
+        }
+
+        final File tempFile = createTempFile();
+        try {
+            // Dumping a running recording rotates the current chunk, so the snapshot is complete up to now
+            recordingSession.getRecording().dump(tempFile.toPath());
+        } catch (final IOException | RuntimeException e) {
+            tempFile.delete();
+            throw e;
+        }
+
+        LOGGER.log(Level.INFO, "Created snapshot of recording {0} in temp file {1}", new Object[]{recordingId, tempFile});
+
+        return tempFile;
+    }
+
+    /**
+     * Returns the flame graph of the execution samples recorded so far, which is aggregated while the recording
+     * is running, so the recording file does not need to be parsed. The aggregate may miss samples, so it is
+     * released when the recording finishes, and the flame graph of a finished recording is parsed from its file.
+     *
+     * @param recordingId the recording id
+     * @param frameFilter the frames to include
+     * @return the flame graph, or null if there is no running recording with an aggregated flame graph
+     */
+    public FlameGraph getFlameGraph(final long recordingId, final FlameGraph.FrameFilter frameFilter) {
+        final RecordingSession recordingSession = this.recordings.get(recordingId);
+        if (recordingSession == null) {
+            return null;
+        }
+        final FlameGraphStream flameGraphStream = recordingSession.getFlameGraphStream();
+        if (flameGraphStream == null) {
+            return null;
+        }
+        return flameGraphStream.getAggregator().toFlameGraph(frameFilter, this.frameTransformation);
+    }
+
+    /**
+     * Returns the index of the chunks of a recording file. The index of a finished recording is built once and
+     * kept with the recording, files of running recordings, e.g. snapshots, are indexed on every call.
+     *
+     * @param recordingId the recording id
+     * @param file        the file of the recording or a snapshot of it
+     * @return the index, or null if there is no recording with this id
+     * @throws IOException if the file cannot be read
+     */
+    public RecordingIndex getRecordingIndex(final long recordingId, final File file) throws IOException {
+        final RecordingSession recordingSession = this.recordings.get(recordingId);
+        if (recordingSession == null) {
+            return null;
+        }
+        if (!recordingSession.isFinished() || !file.equals(fileOf(recordingSession))) {
+            return RecordingIndex.of(file);
+        }
+        RecordingIndex recordingIndex = recordingSession.getRecordingIndex();
+        if (recordingIndex == null) {
+            recordingIndex = RecordingIndex.of(file);
+            recordingSession.setRecordingIndex(recordingIndex);
+        }
+        return recordingIndex;
+    }
+
+    /**
+     * @return the cache for flame graphs of finished recordings, which are removed when the recording is deleted
+     */
+    public FlameGraphCache getFlameGraphCache() {
+        return this.flameGraphCache;
+    }
+
+    /**
+     * @return the transformation of the frames of all flame graphs, as configured by
+     * {@code flightrecorder.frame-transformers}
+     */
+    public FrameTransformation getFrameTransformation() {
+        return this.frameTransformation;
+    }
+
+    private void startFlameGraphStream(final RecordingSession recordingSession) {
+        if (!this.configuration.isIncrementalFlameGraphEnabled()) {
+            return;
+        }
+        synchronized (recordingSession) {
+            if (recordingSession.getFlameGraphStream() != null) {
+                return;
+            }
+            final Map<String, String> settings = recordingSession.getRecording().getSettings();
+            final String samplingPeriod = settings.get(FlameGraphStream.EXECUTION_SAMPLE + "#period");
+            if (!"true".equals(settings.get(FlameGraphStream.EXECUTION_SAMPLE + "#enabled")) || samplingPeriod == null) {
+                return;
+            }
+            final FlameGraphStream flameGraphStream = new FlameGraphStream(samplingPeriod);
+            flameGraphStream.start();
+            recordingSession.setFlameGraphStream(flameGraphStream);
+
+            LOGGER.log(Level.FINE, "Aggregating execution samples of recording {0} every {1}",
+                    new Object[]{recordingSession.getRecording().getId(), samplingPeriod});
+        }
+    }
+
+    /**
+     * Waits for the remaining samples and releases the stream, so the aggregated stack traces and methods of a
+     * finished recording are not kept until it is deleted.
+     */
+    private static void finishFlameGraphStream(final RecordingSession recordingSession) {
+        final FlameGraphStream flameGraphStream = recordingSession.getFlameGraphStream();
+        if (flameGraphStream != null) {
+            flameGraphStream.finish(recordingSession.getStopTime());
+            recordingSession.setFlameGraphStream(null);
+        }
+    }
+
+    private static void closeFlameGraphStream(final RecordingSession recordingSession) {
+        final FlameGraphStream flameGraphStream = recordingSession.getFlameGraphStream();
+        if (flameGraphStream != null) {
+            flameGraphStream.close();
         }
     }
 
     public void setRecordingOptions(final long recordingId, final StartRecordingCommand command, final File filename)
             throws IOException {
-        synchronized (this.recordings) {
-            final RecordingSession recordingSession = this.recordings.get(recordingId);
-            if (recordingSession != null) {
+        final RecordingSession recordingSession = this.recordings.get(recordingId);
+        if (recordingSession != null) {
+            synchronized (recordingSession) {
                 final Recording recording = recordingSession.getRecording();
                 recording.setDuration(Duration.of(command.getDuration(), command.getTimeUnit()));
                 recording.setDestination(filename.toPath());
@@ -127,26 +315,22 @@ public class FlightRecorder {
                 if (command.getMaxSize() != null) {
                     recording.setMaxSize(command.getMaxSize());
                 }
-            } else {
-                LOGGER.log(Level.WARNING, "No recording with id {0} found" , recordingId);
             }
+        } else {
+            LOGGER.log(Level.WARNING, "No recording with id {0} found" , recordingId);
         }
     }
 
     public long startRecordingFor(final StartRecordingCommand command) throws IOException {
-        synchronized (this.recordings) {
-            final long recordingId = newRecording(command);
+        final long recordingId = newRecording(command);
+        final RecordingSession recordingSession = this.recordings.get(recordingId);
 
-            File basePath = null;
-            if (this.configuration.getJfrBasePath() != null) {
-                basePath = Path.of(this.configuration.getJfrBasePath()).toFile();
-            }
-
-            final File tempFile = File.createTempFile("recording" , ".jfr" , basePath);
+        // The session is already visible in the registry, so keep others away until it is completely set up
+        synchronized (recordingSession) {
+            final File tempFile = createTempFile();
 
             LOGGER.log(Level.INFO, "Recording {0} to temp file {1}" , new Object[]{recordingId, tempFile});
 
-            tempFile.deleteOnExit();
             setRecordingOptions(recordingId, command, tempFile);
 
             Duration delay = null;
@@ -160,21 +344,160 @@ public class FlightRecorder {
         }
     }
 
-    @Scheduled(fixedDelayString = "${flightrecorder.recording-cleanup-interval}")
-    public void cleanupOldRecordings() {
-        synchronized (this.recordings) {
-
-            Set<Long> deletableRecordings;
-            if (this.configuration.getRecordingCleanupType() == FlightRecorderDynamicConfiguration.CleanupType.TTL) {
-                deletableRecordings = getDeletableRecordingsByTTL();
-            } else if (this.configuration.getRecordingCleanupType() == FlightRecorderDynamicConfiguration.CleanupType.COUNT) {
-                deletableRecordings = getDeletableRecordingsByCount();
-            } else { // can only happen in tests if cleanupType is not set
-                throw new IllegalArgumentException("Unknown CleanupType '%s'. Deletion failed.".formatted(this.configuration.getRecordingCleanupType()));
+    private File createTempFile() throws IOException {
+        File basePath = null;
+        if (this.configuration.getJfrBasePath() != null) {
+            basePath = Path.of(this.configuration.getJfrBasePath()).toFile();
+        }
+
+        // Not registered with deleteOnExit, which would keep every file name until the JVM exits. The files are
+        // deleted with their sessions, and snapshots are deleted once they were sent
+        return File.createTempFile("recording" , ".jfr" , basePath);
+    }
+
+    /**
+     * Starts the always-on background recording, which keeps the data of the last
+     * {@code flightrecorder.continuous-recording-max-age} in the JFR disk repository, bounded by
+     * {@code flightrecorder.continuous-recording-max-size}. The background recording is not part of the
+     * recording sessions, so it is never affected by the cleanup process.
+     */
+    public synchronized void startContinuousRecording() {
+        if (this.continuousRecording != null) {
+            return;
+        }
+        final String chosenConfiguration = this.configuration.getContinuousRecordingConfig() != null ? this.configuration.getContinuousRecordingConfig() : "default";
+        final Recording recording = new Recording(getConfigurationSettings(Configuration.getConfigurations(), chosenConfiguration, null));
+        recording.setName("Spring Boot Starter Continuous Flight Recording");
+        recording.setToDisk(true);
+        if (this.configuration.getContinuousRecordingMaxAge() > 0 && this.configuration.getContinuousRecordingMaxAgeTimeUnit() != null) {
+            recording.setMaxAge(Duration.of(this.configuration.getContinuousRecordingMaxAge(), this.configuration.getContinuousRecordingMaxAgeTimeUnit()));
+        }
+        if (this.configuration.getContinuousRecordingMaxSize() > 0) {
+            recording.setMaxSize(this.configuration.getContinuousRecordingMaxSize());
+        }
+        recording.start();
+
+        LOGGER.log(Level.INFO, "Started continuous recording with maximum age {0} and maximum size {1} bytes",
+                new Object[]{recording.getMaxAge(), recording.getMaxSize()});
+
+        this.continuousRecording = recording;
+    }
+
+    public synchronized void stopContinuousRecording() {
+        if (this.continuousRecording != null) {
+            this.continuousRecording.close();
+            this.continuousRecording = null;
+        }
+    }
+
+    public boolean isContinuousRecordingActive() {
+        return this.continuousRecording != null;
+    }
+
+    /**
+     * Dumps the data of the continuous recording into a new, already stopped recording session, while the
+     * continuous recording keeps running. If a duration is given, only the data of this last time window is
+     * dumped. As JFR keeps its data in chunks, the dumped data might start a little earlier.
+     *
+     * @param command the time window to dump
+     * @return the id of the new recording session
+     * @throws IOException           if the data cannot be written
+     * @throws IllegalStateException if there is no continuous recording
+     */
+    public long dumpContinuousRecording(final DumpRecordingCommand command) throws IOException {
+        final Recording source = this.continuousRecording;
+        if (source == null) {
+            throw new IllegalStateException("There is no continuous recording running");
+        }
+
+        Instant startTime = source.getStartTime();
+        final File tempFile = createTempFile();
+        // Creating a stopped copy includes the currently written chunk, but does not affect the source
+        final Recording copy = source.copy(true);
+        try {
+            if (command.getDuration() != null && command.getTimeUnit() != null) {
+                final Duration window = Duration.of(command.getDuration(), command.getTimeUnit());
+                copy.setMaxAge(window);
+                final Instant windowStart = Instant.now().minus(window);
+                if (windowStart.isAfter(startTime)) {
+                    startTime = windowStart;
+                }
             }
+            copy.dump(tempFile.toPath());
+        } finally {
+            copy.close();
+        }
+
+        LOGGER.log(Level.INFO, "Dumped continuous recording since {0} to temp file {1}", new Object[]{startTime, tempFile});
 
-            deletableRecordings.forEach(this::deleteRecording);
+        final String description = command.getDescription() != null ? command.getDescription() : "Dump of continuous recording";
+        this.recordings.put(copy.getId(), new RecordingSession(copy, description, tempFile, startTime));
+        return copy.getId();
+    }
+
+    /**
+     * Subscribes to live events of the given types. The event settings like thresholds or periods are taken from
+     * the configured JFR configuration profile, so the overhead is the same as for a regular recording.
+     *
+     * @param eventTypes         the names of the event types, e.g. jdk.GarbageCollection
+     * @param maxEventsPerSecond the requested rate limit, capped by {@code flightrecorder.stream-max-events-per-second}
+     * @return the already started subscription, which must be closed by the caller
+     * @throws IllegalArgumentException if an event type is unknown
+     */
+    public LiveEventSubscription subscribe(final Set<String> eventTypes, final Integer maxEventsPerSecond) {
+        if (eventTypes == null || eventTypes.isEmpty()) {
+            throw new IllegalArgumentException("At least one event type is required");
+        }
+        final Set<String> knownEventTypes = jdk.jfr.FlightRecorder.getFlightRecorder().getEventTypes().stream()
+                .map(EventType::getName)
+                .collect(Collectors.toSet());
+        final Set<String> unknownEventTypes = new TreeSet<>(eventTypes);
+        unknownEventTypes.removeAll(knownEventTypes);
+        if (!unknownEventTypes.isEmpty()) {
+            throw new IllegalArgumentException("Unknown event type(s) %s".formatted(unknownEventTypes));
         }
+
+        final Map<String, String> configurationSettings = getConfigurationSettings(Configuration.getConfigurations(), null);
+        final Map<String, String> settings = new HashMap<>();
+        for (final String eventType : eventTypes) {
+            final String prefix = eventType + "#";
+            configurationSettings.forEach((key, value) -> {
+                if (key.startsWith(prefix)) {
+                    settings.put(key, value);
+                }
+            });
+            settings.put(prefix + "enabled", "true");
+        }
+
+        int rateLimit = this.configuration.getStreamMaxEventsPerSecond();
+        if (maxEventsPerSecond != null && maxEventsPerSecond > 0 && (rateLimit <= 0 || maxEventsPerSecond < rateLimit)) {
+            rateLimit = maxEventsPerSecond;
+        }
+        final int bufferSize = this.configuration.getStreamBufferSize() > 0 ? this.configuration.getStreamBufferSize() : DEFAULT_STREAM_BUFFER_SIZE;
+
+        final LiveEventSubscription subscription = new LiveEventSubscription(eventTypes, settings, bufferSize, rateLimit,
+                this.subscriptions::remove);
+        this.subscriptions.add(subscription);
+        subscription.start();
+
+        LOGGER.log(Level.INFO, "Subscribed to live events {0} with a limit of {1} events per second",
+                new Object[]{eventTypes, rateLimit});
+
+        return subscription;
+    }
+
+    @Scheduled(fixedDelayString = "${flightrecorder.recording-cleanup-interval}")
+    public void cleanupOldRecordings() {
+        final Set<Long> deletableRecordings;
+        if (this.configuration.getRecordingCleanupType() == FlightRecorderDynamicConfiguration.CleanupType.TTL) {
+            deletableRecordings = getDeletableRecordingsByTTL();
+        } else if (this.configuration.getRecordingCleanupType() == FlightRecorderDynamicConfiguration.CleanupType.COUNT) {
+            deletableRecordings = getDeletableRecordingsByCount();
+        } else { // can only happen in tests if cleanupType is not set
+            throw new IllegalArgumentException("Unknown CleanupType '%s'. Deletion failed.".formatted(this.configuration.getRecordingCleanupType()));
+        }
+
+        deletableRecordings.forEach(this::deleteRecording);
     }
 
     /**
@@ -187,17 +510,14 @@ public class FlightRecorder {
         final Instant deadline = Instant.now()
                 .minus(this.configuration.getOldRecordingsTTL(), this.configuration.getOldRecordingsTTLTimeUnit());
         for (final Map.Entry<Long, RecordingSession> entry : this.recordings.entrySet()) {
-            final Recording recording = entry.getValue().getRecording();
-            if ((recording.getState() == RecordingState.STOPPED || recording.getState() == RecordingState.CLOSED) &&
-                    recording.getStartTime().isBefore(deadline)) {
-                try {
-                    if (recording.getState() == RecordingState.STOPPED) {
-                        recording.close();
-                    }
-                } catch (final Exception e) {
-                    LOGGER.log(Level.INFO, "Cannot close recording {0}", new Object[]{recording.getId()});
+            final RecordingSession recordingSession = entry.getValue();
+            synchronized (recordingSession) {
+                final Recording recording = recordingSession.getRecording();
+                if ((recording.getState() == RecordingState.STOPPED || recording.getState() == RecordingState.CLOSED) &&
+                        startTimeOf(recordingSession).isBefore(deadline)) {
+                    closeFinishedRecording(recordingSession);
+                    deletableRecordings.add(entry.getKey());
                 }
-                deletableRecordings.add(entry.getKey());
             }
         }
         LOGGER.log(Level.FINE, "Found {0} finished recording(s) to be deleted based on TTL ({1} {2}).",
@@ -215,27 +535,26 @@ public class FlightRecorder {
      */
     protected Set<Long> getDeletableRecordingsByCount() {
         final int maxRecordings = this.configuration.getOldRecordingsMax();
-        if (this.recordings.size() <= maxRecordings) {
+        // Work on a snapshot, as recordings might be added or removed concurrently
+        final List<Map.Entry<Long, RecordingSession>> allRecordings = new ArrayList<>(this.recordings.entrySet());
+        if (allRecordings.size() <= maxRecordings) {
             return Collections.emptySet();
         }
 
-        List<Map.Entry<Long, RecordingSession>> recordingsAboveThreshold = this.recordings.entrySet().stream()
-                .sorted(Comparator.comparing(recs -> recs.getValue().getRecording().getStartTime()))
+        final List<Map.Entry<Long, RecordingSession>> recordingsAboveThreshold = allRecordings.stream()
+                .sorted(Comparator.comparing(recs -> startTimeOf(recs.getValue())))
                 .collect(Collectors.toList())
-                .subList(0, this.recordings.size() - maxRecordings);
+                .subList(0, allRecordings.size() - maxRecordings);
 
         final Set<Long> deletableRecordings = new HashSet<>();
         for (final Map.Entry<Long, RecordingSession> entry : recordingsAboveThreshold) {
-            final Recording recording = entry.getValue().getRecording();
-            if ((recording.getState() == RecordingState.STOPPED || recording.getState() == RecordingState.CLOSED)) {
-                try {
-                    if (recording.getState() == RecordingState.STOPPED) {
-                        recording.close();
-                    }
-                } catch (final Exception e) {
-                    LOGGER.log(Level.INFO, "Cannot close recording {0}", new Object[]{recording.getId()});
+            final RecordingSession recordingSession = entry.getValue();
+            synchronized (recordingSession) {
+                final Recording recording = recordingSession.getRecording();
+                if ((recording.getState() == RecordingState.STOPPED || recording.getState() == RecordingState.CLOSED)) {
+                    closeFinishedRecording(recordingSession);
+                    deletableRecordings.add(entry.getKey());
                 }
-                deletableRecordings.add(entry.getKey());
             }
         }
         LOGGER.log(Level.FINE, "Found {0} finished recording(s) to be deleted based on COUNT threshold ({1} recordings).",
@@ -244,10 +563,38 @@ public class FlightRecorder {
         return deletableRecordings;
     }
 
+    private static File fileOf(final RecordingSession recordingSession) {
+        if (recordingSession.getDumpFile() != null) {
+            return recordingSession.getDumpFile();
+        }
+        return recordingSession.getRecording().getDestination().toFile();
+    }
+
+    private static Instant startTimeOf(final RecordingSession recordingSession) {
+        if (recordingSession.getDumpFile() != null) {
+            return recordingSession.getStartTime();
+        }
+        return recordingSession.getRecording().getStartTime();
+    }
+
+    private void closeFinishedRecording(final RecordingSession recordingSession) {
+        final Recording recording = recordingSession.getRecording();
+        try {
+            if (recording.getState() == RecordingState.STOPPED) {
+                recording.close();
+                recordingSession.refresh();
+            }
+            closeFlameGraphStream(recordingSession);
+        } catch (final Exception e) {
+            LOGGER.log(Level.INFO, "Cannot close recording {0}", new Object[]{recording.getId()});
+        }
+    }
+
     public void deleteRecording(final long recordingId) {
-        synchronized (this.recordings) {
-            final RecordingSession recordingSession = this.recordings.remove(recordingId);
-            if (recordingSession != null) {
+        // Removing the session first makes it invisible to all readers before the expensive part starts
+        final RecordingSession recordingSession = this.recordings.remove(recordingId);
+        if (recordingSession != null) {
+            synchronized (recordingSession) {
                 final Recording recording = recordingSession.getRecording();
                 if (recording.getState() == RecordingState.RUNNING) {
                     recording.stop();
@@ -255,60 +602,54 @@ public class FlightRecorder {
                 } else if (recording.getState() == RecordingState.STOPPED) {
                     recording.close();
                 }
+                closeFlameGraphStream(recordingSession);
 
-                recordingSession.getRecording().getDestination().toFile().delete();
-
-            } else {
-                LOGGER.log(Level.WARNING, "No recording with id {0} found" , recordingId);
+                fileOf(recordingSession).delete();
+                this.flameGraphCache.invalidate(recordingId);
             }
+        } else {
+            LOGGER.log(Level.WARNING, "No recording with id {0} found" , recordingId);
         }
     }
 
 
     public boolean isRecordingStopped(final long recordingId) {
-        synchronized (this.recordings) {
-            final RecordingSession recordingSession = this.recordings.get(recordingId);
-            if (recordingSession == null) {
-                return true;
-            }
-            final Recording recording = recordingSession.getRecording();
-            return recording.getState() == RecordingState.CLOSED || recording.getState() == RecordingState.STOPPED;
+        final RecordingSession recordingSession = this.recordings.get(recordingId);
+        if (recordingSession == null) {
+            return true;
         }
+        return recordingSession.isFinished();
     }
 
     public List<FlightRecorderPublicSession> sessions() {
         final List<FlightRecorderPublicSession> result = new ArrayList<>();
-        synchronized (this.recordings) {
-            for (final RecordingSession session : this.recordings.values()) {
-                final FlightRecorderPublicSession publicSession = getFlightRecorderPublicSession(session);
-                result.add(publicSession);
-            }
+        for (final RecordingSession session : this.recordings.values()) {
+            result.add(getFlightRecorderPublicSession(session));
         }
         result.sort(Comparator.comparingLong(FlightRecorderPublicSession::getId));
-        return result;
+        return List.copyOf(result);
     }
 
     public FlightRecorderPublicSession getById(final Long recordingId) {
-        synchronized (this.recordings) {
-            final RecordingSession session = this.recordings.get(recordingId);
-            if (session != null) {
-                return getFlightRecorderPublicSession(session);
-            } else {
-                return null;
-            }
+        final RecordingSession session = this.recordings.get(recordingId);
+        if (session != null) {
+            return getFlightRecorderPublicSession(session);
+        } else {
+            return null;
         }
     }
 
     FlightRecorderPublicSession getFlightRecorderPublicSession(final RecordingSession session) {
         final FlightRecorderPublicSession publicSession = new FlightRecorderPublicSession();
         publicSession.setId(session.getRecording().getId());
-        publicSession.setStatus(session.getRecording().getState().name());
-        publicSession
-                .setStartedAt(LocalDateTime.ofInstant(session.getRecording().getStartTime(), ZoneId.systemDefault()));
-        if (session.getRecording().getState() == RecordingState.CLOSED
-                || session.getRecording().getState() == RecordingState.STOPPED) {
+        publicSession.setStatus(session.getState().name());
+        if (session.getStartTime() != null) {
+            publicSession
+                    .setStartedAt(LocalDateTime.ofInstant(session.getStartTime(), ZoneId.systemDefault()));
+        }
+        if (session.isFinished() && session.getStopTime() != null) {
             publicSession
-                    .setFinishedAt(LocalDateTime.ofInstant(session.getRecording().getStopTime(), ZoneId.systemDefault()));
+                    .setFinishedAt(LocalDateTime.ofInstant(session.getStopTime(), ZoneId.systemDefault()));
         }
         publicSession.setDescription(session.getDescription());
         return publicSession;
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.core;
+
+import de.mirkosertic.flightrecorderstarter.actuator.model.LiveEvent;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingStream;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * A subscription to live JFR events, backed by a {@link RecordingStream} of its own.
+ * <p>
+ * Events are rate limited by a token bucket while they are received, so events above the limit are dropped before
+ * they are even copied. Accepted events are kept in a bounded buffer, and if the subscriber cannot keep up, the
+ * oldest buffered events are dropped in favor of new ones.
+ */
+public class LiveEventSubscription implements AutoCloseable {
+
+    private final RecordingStream stream;
+    private final ArrayDeque<LiveEvent> buffer;
+    private final int bufferSize;
+    private final int maxEventsPerSecond;
+    private final AtomicLong droppedEvents;
+    private final Consumer<LiveEventSubscription> onClose;
+
+    // Only accessed by the stream thread
+    private double tokens;
+    private long lastRefill;
+
+    private volatile boolean closed;
+
+    LiveEventSubscription(final Set<String> eventTypes, final Map<String, String> settings, final int bufferSize,
+                          final int maxEventsPerSecond, final Consumer<LiveEventSubscription> onClose) {
+        this.buffer = new ArrayDeque<>(bufferSize);
+        this.bufferSize = bufferSize;
+        this.maxEventsPerSecond = maxEventsPerSecond;
+        this.droppedEvents = new AtomicLong();
+        this.onClose = onClose;
+        this.tokens = maxEventsPerSecond;
+        this.lastRefill = System.nanoTime();
+
+        this.stream = new RecordingStream();
+        this.stream.setSettings(settings);
+        for (final String eventType : eventTypes) {
+            this.stream.onEvent(eventType, this::receive);
+        }
+        // Wakes up a subscriber waiting for events, as there will be no more
+        this.stream.onClose(() -> {
+            this.closed = true;
+            synchronized (this.buffer) {
+                this.buffer.notifyAll();
+            }
+        });
+    }
+
+    void start() {
+        this.stream.startAsync();
+    }
+
+    private void receive(final RecordedEvent event) {
+        offer(() -> LiveEvent.from(event));
+    }
+
+    /**
+     * Buffers an event if the rate limit allows it. The event is only created if it is buffered.
+     */
+    void offer(final Supplier<LiveEvent> event) {
+        if (!tryAcquire()) {
+            this.droppedEvents.incrementAndGet();
+            return;
+        }
+        final LiveEvent liveEvent = event.get();
+        synchronized (this.buffer) {
+            if (this.buffer.size() >= this.bufferSize) {
+                this.buffer.pollFirst();
+                this.droppedEvents.incrementAndGet();
+            }
+            this.buffer.addLast(liveEvent);
+            this.buffer.notifyAll();
+        }
+    }
+
+    private boolean tryAcquire() {
+        if (this.maxEventsPerSecond <= 0) {
+            return true;
+        }
+        final long now = System.nanoTime();
+        this.tokens = Math.min(this.maxEventsPerSecond,
+                this.tokens + (now - this.lastRefill) * this.maxEventsPerSecond / 1_000_000_000d);
+        this.lastRefill = now;
+        if (this.tokens >= 1d) {
+            this.tokens -= 1d;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Waits for the next buffered event.
+     *
+     * @param timeout the maximum time to wait
+     * @return the next event, or null if there was no event within the timeout or the subscription is closed
+     * @throws InterruptedException if the waiting thread was interrupted
+     */
+    public LiveEvent poll(final Duration timeout) throws InterruptedException {
+        final long deadline = System.nanoTime() + timeout.toNanos();
+        synchronized (this.buffer) {
+            while (this.buffer.isEmpty() && !this.closed) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return null;
+                }
+                this.buffer.wait(Math.max(1, remaining / 1_000_000));
+            }
+            return this.buffer.pollFirst();
+        }
+    }
+
+    public long getDroppedEvents() {
+        return this.droppedEvents.get();
+    }
+
+    public boolean isClosed() {
+        return this.closed;
+    }
+
+    @Override
+    public void close() {
+        this.closed = true;
+        this.stream.close();
+        synchronized (this.buffer) {
+            this.buffer.notifyAll();
+        }
+        this.onClose.accept(this);
+    }
+}
@@ -1,15 +1,49 @@
 package de.mirkosertic.flightrecorderstarter.core;
 
+import de.mirkosertic.flightrecorderstarter.actuator.model.RecordingIndex;
 import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
 
+import java.io.File;
+import java.time.Instant;
+
+/**
+ * A recording known to the {@link FlightRecorder} registry.
+ * <p>
+ * State changing operations on the underlying {@link Recording} are guarded by the monitor of the session
+ * instance. The state, start and stop times are cached in volatile fields, so read-only requests never need
+ * to touch the recording itself, as every getter of {@link Recording} synchronizes on the global JFR recorder
+ * lock which is held for the whole duration of a {@link Recording#stop()}.
+ */
 class RecordingSession {
 
     private final Recording recording;
     private final String description;
+    private final File dumpFile;
+    private final Instant dumpStartTime;
+
+    private volatile RecordingState state;
+    private volatile Instant startTime;
+    private volatile Instant stopTime;
+    private volatile FlameGraphStream flameGraphStream;
+    private volatile RecordingIndex recordingIndex;
 
     public RecordingSession(final Recording recording, final String description) {
+        this(recording, description, null, null);
+    }
+
+    /**
+     * Creates a session for data that was dumped from another recording into a file of its own. As the
+     * dumped recording is a copy, it reports the start time of the original recording, so the start of the
+     * dumped time window is kept instead.
+     */
+    public RecordingSession(final Recording recording, final String description, final File dumpFile,
+                            final Instant dumpStartTime) {
         this.recording = recording;
         this.description = description;
+        this.dumpFile = dumpFile;
+        this.dumpStartTime = dumpStartTime;
+        refresh();
     }
 
     public Recording getRecording() {
@@ -19,4 +53,59 @@ class RecordingSession {
     public String getDescription() {
         return this.description;
     }
+
+    /**
+     * @return the file the data was dumped to, or null if the data is written to the recording destination
+     */
+    public File getDumpFile() {
+        return this.dumpFile;
+    }
+
+    /**
+     * @return the stream aggregating the execution samples of this session, or null if there is none
+     */
+    public FlameGraphStream getFlameGraphStream() {
+        return this.flameGraphStream;
+    }
+
+    public void setFlameGraphStream(final FlameGraphStream flameGraphStream) {
+        this.flameGraphStream = flameGraphStream;
+    }
+
+    /**
+     * @return the index of the recording file, or null if it has not been built yet
+     */
+    public RecordingIndex getRecordingIndex() {
+        return this.recordingIndex;
+    }
+
+    public void setRecordingIndex(final RecordingIndex recordingIndex) {
+        this.recordingIndex = recordingIndex;
+    }
+
+    /**
+     * Takes over the current state of the underlying recording into the cached fields.
+     */
+    public void refresh() {
+        this.state = this.recording.getState();
+        this.startTime = this.dumpStartTime != null ? this.dumpStartTime : this.recording.getStartTime();
+        this.stopTime = this.recording.getStopTime();
+    }
+
+    public RecordingState getState() {
+        return this.state;
+    }
+
+    public Instant getStartTime() {
+        return this.startTime;
+    }
+
+    public Instant getStopTime() {
+        return this.stopTime;
+    }
+
+    public boolean isFinished() {
+        final RecordingState current = this.state;
+        return current == RecordingState.CLOSED || current == RecordingState.STOPPED;
+    }
 }
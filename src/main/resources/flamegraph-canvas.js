@@ -0,0 +1,476 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*
+ * Flame graph renderer drawing to a canvas, for flame graphs too large for the SVG of d3-flamegraph.
+ *
+ * The tree is flattened once into typed arrays in depth first order, so the frames of every level are sorted by
+ * their start. Only the levels in the viewport are drawn, and the first visible frame of a level is found by a
+ * binary search. Frames narrower than half a pixel are not drawn, and the following frames ending in the same
+ * pixel are skipped by another binary search, so drawing costs about one step per visible pixel instead of one
+ * per frame. Frame names are interned, so colors, text widths and search matches are computed once per distinct
+ * name.
+ */
+(function (global) {
+    "use strict";
+
+    var ROW_HEIGHT = 18;
+    var MIN_FRAME_WIDTH = 0.5;
+    var MIN_LABEL_WIDTH = 35;
+    var FONT = "12px Verdana, sans-serif";
+    var HIGHLIGHT_COLOR = "#E600E6";
+
+    /**
+     * Flattens a tree with the structure of data.json, nodes with a name, a value and children.
+     */
+    function flatten(root) {
+        var count = 0;
+        var maxDepth = 0;
+        var stack = [root];
+        var depths = [0];
+        while (stack.length) {
+            var node = stack.pop();
+            var depth = depths.pop();
+            count++;
+            maxDepth = Math.max(maxDepth, depth);
+            var children = node.children || [];
+            for (var i = 0; i < children.length; i++) {
+                stack.push(children[i]);
+                depths.push(depth + 1);
+            }
+        }
+
+        var tree = newTree(count, maxDepth + 1, []);
+        var nameIndex = new Map();
+        var starts = [0];
+        var index = 0;
+        stack.push(root);
+        depths.push(0);
+        while (stack.length) {
+            var current = stack.pop();
+            var currentDepth = depths.pop();
+            var currentStart = starts.pop();
+            var currentChildren = current.children || [];
+
+            // The root of data.json has no value of its own
+            var sum = 0;
+            for (var j = 0; j < currentChildren.length; j++) {
+                sum += currentChildren[j].value;
+            }
+            var name = nameIndex.get(current.name);
+            if (name === undefined) {
+                name = tree.names.length;
+                tree.names.push(current.name);
+                nameIndex.set(current.name, name);
+            }
+            tree.start[index] = currentStart;
+            tree.value[index] = Math.max(current.value || 0, sum);
+            tree.depth[index] = currentDepth;
+            tree.name[index] = name;
+            index++;
+
+            // Pushed in reverse, so the first child is taken next and every level stays sorted by start
+            var end = currentStart + sum;
+            for (var k = currentChildren.length - 1; k >= 0; k--) {
+                end -= currentChildren[k].value;
+                stack.push(currentChildren[k]);
+                depths.push(currentDepth + 1);
+                starts.push(end);
+            }
+        }
+        indexRows(tree);
+        return tree;
+    }
+
+    /**
+     * Flattens a flame graph in the compact format without decoding it into objects first. Its nodes are in
+     * breadth first order, so the depth of every node is known before its children are visited, and its names
+     * are already interned.
+     */
+    function flattenCompact(compact) {
+        var nodes = compact.nodes;
+        var count = nodes.length;
+        var depthOf = new Int32Array(count);
+        var firstChildOf = new Int32Array(count);
+        var maxDepth = 0;
+        var child = 1;
+        for (var i = 0; i < count; i++) {
+            firstChildOf[i] = child;
+            for (var end = child + nodes[i][2]; child < end; child++) {
+                depthOf[child] = depthOf[i] + 1;
+                maxDepth = Math.max(maxDepth, depthOf[child]);
+            }
+        }
+
+        var tree = newTree(count, maxDepth + 1, compact.names);
+        var stack = [0];
+        var starts = [0];
+        var index = 0;
+        while (stack.length) {
+            var current = stack.pop();
+            var currentStart = starts.pop();
+            var node = nodes[current];
+            var first = firstChildOf[current];
+            var last = first + node[2] - 1;
+
+            var sum = 0;
+            for (var j = first; j <= last; j++) {
+                sum += nodes[j][1];
+            }
+            tree.start[index] = currentStart;
+            tree.value[index] = Math.max(node[1], sum);
+            tree.depth[index] = depthOf[current];
+            tree.name[index] = node[0];
+            index++;
+
+            var childEnd = currentStart + sum;
+            for (var k = last; k >= first; k--) {
+                childEnd -= nodes[k][1];
+                stack.push(k);
+                starts.push(childEnd);
+            }
+        }
+        indexRows(tree);
+        return tree;
+    }
+
+    function newTree(size, levels, names) {
+        return {
+            size: size,
+            levels: levels,
+            start: new Float64Array(size),
+            value: new Float64Array(size),
+            depth: new Int32Array(size),
+            name: new Int32Array(size),
+            names: names,
+            rows: []
+        };
+    }
+
+    function indexRows(tree) {
+        var sizes = new Int32Array(tree.levels);
+        for (var i = 0; i < tree.size; i++) {
+            sizes[tree.depth[i]]++;
+        }
+        for (var level = 0; level < tree.levels; level++) {
+            tree.rows.push(new Int32Array(sizes[level]));
+            sizes[level] = 0;
+        }
+        for (var node = 0; node < tree.size; node++) {
+            var depth = tree.depth[node];
+            tree.rows[depth][sizes[depth]++] = node;
+        }
+    }
+
+    /**
+     * @return the index of the first frame of a row ending after a position, searching from an index
+     */
+    function firstEndingAfter(tree, row, position, from) {
+        var low = from;
+        var high = row.length;
+        while (low < high) {
+            var middle = (low + high) >>> 1;
+            var node = row[middle];
+            if (tree.start[node] + tree.value[node] <= position) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns a vector between 0 and 1 for a name, like d3-flamegraph does for its warm colors.
+     */
+    function hashOf(name) {
+        var hash = 0;
+        var maxHash = 0;
+        var weight = 1;
+        for (var i = 0; i < name.length && i <= 6; i++) {
+            hash += weight * (name.charCodeAt(i) % 10);
+            maxHash += weight * 9;
+            weight *= 0.7;
+        }
+        return maxHash > 0 ? hash / maxHash : 0;
+    }
+
+    function colorOf(name) {
+        var vector = hashOf(name);
+        return "rgb(" + (200 + Math.round(55 * vector)) + "," + Math.round(230 * (1 - vector)) + ","
+            + Math.round(55 * (1 - vector)) + ")";
+    }
+
+    /**
+     * Creates a flame graph in a container element.
+     *
+     * @param container the element to draw into, its height is set to the height of the whole graph
+     * @param options   {@code details}, an element for the frame under the mouse, and {@code formatValue}, a
+     *                  function formatting the value of a frame
+     */
+    function canvasFlamegraph(container, options) {
+        options = options || {};
+        var formatValue = options.formatValue || function (value) {
+            return value + " samples";
+        };
+        var details = options.details || null;
+
+        var canvas = document.createElement("canvas");
+        canvas.style.position = "sticky";
+        canvas.style.top = "0";
+        canvas.style.display = "block";
+        canvas.style.cursor = "pointer";
+        container.style.position = "relative";
+        container.appendChild(canvas);
+        var context = canvas.getContext("2d");
+
+        var tree = null;
+        var colors = [];
+        var textWidths = null;
+        var matches = null;
+        var zoomed = 0;
+        var offset = 0;
+        var drawPending = false;
+
+        function height() {
+            return tree ? tree.levels * ROW_HEIGHT : 0;
+        }
+
+        function total() {
+            return tree.value[0];
+        }
+
+        function draw() {
+            drawPending = false;
+            if (!tree) {
+                return;
+            }
+            var width = container.clientWidth;
+            var graphHeight = height();
+            var viewHeight = Math.min(graphHeight, window.innerHeight);
+            var ratio = window.devicePixelRatio || 1;
+            if (canvas.width !== Math.round(width * ratio) || canvas.height !== Math.round(viewHeight * ratio)) {
+                canvas.width = Math.round(width * ratio);
+                canvas.height = Math.round(viewHeight * ratio);
+                canvas.style.width = width + "px";
+                canvas.style.height = viewHeight + "px";
+            }
+            context.setTransform(ratio, 0, 0, ratio, 0, 0);
+            context.clearRect(0, 0, width, viewHeight);
+            context.font = FONT;
+            context.textBaseline = "middle";
+
+            // The canvas sticks to the top of the window while the container is scrolled through
+            offset = Math.max(0, Math.min(graphHeight - viewHeight, -container.getBoundingClientRect().top));
+            if (tree.value[zoomed] <= 0) {
+                return;
+            }
+            var viewStart = tree.start[zoomed];
+            var viewEnd = viewStart + tree.value[zoomed];
+            var scale = width / (viewEnd - viewStart);
+            var zoomedDepth = tree.depth[zoomed];
+
+            // The root is at the bottom, so the deepest visible level is at the top of the canvas
+            var topLevel = Math.min(tree.levels - 1, Math.floor((graphHeight - offset) / ROW_HEIGHT));
+            var bottomLevel = Math.max(0, Math.floor((graphHeight - offset - viewHeight) / ROW_HEIGHT));
+            for (var level = bottomLevel; level <= topLevel; level++) {
+                var row = tree.rows[level];
+                var y = graphHeight - (level + 1) * ROW_HEIGHT - offset;
+                // Levels above the zoomed frame only contain its ancestors
+                context.globalAlpha = level < zoomedDepth ? 0.6 : 1;
+                var i = firstEndingAfter(tree, row, viewStart, 0);
+                while (i < row.length) {
+                    var node = row[i];
+                    var start = tree.start[node];
+                    if (start >= viewEnd) {
+                        break;
+                    }
+                    var x = (start - viewStart) * scale;
+                    var frameWidth = tree.value[node] * scale;
+                    if (frameWidth < MIN_FRAME_WIDTH) {
+                        // Skips the frames ending in the same pixel, which are all too narrow to be drawn
+                        i = firstEndingAfter(tree, row, viewStart + (Math.floor(x) + 1) / scale, i + 1);
+                        continue;
+                    }
+                    drawFrame(node, Math.max(0, x), y, Math.min(width, x + frameWidth) - Math.max(0, x));
+                    i++;
+                }
+            }
+            context.globalAlpha = 1;
+        }
+
+        function drawFrame(node, x, y, width) {
+            var name = tree.name[node];
+            if (matches && matches[name]) {
+                context.fillStyle = HIGHLIGHT_COLOR;
+            } else {
+                if (colors[name] === undefined) {
+                    colors[name] = colorOf(tree.names[name]);
+                }
+                context.fillStyle = colors[name];
+            }
+            context.fillRect(x, y, Math.max(width - 0.5, 0.5), ROW_HEIGHT - 1);
+            if (width < MIN_LABEL_WIDTH) {
+                return;
+            }
+            var label = tree.names[name];
+            if (textWidths[name] < 0) {
+                textWidths[name] = context.measureText(label).width;
+            }
+            var available = width - 8;
+            if (textWidths[name] > available) {
+                // Estimated by the average character width, which is good enough for a label
+                var characters = Math.floor(available / (textWidths[name] / label.length)) - 2;
+                if (characters < 1) {
+                    return;
+                }
+                label = label.substring(0, characters) + "..";
+            }
+            context.fillStyle = "black";
+            context.fillText(label, x + 4, y + ROW_HEIGHT / 2);
+        }
+
+        function scheduleDraw() {
+            if (!drawPending) {
+                drawPending = true;
+                window.requestAnimationFrame(draw);
+            }
+        }
+
+        /**
+         * @return the frame at a position of the canvas, or -1 if there is none
+         */
+        function nodeAt(x, y) {
+            var level = Math.floor((height() - offset - y) / ROW_HEIGHT);
+            if (!tree || level < 0 || level >= tree.levels) {
+                return -1;
+            }
+            var viewStart = tree.start[zoomed];
+            var position = viewStart + x * tree.value[zoomed] / container.clientWidth;
+            var row = tree.rows[level];
+            var i = firstEndingAfter(tree, row, position, 0);
+            if (i < row.length && tree.start[row[i]] <= position) {
+                return row[i];
+            }
+            return -1;
+        }
+
+        function describe(node) {
+            return tree.names[tree.name[node]] + " (" + (100 * tree.value[node] / total()).toFixed(3) + "%, "
+                + formatValue(tree.value[node]) + ")";
+        }
+
+        function showDetails(text) {
+            if (details) {
+                details.textContent = text;
+            }
+        }
+
+        canvas.addEventListener("mousemove", function (event) {
+            var node = nodeAt(event.offsetX, event.offsetY);
+            showDetails(node < 0 ? "" : describe(node));
+        });
+        canvas.addEventListener("mouseout", function () {
+            showDetails("");
+        });
+        canvas.addEventListener("click", function (event) {
+            var node = nodeAt(event.offsetX, event.offsetY);
+            if (node >= 0) {
+                chart.zoomTo(node);
+            }
+        });
+        window.addEventListener("scroll", scheduleDraw);
+        window.addEventListener("resize", scheduleDraw);
+
+        var chart = {
+            /**
+             * Shows a tree with the structure of data.json.
+             */
+            setData: function (root) {
+                return chart.setTree(flatten(root));
+            },
+
+            /**
+             * Shows a flame graph in the compact format of format=compact.
+             */
+            setCompactData: function (compact) {
+                return chart.setTree(flattenCompact(compact));
+            },
+
+            setTree: function (flattened) {
+                tree = flattened;
+                colors = [];
+                textWidths = new Float64Array(tree.names.length).fill(-1);
+                matches = null;
+                zoomed = 0;
+                container.style.height = height() + "px";
+                draw();
+                return chart;
+            },
+
+            zoomTo: function (node) {
+                zoomed = node;
+                draw();
+                return chart;
+            },
+
+            resetZoom: function () {
+                return chart.zoomTo(0);
+            },
+
+            /**
+             * Highlights the frames containing a term, and returns the share of the total they cover. Frames
+             * below a matching frame are not counted twice.
+             */
+            search: function (term) {
+                if (!tree) {
+                    return 0;
+                }
+                if (!term) {
+                    matches = null;
+                    draw();
+                    return 0;
+                }
+                matches = new Uint8Array(tree.names.length);
+                for (var name = 0; name < tree.names.length; name++) {
+                    matches[name] = tree.names[name].indexOf(term) >= 0 ? 1 : 0;
+                }
+                // In depth first order, the frames below a frame start before its end
+                var matched = 0;
+                var matchedEnd = -1;
+                for (var node = 1; node < tree.size; node++) {
+                    if (matches[tree.name[node]] && tree.start[node] >= matchedEnd) {
+                        matched += tree.value[node];
+                        matchedEnd = tree.start[node] + tree.value[node];
+                    }
+                }
+                draw();
+                return total() > 0 ? matched / total() : 0;
+            },
+
+            draw: draw,
+
+            tree: function () {
+                return tree;
+            }
+        };
+        return chart;
+    }
+
+    canvasFlamegraph.flatten = flatten;
+    canvasFlamegraph.flattenCompact = flattenCompact;
+    global.canvasFlamegraph = canvasFlamegraph;
+})(window);
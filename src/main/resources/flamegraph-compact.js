@@ -0,0 +1,59 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*
+ * Decoder of the compact flame graph format, requested with format=compact. The names are stored once in a
+ * table, and the nodes in breadth first order as [nameIndex, value, childCount], with the delta as fourth element
+ * in differential flame graphs. The children of every node follow the children of the nodes before it.
+ */
+(function (global) {
+    "use strict";
+
+    /**
+     * @return the URL of a flame graph in the compact format, with the parameters of the page
+     */
+    function compactFlameGraphUrl(file) {
+        var query = window.location.search ? window.location.search + "&" : "?";
+        return file + query + "format=compact";
+    }
+
+    /**
+     * Decodes the compact format into a tree of nodes with a name, a value and children, like data.json.
+     */
+    function decodeFlameGraph(compact) {
+        var names = compact.names;
+        var nodes = compact.nodes;
+        var decoded = new Array(nodes.length);
+        for (var i = 0; i < nodes.length; i++) {
+            var node = nodes[i];
+            decoded[i] = {name: names[node[0]], value: node[1], children: []};
+            if (node.length > 3) {
+                decoded[i].delta = node[3];
+            }
+        }
+        var child = 1;
+        for (var j = 0; j < nodes.length; j++) {
+            var children = decoded[j].children;
+            for (var end = child + nodes[j][2]; child < end; child++) {
+                children.push(decoded[child]);
+            }
+        }
+        return decoded[0];
+    }
+
+    global.compactFlameGraphUrl = compactFlameGraphUrl;
+    global.decodeFlameGraph = decodeFlameGraph;
+})(window);
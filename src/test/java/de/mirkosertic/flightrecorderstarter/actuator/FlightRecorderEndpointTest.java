@@ -24,9 +24,13 @@ import org.springframework.test.web.servlet.MockMvc;
 import tools.jackson.databind.ObjectMapper;
 
 import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
 
 import static org.hamcrest.Matchers.containsString;
 import static org.mockito.ArgumentMatchers.any;
@@ -134,6 +138,53 @@ class FlightRecorderEndpointTest {
 
     }
 
+    @Test
+    void givenActiveContinuousRecording_whenTryToDump_thenNewRecordingIdIsReturned() throws Exception {
+        //Given
+        given(this.mockFlightRecorder.isContinuousRecordingActive()).willReturn(true);
+        given(this.mockFlightRecorder.dumpContinuousRecording(any())).willReturn(5L);
+
+        //When
+        this.mockMvc.perform(post("/actuator/flightrecorder/dump")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"duration\": \"5\",\"timeUnit\":\"Minutes\"}"))
+                .andExpect(status().isCreated())
+                .andExpect(redirectedUrlPattern("**/actuator/flightrecorder/5"))
+                .andReturn();
+
+        //Then
+        then(this.mockFlightRecorder).should().dumpContinuousRecording(any());
+    }
+
+    @Test
+    void givenUnknownEventType_whenTryToStream_thenBadRequestIsReturned() throws Exception {
+        //Given
+        given(this.mockFlightRecorder.subscribe(any(), any())).willThrow(new IllegalArgumentException("Unknown event type jdk.Unknown"));
+
+        //When
+        this.mockMvc.perform(get("/actuator/flightrecorder/stream?events=jdk.Unknown").accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string(containsString("jdk.Unknown")))
+                .andReturn();
+
+        //Then
+        then(this.mockFlightRecorder).should().subscribe(Set.of("jdk.Unknown"), null);
+    }
+
+    @Test
+    void givenNoContinuousRecording_whenTryToDump_thenConflictIsReturned() throws Exception {
+        //Given
+        given(this.mockFlightRecorder.isContinuousRecordingActive()).willReturn(false);
+
+        //When
+        this.mockMvc.perform(post("/actuator/flightrecorder/dump"))
+                .andExpect(status().isConflict())
+                .andReturn();
+
+        //Then
+        then(this.mockFlightRecorder).should(never()).dumpContinuousRecording(any());
+    }
+
     @Test
     void givenCorrectRequest_whenTryToRetrieveAllRecordings_thenAllRecordingsAreReturned() throws Exception {
         //given two flightRecorderPublicSession
@@ -274,6 +325,24 @@ class FlightRecorderEndpointTest {
         then(this.mockFlightRecorder).should().stopRecording(anyLong());
     }
 
+    @Test
+    void givenRunningRecording_whenTryToDownloadSnapshot_thenSnapshotIsReturnedAndRecordingKeepsRunning() throws Exception {
+        //given
+        final Path snapshot = Files.createTempFile("snapshot", ".jfr");
+        Files.copy(Path.of(getClass().getResource("/recording.jfr").toURI()), snapshot, StandardCopyOption.REPLACE_EXISTING);
+        given(this.mockFlightRecorder.snapshotRecording(anyLong())).willReturn(snapshot.toFile());
+
+        //when
+        this.mockMvc.perform(get("/actuator/flightrecorder/1").param("snapshot", "true"))
+                .andExpect(content().contentType(MediaType.APPLICATION_OCTET_STREAM))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        //then
+        then(this.mockFlightRecorder).should().snapshotRecording(anyLong());
+        then(this.mockFlightRecorder).should(never()).stopRecording(anyLong());
+    }
+
     @Test
     void givenNoExistingRecordId_whenTryToDownloadRecording_thenNotFoundIsReturned() throws Exception {
         //given
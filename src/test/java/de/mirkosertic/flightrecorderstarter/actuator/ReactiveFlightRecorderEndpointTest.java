@@ -17,6 +17,7 @@ import org.springframework.boot.webflux.autoconfigure.WebFluxAutoConfiguration;
 import org.springframework.boot.webflux.test.autoconfigure.WebFluxTest;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.PropertySource;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.reactive.server.WebTestClient;
@@ -26,6 +27,7 @@ import java.io.File;
 import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
@@ -180,6 +182,73 @@ class ReactiveFlightRecorderEndpointTest {
 
     }
 
+    /**
+     * Given an active continuous recording when try to dump then the new recording id is returned.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    void givenActiveContinuousRecording_whenTryToDump_thenNewRecordingIdIsReturned() throws Exception {
+        // Given
+        given(this.mockFlightRecorder.isContinuousRecordingActive()).willReturn(true);
+        given(this.mockFlightRecorder.dumpContinuousRecording(any())).willReturn(5L);
+
+        // When
+        this.webTestClient.post()
+                .uri("/actuator/flightrecorder/dump")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"duration\": \"5\",\"timeUnit\":\"Minutes\"}")
+                .exchange()
+                .expectStatus()
+                .isCreated()
+                .expectHeader()
+                .value("Location", Matchers.endsWith("/actuator/flightrecorder/5"));
+
+        // Then
+        then(this.mockFlightRecorder).should().dumpContinuousRecording(any());
+    }
+
+    /**
+     * Given unknown event type when try to stream then bad request is returned.
+     */
+    @Test
+    void givenUnknownEventType_whenTryToStream_thenBadRequestIsReturned() {
+        // Given
+        given(this.mockFlightRecorder.subscribe(any(), any())).willThrow(new IllegalArgumentException("Unknown event type jdk.Unknown"));
+
+        // When
+        this.webTestClient.get()
+                .uri("/actuator/flightrecorder/stream?events=jdk.Unknown")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+
+        // Then
+        then(this.mockFlightRecorder).should().subscribe(Set.of("jdk.Unknown"), null);
+    }
+
+    /**
+     * Given no continuous recording when try to dump then conflict is returned.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    void givenNoContinuousRecording_whenTryToDump_thenConflictIsReturned() throws Exception {
+        // Given
+        given(this.mockFlightRecorder.isContinuousRecordingActive()).willReturn(false);
+
+        // When
+        this.webTestClient.post()
+                .uri("/actuator/flightrecorder/dump")
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.CONFLICT);
+
+        // Then
+        then(this.mockFlightRecorder).should(never()).dumpContinuousRecording(any());
+    }
+
     /**
      * Given correct request when try to retrieve all recordings then all recordings are returned.
      */
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.actuator.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ButterflyTest {
+
+    @Test
+    void givenRecording_whenButterflyOfMethodIsRequested_thenCallersAndCalleesAreAggregated()
+            throws URISyntaxException, IOException {
+        //Given
+        final FlameGraph graph = FlameGraph.from(new File(getClass().getResource("/recording.jfr").toURI()));
+
+        //When
+        final Butterfly butterfly = Butterfly.of(graph, "java.util.Random.nextDouble");
+
+        //Then
+        assertThat(butterfly.getMethod().getName()).isEqualTo("java.util.Random.nextDouble");
+        assertThat(butterfly.getMethod().getSelf()).isEqualTo(44);
+        assertThat(butterfly.getMethod().getTotal()).isEqualTo(518);
+        assertThat(butterfly.getCallers()).hasSize(1);
+        assertThat(butterfly.getCallers().get(0).getName()).isEqualTo("java.lang.Math.random");
+        assertThat(butterfly.getCallers().get(0).getTotal()).isEqualTo(518);
+        assertThat(butterfly.getCallees()).hasSize(1);
+        assertThat(butterfly.getCallees().get(0).getName()).isEqualTo("java.util.Random.next");
+        assertThat(butterfly.getCallees().get(0).getSelf()).isEqualTo(474);
+    }
+
+    @Test
+    void givenRecording_whenButterflyOfOutermostMethodIsRequested_thenItHasNoCallers()
+            throws URISyntaxException, IOException {
+        //Given
+        final FlameGraph graph = FlameGraph.from(new File(getClass().getResource("/recording.jfr").toURI()));
+
+        //When
+        final Butterfly butterfly = Butterfly.of(graph, "java.lang.Thread.run");
+
+        //Then
+        assertThat(butterfly.getMethod().getTotal()).isEqualTo(33);
+        assertThat(butterfly.getCallers()).isEmpty();
+        assertThat(butterfly.getCallees()).extracting(Butterfly.Entry::getTotal).containsExactly(31L, 2L);
+    }
+
+    @Test
+    void givenRecording_whenButterflyOfUnknownMethodIsRequested_thenNullIsReturned()
+            throws URISyntaxException, IOException {
+        //Given
+        final FlameGraph graph = FlameGraph.from(new File(getClass().getResource("/recording.jfr").toURI()));
+
+        //When/Then
+        assertThat(Butterfly.of(graph, "com.example.Unknown.method")).isNull();
+    }
+}
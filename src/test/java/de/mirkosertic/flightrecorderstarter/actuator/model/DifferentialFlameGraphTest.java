@@ -0,0 +1,60 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.actuator.model;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DifferentialFlameGraphTest {
+
+    private static FlameGraph graph;
+
+    @BeforeAll
+    static void parseRecording() throws Exception {
+        graph = FlameGraph.from(new File(DifferentialFlameGraphTest.class.getResource("/recording.jfr").toURI()), FlameGraph.ALL);
+    }
+
+    @Test
+    void givenBaselineWithTheSameProfileButMoreSamples_whenCompared_thenThereAreNoDeltas() {
+        //Given
+        final FrameTree doubled = new FrameTree();
+        doubled.addAll(graph.getTree(), FlameGraph.ALL, 2);
+
+        //When
+        final DifferentialFlameGraph diff = DifferentialFlameGraph.of(new FlameGraph(doubled), graph);
+
+        //Then
+        assertThat(diff.getTree()).isSameAs(graph.getTree());
+        for (int node = 0; node < diff.getTree().size(); node++) {
+            assertThat(diff.deltaOf(node)).isZero();
+        }
+    }
+
+    @Test
+    void givenEmptyBaseline_whenCompared_thenEveryCallPathIsNew() {
+        //When
+        final DifferentialFlameGraph diff = DifferentialFlameGraph.of(new FlameGraph(new FrameTree()), graph);
+
+        //Then
+        for (int node = 1; node < diff.getTree().size(); node++) {
+            assertThat(diff.deltaOf(node)).isEqualTo(diff.getTree().valueOf(node));
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.actuator.model;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FlameGraphAggregatorTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "org.springframework.", "de.mirkosertic."})
+    void givenExecutionSamplesOfARecording_whenAggregated_thenTheFlameGraphIsTheSameAsParsedFromTheFile(final String prefix)
+            throws URISyntaxException, IOException {
+        //Given
+        final File file = new File(getClass().getResource("/recording.jfr").toURI());
+        final FlameGraph.FrameFilter frameFilter = prefix.isEmpty() ? FlameGraph.ALL : new FlameGraph.PackageNamePrefixFrameFilter(prefix);
+
+        //When
+        final FlameGraphAggregator aggregator = new FlameGraphAggregator();
+        try (final RecordingFile recordingFile = new RecordingFile(file.toPath())) {
+            while (recordingFile.hasMoreEvents()) {
+                final RecordedEvent event = recordingFile.readEvent();
+                if ("jdk.ExecutionSample".equals(event.getEventType().getName())) {
+                    aggregator.add(event.getStackTrace());
+                }
+            }
+        }
+
+        //Then
+        assertThat(aggregator.getSampleCount()).isPositive();
+        assertThat(toMap(aggregator.toFlameGraph(frameFilter).getRoot()))
+                .isEqualTo(toMap(FlameGraph.from(file, frameFilter).getRoot()));
+    }
+
+    private static Map<String, Object> toMap(final FlameGraph.Node node) {
+        final Map<String, Object> children = new HashMap<>();
+        for (final FlameGraph.Node child : node.getChildren()) {
+            children.put(child.getName(), toMap(child));
+        }
+        return Map.of("value", node.getValue(), "children", children);
+    }
+}
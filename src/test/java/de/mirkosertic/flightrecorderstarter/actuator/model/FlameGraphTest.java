@@ -15,18 +15,334 @@
  */
 package de.mirkosertic.flightrecorderstarter.actuator.model;
 
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.jupiter.api.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.net.Socket;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.assertj.core.api.Assertions.assertThat;
 
 class FlameGraphTest {
 
+    private static final String SOCKET_READER = "socket-reader";
+
     @Test
     void parsing() throws URISyntaxException, IOException {
         final URL url = getClass().getResource("/recording.jfr");
         final FlameGraph g = FlameGraph.from(new File(url.toURI()));
     }
+
+    @Test
+    void givenRecordingWithSeveralChunks_whenParsedInParallel_thenTheResultIsTheSameAsParsedSequentially()
+            throws URISyntaxException, IOException {
+        //Given
+        final Path recording = Path.of(getClass().getResource("/recording.jfr").toURI());
+        final int singleChunks = RecordingChunks.of(recording).size();
+        final Path multiChunkRecording = Files.createTempFile("multichunk", ".jfr");
+        final byte[] data = Files.readAllBytes(recording);
+        try (final OutputStream out = Files.newOutputStream(multiChunkRecording)) {
+            for (int i = 0; i < 4; i++) {
+                out.write(data);
+            }
+        }
+        final ForkJoinPool sequential = new ForkJoinPool(1);
+        final ForkJoinPool parallel = new ForkJoinPool(4);
+
+        try {
+            //When
+            final FlameGraph single = FlameGraph.from(recording.toFile(), FlameGraph.ALL, sequential);
+            final FlameGraph sequentiallyParsed = FlameGraph.from(multiChunkRecording.toFile(), FlameGraph.ALL, sequential);
+            final FlameGraph parallelParsed = FlameGraph.from(multiChunkRecording.toFile(), FlameGraph.ALL, parallel);
+
+            //Then
+            assertThat(RecordingChunks.of(multiChunkRecording)).hasSize(4 * singleChunks);
+            assertThat(toMap(parallelParsed.getRoot())).isEqualTo(toMap(sequentiallyParsed.getRoot()));
+            assertThat(totalOf(parallelParsed.getRoot())).isEqualTo(4 * totalOf(single.getRoot()));
+        } finally {
+            sequential.shutdown();
+            parallel.shutdown();
+            Files.delete(multiChunkRecording);
+        }
+    }
+
+    @Test
+    void givenIncompleteRecording_whenSplitIntoChunks_thenNoChunksAreReturned() throws URISyntaxException, IOException {
+        //Given
+        final Path recording = Path.of(getClass().getResource("/recording.jfr").toURI());
+        final Path truncated = Files.createTempFile("truncated", ".jfr");
+        final byte[] data = Files.readAllBytes(recording);
+        Files.write(truncated, Arrays.copyOf(data, data.length - 100));
+
+        try {
+            //When/Then
+            assertThat(RecordingChunks.of(truncated)).isEmpty();
+        } finally {
+            Files.delete(truncated);
+        }
+    }
+
+    @Test
+    void givenRecordingInBasePath_whenChunkIsExtracted_thenTheChunkIsWrittenNextToTheRecording()
+            throws URISyntaxException, IOException {
+        //Given
+        final Path basePath = Files.createTempDirectory("jfr-base-path");
+        final Path recording = Files.copy(Path.of(getClass().getResource("/recording.jfr").toURI()),
+                basePath.resolve("recording.jfr"));
+        final RecordingChunks.Chunk chunk = RecordingChunks.of(recording).get(0);
+
+        //When
+        final Path extracted = RecordingChunks.extract(recording, chunk);
+
+        try {
+            //Then
+            assertThat(extracted.getParent()).isEqualTo(basePath);
+            assertThat(Files.size(extracted)).isEqualTo(chunk.size());
+        } finally {
+            Files.delete(extracted);
+            Files.delete(recording);
+            Files.delete(basePath);
+        }
+    }
+
+    @Test
+    void givenRecordingWithTlabEventsOnly_whenAllocationsAreParsed_thenTheyAreWeightedByBytes()
+            throws URISyntaxException, IOException {
+        //Given
+        final Path recording = Path.of(getClass().getResource("/recording.jfr").toURI());
+        long allocatedBytes = 0;
+        for (final RecordedEvent event : RecordingFile.readAllEvents(recording)) {
+            if (event.getStackTrace() == null) {
+                continue;
+            }
+            if (EventProfile.OBJECT_ALLOCATION_IN_NEW_TLAB.equals(event.getEventType().getName())) {
+                allocatedBytes += event.getLong("tlabSize");
+            } else if (EventProfile.OBJECT_ALLOCATION_OUTSIDE_TLAB.equals(event.getEventType().getName())) {
+                allocatedBytes += event.getLong("allocationSize");
+            }
+        }
+
+        //When
+        final FlameGraph withClasses = FlameGraph.from(recording.toFile(), EventProfile.allocations(true), FlameGraph.ALL);
+        final FlameGraph withoutClasses = FlameGraph.from(recording.toFile(), EventProfile.allocations(false), FlameGraph.ALL);
+
+        //Then
+        assertThat(allocatedBytes).isPositive();
+        assertThat(totalOf(withClasses.getRoot())).isEqualTo(allocatedBytes);
+        assertThat(totalOf(withoutClasses.getRoot())).isEqualTo(allocatedBytes);
+        assertThat(leafNamesOf(withClasses.getRoot())).contains("byte[]");
+        assertThat(leafNamesOf(withoutClasses.getRoot())).doesNotContain("byte[]");
+    }
+
+    @Test
+    void givenAllocatedClassesOutsideOfTheApplication_whenAllocationsAreFiltered_thenTheClassesAreKept()
+            throws URISyntaxException, IOException {
+        //Given
+        final File recording = new File(getClass().getResource("/recording.jfr").toURI());
+
+        //When
+        final FlameGraph graph = FlameGraph.from(recording, EventProfile.allocations(true),
+                new FlameGraph.PackageNamePrefixFrameFilter("de.mirkosertic."));
+
+        //Then
+        assertThat(leafNamesOf(graph.getRoot())).contains("byte[]", "java.util.ArrayList");
+    }
+
+    @Test
+    void givenRecordingWithMonitorAndParkEvents_whenLocksAreParsed_thenTheyAreWeightedByDuration()
+            throws URISyntaxException, IOException {
+        //Given
+        final Path recording = Path.of(getClass().getResource("/recording.jfr").toURI());
+        long blockedNanos = 0;
+        for (final RecordedEvent event : RecordingFile.readAllEvents(recording)) {
+            if (event.getStackTrace() != null && EventProfile.locks(true).getEventTypes().contains(event.getEventType().getName())) {
+                blockedNanos += event.getDuration().toNanos();
+            }
+        }
+
+        //When
+        final FlameGraph graph = FlameGraph.from(recording.toFile(), EventProfile.locks(true), FlameGraph.ALL);
+
+        //Then
+        assertThat(blockedNanos).isGreaterThan(Integer.MAX_VALUE);
+        assertThat(totalOf(graph.getRoot())).isEqualTo(blockedNanos);
+        assertThat(leafNamesOf(graph.getRoot())).contains("java.lang.Object",
+                "java.util.concurrent.locks.AbstractQueuedSynchronizer$ConditionObject");
+    }
+
+    @Test
+    void givenRecordingWithExecutionAndNativeSamples_whenWallClockIsParsed_thenSamplesWeighTheirPeriod()
+            throws URISyntaxException, IOException {
+        //Given
+        final Path recording = Path.of(getClass().getResource("/recording.jfr").toURI());
+        long executionSamples = 0;
+        long nativeSamples = 0;
+        for (final RecordedEvent event : RecordingFile.readAllEvents(recording)) {
+            if (event.getStackTrace() != null && EventProfile.EXECUTION_SAMPLE.equals(event.getEventType().getName())) {
+                executionSamples++;
+            } else if (event.getStackTrace() != null && EventProfile.NATIVE_METHOD_SAMPLE.equals(event.getEventType().getName())) {
+                nativeSamples++;
+            }
+        }
+
+        //When
+        final FlameGraph graph = FlameGraph.from(recording.toFile(), EventProfile.WALL_CLOCK, FlameGraph.ALL);
+
+        //Then the recording was made with the profile settings, 10 ms for Java code and 20 ms for native methods
+        assertThat(totalOf(graph.getRoot())).isEqualTo(executionSamples * 10_000_000L + nativeSamples * 20_000_000L);
+    }
+
+    @Test
+    void givenThreadReadingFromASocket_whenWallClockIsParsed_thenItsTotalIsNotAboveItsElapsedTime()
+            throws IOException, InterruptedException {
+        //Given
+        final Path recording = Files.createTempFile("wall", ".jfr");
+        try {
+            final long elapsedNanos = recordSocketReads(recording, true);
+
+            //When
+            final FlameGraph graph = FlameGraph.from(recording.toFile(),
+                    EventProfile.WALL_CLOCK.withThreads(ThreadGrouping.of(null, SOCKET_READER)), FlameGraph.ALL);
+
+            //Then the socket reads are only counted by the native method samples, which may be off by one period
+            assertThat(totalOf(graph.getRoot())).isBetween(elapsedNanos / 2, elapsedNanos + 20_000_000L);
+        } finally {
+            Files.delete(recording);
+        }
+    }
+
+    @Test
+    void givenRecordingWithoutNativeSamples_whenWallClockIsParsed_thenSocketReadsWeighTheirDuration()
+            throws IOException, InterruptedException {
+        //Given
+        final Path recording = Files.createTempFile("wall", ".jfr");
+        try {
+            recordSocketReads(recording, false);
+            long readNanos = 0;
+            for (final RecordedEvent event : RecordingFile.readAllEvents(recording)) {
+                if (EventProfile.SOCKET_READ.equals(event.getEventType().getName())
+                        && SOCKET_READER.equals(event.getThread().getJavaName())) {
+                    readNanos += event.getDuration().toNanos();
+                }
+            }
+
+            //When
+            final FlameGraph graph = FlameGraph.from(recording.toFile(),
+                    EventProfile.WALL_CLOCK.withThreads(ThreadGrouping.of(null, SOCKET_READER)), FlameGraph.ALL);
+
+            //Then the thread hardly runs Java code, which would add execution samples
+            assertThat(readNanos).isPositive();
+            assertThat(totalOf(graph.getRoot())).isBetween(readNanos, readNanos + 100_000_000L);
+        } finally {
+            Files.delete(recording);
+        }
+    }
+
+    @Test
+    void givenPeriodSettings_whenParsed_thenNanosecondsAreReturned() {
+        assertThat(EventProfile.periodNanosOf("20 ms")).isEqualTo(20_000_000L);
+        assertThat(EventProfile.periodNanosOf("1 s")).isEqualTo(1_000_000_000L);
+        assertThat(EventProfile.periodNanosOf("everyChunk")).isEqualTo(-1);
+        assertThat(EventProfile.periodNanosOf("0 ms")).isEqualTo(-1);
+    }
+
+    @Test
+    void givenBinaryArrayClassNames_whenConverted_thenSourceNamesAreReturned() {
+        assertThat(EventProfile.typeNameOf("[B")).isEqualTo("byte[]");
+        assertThat(EventProfile.typeNameOf("[[Ljava.lang.String;")).isEqualTo("java.lang.String[][]");
+        assertThat(EventProfile.typeNameOf("java.lang.String")).isEqualTo("java.lang.String");
+    }
+
+    private static Set<String> leafNamesOf(final FlameGraph.Node node) {
+        final Set<String> names = new HashSet<>();
+        if (node.getChildren().isEmpty()) {
+            names.add(node.getName());
+        }
+        for (final FlameGraph.Node child : node.getChildren()) {
+            names.addAll(leafNamesOf(child));
+        }
+        return names;
+    }
+
+    /**
+     * Records a thread reading ten bytes from a socket, which are written every 100 ms.
+     *
+     * @return the elapsed time of the reading thread
+     */
+    private static long recordSocketReads(final Path file, final boolean nativeMethodSamples)
+            throws IOException, InterruptedException {
+        try (final Recording recording = new Recording(); final ServerSocket server = new ServerSocket(0)) {
+            recording.enable(EventProfile.EXECUTION_SAMPLE).withPeriod(Duration.ofMillis(10));
+            if (nativeMethodSamples) {
+                recording.enable(EventProfile.NATIVE_METHOD_SAMPLE).withPeriod(Duration.ofMillis(20));
+            }
+            recording.enable(EventProfile.SOCKET_READ).withoutThreshold().withStackTrace();
+            recording.start();
+            final Thread writer = Thread.ofPlatform().start(() -> {
+                try (final Socket socket = server.accept(); final OutputStream out = socket.getOutputStream()) {
+                    for (int i = 0; i < 10; i++) {
+                        Thread.sleep(100);
+                        out.write(i);
+                        out.flush();
+                    }
+                } catch (final IOException e) {
+                    throw new UncheckedIOException(e);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            final long[] elapsedNanos = new long[1];
+            final Thread reader = Thread.ofPlatform().name(SOCKET_READER).start(() -> {
+                final long start = System.nanoTime();
+                try (final Socket socket = new Socket(server.getInetAddress(), server.getLocalPort());
+                     final InputStream in = socket.getInputStream()) {
+                    while (in.read() >= 0) {
+                        // Blocks until the next byte is written
+                    }
+                } catch (final IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                elapsedNanos[0] = System.nanoTime() - start;
+            });
+            reader.join();
+            writer.join();
+            recording.stop();
+            recording.dump(file);
+            return elapsedNanos[0];
+        }
+    }
+
+    private static long totalOf(final FlameGraph.Node node) {
+        long total = 0;
+        for (final FlameGraph.Node child : node.getChildren()) {
+            total += child.getValue();
+        }
+        return total;
+    }
+
+    private static Map<String, Object> toMap(final FlameGraph.Node node) {
+        final Map<String, Object> children = new HashMap<>();
+        for (final FlameGraph.Node child : node.getChildren()) {
+            children.put(child.getName(), toMap(child));
+        }
+        return Map.of("value", node.getValue(), "children", children);
+    }
 }
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.actuator.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FrameTransformationTest {
+
+    @Test
+    void givenBuiltInTransformers_whenFramesAreTransformed_thenGeneratedFramesAreCollapsedOrRenamed() {
+        //Given
+        final FrameTransformation transformation = FrameTransformation.of(List.of(
+                FrameTransformation.COLLAPSE_PROXIES, FrameTransformation.COLLAPSE_REFLECTION,
+                FrameTransformation.NORMALIZE_LAMBDAS));
+
+        //When/Then
+        assertThat(transformation.transform(new FrameTransformation.Frame(
+                "com.example.Service$$SpringCGLIB$$0", "handle"))).isNull();
+        assertThat(transformation.transform(new FrameTransformation.Frame("jdk.proxy2.$Proxy42", "handle"))).isNull();
+        assertThat(transformation.transform(new FrameTransformation.Frame(
+                "jdk.internal.reflect.DirectMethodHandleAccessor", "invoke"))).isNull();
+        assertThat(transformation.transform(new FrameTransformation.Frame("java.lang.reflect.Method", "invoke")))
+                .isNull();
+        assertThat(transformation.transform(new FrameTransformation.Frame(
+                "com.example.Service$$Lambda/0x0000000800c4f040", "apply")))
+                .isEqualTo(new FrameTransformation.Frame("com.example.Service$$Lambda", "apply"));
+        assertThat(transformation.transform(new FrameTransformation.Frame("com.example.Service", "handle")))
+                .isEqualTo(new FrameTransformation.Frame("com.example.Service", "handle"));
+        assertThat(transformation.isFoldRecursion()).isFalse();
+    }
+
+    @Test
+    void givenUnknownTransformer_whenCreated_thenFails() {
+        //When/Then
+        assertThatThrownBy(() -> FrameTransformation.of(List.of("collapse-everything")))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(FrameTransformation.of(List.of())).isSameAs(FrameTransformation.NONE);
+    }
+
+    @Test
+    void givenRecording_whenParsedWithTransformation_thenFramesAreTransformedAndTheTotalIsKept() throws URISyntaxException, IOException {
+        //Given
+        final File file = new File(getClass().getResource("/recording.jfr").toURI());
+        final FrameTree original = FlameGraph.from(file).getTree();
+
+        //When
+        final FrameTree transformed = FlameGraph.from(file, EventProfile.EXECUTION_SAMPLES, FlameGraph.ALL,
+                FrameTransformation.of(List.of(FrameTransformation.COLLAPSE_REFLECTION,
+                        FrameTransformation.NORMALIZE_LAMBDAS, FrameTransformation.FOLD_RECURSION))).getTree();
+
+        //Then
+        assertThat(transformed.totalValue()).isEqualTo(original.totalValue()).isEqualTo(668);
+        assertThat(transformed.size()).isLessThan(original.size());
+        assertThat(original.nodeOf(List.of("jdk.internal.reflect.NativeMethodAccessorImpl.invoke0")))
+                .isNotEqualTo(FrameTree.NONE);
+        boolean normalizedLambda = false;
+        for (int node = 1; node < transformed.size(); node++) {
+            assertThat(transformed.classNameOf(node)).doesNotStartWith("jdk.internal.reflect.").doesNotContain("$$Lambda$");
+            normalizedLambda |= transformed.nameOf(node).equals("jdk.jfr.internal.PlatformRecorder$$Lambda.run");
+        }
+        assertThat(normalizedLambda).isTrue();
+        assertNoDirectRecursion(transformed, FrameTree.ROOT);
+    }
+
+    private static void assertNoDirectRecursion(final FrameTree tree, final int node) {
+        for (int child = tree.firstChildOf(node); child != FrameTree.NONE; child = tree.nextSiblingOf(child)) {
+            if (node != FrameTree.ROOT) {
+                assertThat(tree.nameOf(child)).isNotEqualTo(tree.nameOf(node));
+            }
+            assertNoDirectRecursion(tree, child);
+        }
+    }
+}
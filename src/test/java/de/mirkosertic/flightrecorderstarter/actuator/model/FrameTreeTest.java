@@ -0,0 +1,184 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.actuator.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FrameTreeTest {
+
+    @Test
+    void givenManyChildren_whenTheHashTableGrows_thenExistingChildrenAreStillFound() {
+        //Given
+        final FrameTree tree = new FrameTree();
+        final int[] children = new int[10_000];
+        for (int i = 0; i < children.length; i++) {
+            children[i] = tree.child(FrameTree.ROOT, i);
+        }
+        final int grandChild = tree.child(children[42], 7);
+
+        //When/Then
+        for (int i = 0; i < children.length; i++) {
+            assertThat(tree.child(FrameTree.ROOT, i)).isEqualTo(children[i]);
+        }
+        assertThat(tree.child(children[42], 7)).isEqualTo(grandChild);
+        assertThat(tree.size()).isEqualTo(children.length + 2);
+
+        int count = 0;
+        for (int child = tree.firstChildOf(FrameTree.ROOT); child != FrameTree.NONE; child = tree.nextSiblingOf(child)) {
+            count++;
+        }
+        assertThat(count).isEqualTo(children.length);
+    }
+
+    @Test
+    void givenRecording_whenParsed_thenNodesAreMaterializedOnlyForTheJsonView() throws URISyntaxException, IOException {
+        //Given
+        final File file = new File(getClass().getResource("/recording.jfr").toURI());
+
+        //When
+        final FlameGraph graph = FlameGraph.from(file);
+
+        //Then
+        assertThat(countNodes(graph.getRoot())).isEqualTo(graph.getTree().size());
+        assertThat(graph.getRoot().getName()).isEqualTo("Recording");
+        assertThat(graph.getRoot()).isSameAs(graph.getRoot());
+    }
+
+    @Test
+    void givenRecording_whenParsed_thenChildrenAreSortedByValue() throws URISyntaxException, IOException {
+        //Given
+        final File file = new File(getClass().getResource("/recording.jfr").toURI());
+
+        //When
+        final FrameTree tree = FlameGraph.from(file).getTree();
+
+        //Then
+        int children = 0;
+        for (int node = 0; node < tree.size(); node++) {
+            long previousValue = 0;
+            for (int child = tree.firstChildOf(node); child != FrameTree.NONE; child = tree.nextSiblingOf(child)) {
+                assertThat(tree.valueOf(child)).isGreaterThanOrEqualTo(previousValue);
+                previousValue = tree.valueOf(child);
+                children++;
+            }
+        }
+        assertThat(children).isEqualTo(tree.size() - 1);
+    }
+
+    @Test
+    void givenRecording_whenPrunedToMaxNodes_thenTheLargestNodesAreKeptAndTheRestIsCollapsed()
+            throws URISyntaxException, IOException {
+        //Given
+        final FrameTree tree = FlameGraph.from(new File(getClass().getResource("/recording.jfr").toURI())).getTree();
+
+        //When
+        final FrameTree pruned = new Pruning(0, 0, 10).apply(new FlameGraph(tree)).getTree();
+
+        //Then
+        int copied = 0;
+        for (int node = 1; node < pruned.size(); node++) {
+            if (!FrameTree.OTHER.equals(pruned.nameOf(node))) {
+                copied++;
+            }
+        }
+        assertThat(copied).isEqualTo(10);
+        assertThat(pruned.totalValue()).isEqualTo(tree.totalValue());
+        assertThat(pruned.size()).isLessThan(tree.size());
+    }
+
+    @Test
+    void givenRecording_whenPrunedByShareAndDepth_thenNoSmallerOrDeeperNodesAreLeft()
+            throws URISyntaxException, IOException {
+        //Given
+        final FrameTree tree = FlameGraph.from(new File(getClass().getResource("/recording.jfr").toURI())).getTree();
+        final long minValue = (long) Math.ceil(tree.totalValue() * 0.05);
+
+        //When
+        final FrameTree pruned = new Pruning(5, 4, 0).apply(new FlameGraph(tree)).getTree();
+
+        //Then
+        assertThat(pruned.totalValue()).isEqualTo(tree.totalValue());
+        assertThat(maxDepthOf(pruned, FrameTree.ROOT)).isLessThanOrEqualTo(4);
+        for (int node = 1; node < pruned.size(); node++) {
+            if (!FrameTree.OTHER.equals(pruned.nameOf(node))) {
+                assertThat(pruned.valueOf(node)).isGreaterThanOrEqualTo(minValue);
+            }
+        }
+    }
+
+    @Test
+    void givenRecording_whenNodeOfCallPathIsRequested_thenItIsFoundByTheFrameNames()
+            throws URISyntaxException, IOException {
+        //Given
+        final FrameTree tree = FlameGraph.from(new File(getClass().getResource("/recording.jfr").toURI()),
+                EventProfile.EXECUTION_SAMPLES, FlameGraph.ALL).getTree();
+
+        //When
+        final int node = tree.nodeOf(List.of("java.lang.Thread.run", "org.apache.tomcat.util.net.NioEndpoint$Poller.run"));
+
+        //Then
+        assertThat(node).isNotEqualTo(FrameTree.NONE);
+        assertThat(tree.nameOf(node)).isEqualTo("org.apache.tomcat.util.net.NioEndpoint$Poller.run");
+        assertThat(tree.nodeOf(List.of())).isEqualTo(FrameTree.ROOT);
+        assertThat(tree.nodeOf(List.of("java.lang.Thread.run", "java.lang.Thread.run"))).isEqualTo(FrameTree.NONE);
+    }
+
+    @Test
+    void givenRecording_whenInverted_thenTheLeafMethodsAreAtTheRootFollowedByTheirCallers()
+            throws URISyntaxException, IOException {
+        //Given
+        final FlameGraph graph = FlameGraph.from(new File(getClass().getResource("/recording.jfr").toURI()),
+                EventProfile.EXECUTION_SAMPLES, FlameGraph.ALL);
+
+        //When
+        final FrameTree inverted = graph.inverted().getTree();
+
+        //Then
+        assertThat(inverted.totalValue()).isEqualTo(graph.getTree().totalValue());
+        final int next = inverted.nodeOf(List.of("java.util.Random.next"));
+        assertThat(inverted.valueOf(next)).isEqualTo(474);
+        assertThat(inverted.nameOf(inverted.firstChildOf(next))).isEqualTo("java.util.Random.nextDouble");
+        assertThat(inverted.nodeOf(List.of("java.lang.Thread.run"))).isEqualTo(FrameTree.NONE);
+        long selfValues = 0;
+        for (int node = 1; node < inverted.size(); node++) {
+            selfValues += inverted.selfValueOf(node);
+        }
+        assertThat(selfValues).isEqualTo(inverted.totalValue());
+    }
+
+    private static int maxDepthOf(final FrameTree tree, final int node) {
+        int depth = 0;
+        for (int child = tree.firstChildOf(node); child != FrameTree.NONE; child = tree.nextSiblingOf(child)) {
+            depth = Math.max(depth, 1 + maxDepthOf(tree, child));
+        }
+        return depth;
+    }
+
+    private static int countNodes(final FlameGraph.Node node) {
+        int count = 1;
+        for (final FlameGraph.Node child : node.getChildren()) {
+            count += countNodes(child);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.actuator.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class HotMethodsTest {
+
+    @Test
+    void givenRecording_whenHotMethodsAreSortedBySelfValue_thenTheLeafMethodsComeFirst()
+            throws URISyntaxException, IOException {
+        //Given
+        final FlameGraph graph = FlameGraph.from(new File(getClass().getResource("/recording.jfr").toURI()));
+
+        //When
+        final HotMethods hotMethods = HotMethods.of(graph, false, 3);
+
+        //Then
+        assertThat(hotMethods.getTotal()).isEqualTo(668);
+        assertThat(hotMethods.getMethods()).extracting(HotMethods.Method::getName).containsExactly(
+                "java.util.Random.next",
+                "de.mirkosertic.flightrecorderstarter.FlightRecorderEndpoint.doUselessStuff",
+                "java.util.Random.nextDouble");
+        final HotMethods.Method nextDouble = hotMethods.getMethods().get(2);
+        assertThat(nextDouble.getSelf()).isEqualTo(44);
+        assertThat(nextDouble.getTotal()).isEqualTo(518);
+        assertThat(nextDouble.getTotalPercent()).isCloseTo(100.0 * 518 / 668, within(0.001));
+    }
+
+    @Test
+    void givenRecording_whenHotMethodsAreSortedByTotalValue_thenTheCallersComeFirst()
+            throws URISyntaxException, IOException {
+        //Given
+        final FlameGraph graph = FlameGraph.from(new File(getClass().getResource("/recording.jfr").toURI()));
+
+        //When
+        final HotMethods hotMethods = HotMethods.of(graph, true, 10);
+
+        //Then
+        assertThat(hotMethods.getMethods().get(0).getName())
+                .isEqualTo("de.mirkosertic.flightrecorderstarter.FlightRecorderEndpoint.doUselessStuff");
+        assertThat(hotMethods.getMethods()).extracting(HotMethods.Method::getTotal)
+                .isSortedAccordingTo((a, b) -> Long.compare(b, a));
+    }
+
+    @Test
+    void givenRecordingParsedWithLineNumbers_whenHotMethodsAreComputed_thenEveryLineIsListedOnItsOwn()
+            throws URISyntaxException, IOException {
+        //Given
+        final FlameGraph graph = FlameGraph.from(new File(getClass().getResource("/recording.jfr").toURI()),
+                EventProfile.EXECUTION_SAMPLES.withLineNumbers(), FlameGraph.ALL);
+
+        //When
+        final HotMethods hotMethods = HotMethods.of(graph, false, 4);
+
+        //Then
+        assertThat(hotMethods.getTotal()).isEqualTo(668);
+        assertThat(hotMethods.getMethods()).extracting(HotMethods.Method::getName).containsExactly(
+                "java.util.Random.next:204",
+                "de.mirkosertic.flightrecorderstarter.FlightRecorderEndpoint.doUselessStuff:70",
+                "java.util.Random.nextDouble:532",
+                "java.util.Random.next:202");
+        assertThat(hotMethods.getMethods()).extracting(HotMethods.Method::getSelf).containsExactly(436L, 115L, 44L, 37L);
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.actuator.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MonitorContentionTest {
+
+    @Test
+    void givenRecordingWithMonitorAndParkEvents_whenContentionIsSummedUp_thenLongestBlockedClassesComeFirst()
+            throws URISyntaxException, IOException {
+        //Given
+        final File recording = new File(getClass().getResource("/recording.jfr").toURI());
+
+        //When
+        final List<MonitorContention> all = MonitorContention.from(recording, 10);
+        final List<MonitorContention> top = MonitorContention.from(recording, 1);
+
+        //Then
+        assertThat(all).extracting(MonitorContention::getMonitorClass).containsExactly(
+                "java.util.concurrent.locks.AbstractQueuedSynchronizer$ConditionObject", "java.lang.Object");
+        assertThat(all.get(1).getEventCount()).isEqualTo(311);
+        assertThat(all.get(1).getMaxDurationNanos()).isLessThanOrEqualTo(all.get(1).getTotalDurationNanos());
+        assertThat(top).hasSize(1);
+        assertThat(top.get(0).getTotalDurationNanos()).isEqualTo(all.get(0).getTotalDurationNanos());
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.actuator.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PrefixFrameFilterTest {
+
+    @Test
+    void givenIncludesAndExcludes_whenClassesAreMatched_thenTheLongestPrefixDecides() {
+        //Given
+        final PrefixFrameFilter filter = new PrefixFrameFilter(List.of("com.example.", "org.acme."),
+                List.of("com.example.generated.", "org.acme.internal.Proxy"));
+
+        //When/Then
+        assertThat(filter.includes("com.example.Service")).isTrue();
+        assertThat(filter.includes("com.example.generated.Mapper")).isFalse();
+        assertThat(filter.includes("org.acme.Repository")).isTrue();
+        assertThat(filter.includes("org.acme.internal.Proxy$1")).isFalse();
+        assertThat(filter.includes("org.acme.internal.Helper")).isTrue();
+        assertThat(filter.includes("com.exam")).isFalse();
+        assertThat(filter.includes("java.lang.Thread")).isFalse();
+    }
+
+    @Test
+    void givenOnlyExcludes_whenClassesAreMatched_thenAllOtherClassesAreIncluded() {
+        //Given
+        final PrefixFrameFilter filter = new PrefixFrameFilter(List.of(), List.of("java.", "jdk.internal."));
+
+        //When/Then
+        assertThat(filter.includes("com.example.Service")).isTrue();
+        assertThat(filter.includes("java.lang.Thread")).isFalse();
+        assertThat(filter.includes("jdk.internal.reflect.DirectMethodHandleAccessor")).isFalse();
+        assertThat(filter.includes("jdk.jfr.Recording")).isTrue();
+    }
+
+    @Test
+    void givenSpringCglibProxiesOfIncludedClasses_whenClassesAreMatched_thenTheProxiesAreExcluded() {
+        //Given
+        final PrefixFrameFilter filter = new PrefixFrameFilter(List.of("com.example."), List.of());
+        final PrefixFrameFilter excludesOnly = new PrefixFrameFilter(List.of(), List.of("java."));
+
+        //When/Then
+        assertThat(filter.includes("com.example.Service")).isTrue();
+        assertThat(filter.includes("com.example.Service$$EnhancerBySpringCGLIB$$4a5b6c")).isFalse();
+        assertThat(filter.includes("com.example.Service$$FastClassBySpringCGLIB$$4a5b6c")).isFalse();
+        assertThat(filter.includes("com.example.Service$$SpringCGLIB$$0")).isFalse();
+        assertThat(filter.includes("com.example.Service$$Lambda/0x0000000801001234")).isTrue();
+        assertThat(excludesOnly.includes("com.example.Service$$SpringCGLIB$$0")).isFalse();
+    }
+
+    @Test
+    void givenFilter_whenExtended_thenTheOriginalIsUnchangedAndEqualFiltersAreEqual() {
+        //Given
+        final PrefixFrameFilter filter = new PrefixFrameFilter(List.of("com.example."), List.of());
+
+        //When
+        final PrefixFrameFilter extended = filter.exclude("com.example.generated.").include("org.acme.");
+
+        //Then
+        assertThat(filter.includes("com.example.generated.Mapper")).isTrue();
+        assertThat(extended.includes("com.example.generated.Mapper")).isFalse();
+        assertThat(extended.includes("org.acme.Repository")).isTrue();
+        assertThat(extended).isEqualTo(new PrefixFrameFilter(List.of("org.acme.", "com.example."),
+                List.of("com.example.generated.")));
+        assertThat(extended.hashCode()).isEqualTo(new PrefixFrameFilter(List.of("org.acme.", "com.example."),
+                List.of("com.example.generated.")).hashCode());
+        assertThat(extended).isNotEqualTo(filter);
+    }
+
+    @Test
+    void givenRecording_whenParsedWithPrefixFilter_thenOnlyIncludedFramesAreKept() throws URISyntaxException, IOException {
+        //Given
+        final File file = new File(getClass().getResource("/recording.jfr").toURI());
+        final PrefixFrameFilter filter = new PrefixFrameFilter(List.of("java.util."), List.of("java.util.concurrent."));
+
+        //When
+        final FrameTree tree = FlameGraph.from(file, filter).getTree();
+
+        //Then
+        for (int node = 1; node < tree.size(); node++) {
+            assertThat(tree.classNameOf(node)).startsWith("java.util.").doesNotStartWith("java.util.concurrent.");
+        }
+        assertThat(tree.nodeOf(List.of("java.util.Random.nextDouble", "java.util.Random.next"))).isNotEqualTo(FrameTree.NONE);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.actuator.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RecordingAnalysisTest {
+
+    @Test
+    void givenSeveralAnalyzers_whenRecordingIsAnalyzed_thenOnePassGivesTheSameResultsAsAPassPerAnalyzer()
+            throws URISyntaxException, IOException {
+        //Given
+        final File recording = new File(getClass().getResource("/recording.jfr").toURI());
+        final RecordingAnalysis analysis = new RecordingAnalysis(recording.toPath());
+        final FlameGraph.ProfileTrees cpu = analysis.add(FlameGraph.analyzerOf(EventProfile.EXECUTION_SAMPLES,
+                FlameGraph.ALL, FrameTransformation.NONE, TimeWindow.ALL));
+        final FlameGraph.ProfileTrees allocations = analysis.add(FlameGraph.analyzerOf(EventProfile.allocations(true),
+                FlameGraph.ALL, FrameTransformation.NONE, TimeWindow.ALL));
+        final RecordingSummary summary = analysis.add(new RecordingSummary(RecordingSummary.PROFILED_EVENT_TYPES));
+
+        //When
+        analysis.run();
+
+        //Then
+        assertThat(cpu.toFlameGraph().getTree().totalValue()).isEqualTo(668);
+        assertThat(allocations.toFlameGraph().getTree().totalValue()).isEqualTo(
+                FlameGraph.from(recording, EventProfile.allocations(true), FlameGraph.ALL).getTree().totalValue());
+        assertThat(summary.getEvents()).extracting(RecordingSummary.EventTypeSummary::getName)
+                .startsWith("jdk.ExecutionSample", "jdk.NativeMethodSample", "jdk.JavaMonitorWait");
+        assertThat(summary.getEvents().get(2).getEventCount()).isEqualTo(311);
+        assertThat(summary.getThreadCount()).isEqualTo(11);
+    }
+
+    @Test
+    void givenFailingAnalyzerOrIncompleteRecording_whenRecordingIsAnalyzed_thenTheFailureIsThrown()
+            throws URISyntaxException, IOException {
+        //Given
+        final Path recording = Path.of(getClass().getResource("/recording.jfr").toURI());
+        final Path incompleteRecording = Files.createTempFile("incomplete", ".jfr");
+        final byte[] data = Files.readAllBytes(recording);
+        Files.write(incompleteRecording, Arrays.copyOf(data, data.length / 2));
+
+        try {
+            //When
+            final RecordingAnalysis failing = new RecordingAnalysis(recording);
+            failing.add(FlameGraph.analyzerOf(EventProfile.EXECUTION_SAMPLES, className -> {
+                throw new IllegalStateException("filter failed");
+            }, FrameTransformation.NONE, TimeWindow.ALL));
+            final RecordingAnalysis incomplete = new RecordingAnalysis(incompleteRecording);
+
+            //Then
+            assertThatThrownBy(failing::run).isInstanceOf(IllegalStateException.class).hasMessage("filter failed");
+            assertThatThrownBy(incomplete::run).isInstanceOf(IOException.class);
+        } finally {
+            Files.delete(incompleteRecording);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.actuator.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ThreadGroupingTest {
+
+    @Test
+    void givenPoolLevel_whenFlameGraphIsCreated_thenTheThreadsOfAPoolShareOneFrame() throws URISyntaxException, IOException {
+        //Given
+        final File recording = new File(getClass().getResource("/recording.jfr").toURI());
+        final EventProfile profile = EventProfile.EXECUTION_SAMPLES.withThreads(ThreadGrouping.of("pool", null));
+
+        //When
+        final FrameTree tree = FlameGraph.from(recording, profile, FlameGraph.ALL).getTree();
+
+        //Then
+        assertThat(profile.getName()).isEqualTo("cpu-by-pool");
+        assertThat(tree.totalValue()).isEqualTo(668);
+        assertThat(topLevelOf(tree)).containsEntry("[http-nio-8080-exec-*]", 633L)
+                .containsEntry("[JFR Periodic Tasks]", 31L)
+                .hasSize(4);
+    }
+
+    @Test
+    void givenThreadFilter_whenFlameGraphIsCreated_thenOnlyTheMatchingThreadsAreCounted() throws URISyntaxException, IOException {
+        //Given
+        final File recording = new File(getClass().getResource("/recording.jfr").toURI());
+
+        //When
+        final FrameTree filtered = FlameGraph.from(recording,
+                EventProfile.EXECUTION_SAMPLES.withThreads(ThreadGrouping.of(null, "exec")), FlameGraph.ALL).getTree();
+        final FrameTree grouped = FlameGraph.from(recording,
+                EventProfile.EXECUTION_SAMPLES.withThreads(ThreadGrouping.of("thread", "Poller")), FlameGraph.ALL).getTree();
+
+        //Then
+        assertThat(filtered.totalValue()).isEqualTo(633);
+        assertThat(topLevelOf(filtered)).doesNotContainKey("[http-nio-8080-exec-1]");
+        assertThat(topLevelOf(grouped)).containsOnlyKeys("[http-nio-8080-BlockPoller]", "[http-nio-8080-ClientPoller]");
+        assertThatThrownBy(() -> ThreadGrouping.of("process", null)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void givenFilterWithWildcards_whenMatched_thenTheyStandForAnyAndSingleCharacters() {
+        assertThat(ThreadGrouping.contains("http-nio-8080-exec-12", "exec-?")).isTrue();
+        assertThat(ThreadGrouping.contains("http-nio-8080-exec-12", "http-*-exec")).isTrue();
+        assertThat(ThreadGrouping.contains("http-nio-8080-exec-12", "nio-*-poller")).isFalse();
+        assertThat(ThreadGrouping.contains("worker-[1]", "[1]")).isTrue();
+        assertThat(ThreadGrouping.contains("worker-1", "(a+)+$")).isFalse();
+        assertThatThrownBy(() -> ThreadGrouping.of(null, "*".repeat(ThreadGrouping.MAX_FILTER_LENGTH + 1)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static Map<String, Long> topLevelOf(final FrameTree tree) {
+        final Map<String, Long> values = new LinkedHashMap<>();
+        for (int child = tree.firstChildOf(FrameTree.ROOT); child != FrameTree.NONE; child = tree.nextSiblingOf(child)) {
+            values.put(tree.nameOf(child), tree.valueOf(child));
+        }
+        return values;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.actuator.model;
+
+import jdk.jfr.Recording;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TimelineTest {
+
+    @Test
+    void givenRecording_whenTimelineIsCreated_thenTheEventsOfEverySecondAreCounted() throws URISyntaxException, IOException {
+        //Given
+        final RecordingIndex index = RecordingIndex.of(new File(getClass().getResource("/recording.jfr").toURI()));
+
+        //When
+        final Timeline timeline = Timeline.of(index, EventProfile.EXECUTION_SAMPLES);
+
+        //Then
+        assertThat(index.getChunkCount()).isEqualTo(1);
+        assertThat(timeline.getStart()).isEqualTo(Instant.parse("2020-09-06T19:35:04Z").toEpochMilli());
+        assertThat(timeline.getCounts()).hasSize(12);
+        assertThat(timeline.getCounts()[0]).isEqualTo(14);
+        assertThat(timeline.getCounts()[11]).isEqualTo(49);
+        assertThat(Arrays.stream(timeline.getCounts()).sum()).isEqualTo(668);
+    }
+
+    @Test
+    void givenTimeWindow_whenFlameGraphIsCreated_thenOnlyEventsWithinTheWindowAreCounted() throws URISyntaxException, IOException {
+        //Given
+        final RecordingIndex index = RecordingIndex.of(new File(getClass().getResource("/recording.jfr").toURI()));
+        final Timeline timeline = Timeline.of(index, EventProfile.EXECUTION_SAMPLES);
+
+        //When
+        final FlameGraph window = FlameGraph.from(index, EventProfile.EXECUTION_SAMPLES, FlameGraph.ALL,
+                FrameTransformation.NONE, timeline.windowOf(6, 11));
+        final FlameGraph before = FlameGraph.from(index, EventProfile.EXECUTION_SAMPLES, FlameGraph.ALL,
+                FrameTransformation.NONE, new TimeWindow(null, index.getStart()));
+
+        //Then
+        assertThat(window.getTree().totalValue()).isEqualTo(346);
+        assertThat(before.getTree().totalValue()).isZero();
+        assertThatThrownBy(() -> new TimeWindow(index.getEnd(), index.getStart()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void givenRecordingWithSeveralChunks_whenParsedWithTimeWindow_thenTheOverlappingChunksAreParsed()
+            throws URISyntaxException, IOException {
+        //Given
+        final Path recording = Path.of(getClass().getResource("/recording.jfr").toURI());
+        final Path multiChunkRecording = Files.createTempFile("multichunk", ".jfr");
+        final byte[] data = Files.readAllBytes(recording);
+        try (final OutputStream out = Files.newOutputStream(multiChunkRecording)) {
+            for (int i = 0; i < 4; i++) {
+                out.write(data);
+            }
+        }
+        final ForkJoinPool sequential = new ForkJoinPool(1);
+        final ForkJoinPool parallel = new ForkJoinPool(4);
+
+        try {
+            final RecordingIndex index = RecordingIndex.of(multiChunkRecording.toFile());
+            final TimeWindow window = Timeline.of(index, EventProfile.EXECUTION_SAMPLES).windowOf(6, 11);
+
+            //When
+            final FlameGraph sequentiallyParsed = FlameGraph.from(index, EventProfile.EXECUTION_SAMPLES,
+                    FlameGraph.ALL, FrameTransformation.NONE, window, sequential);
+            final FlameGraph parallelParsed = FlameGraph.from(index, EventProfile.EXECUTION_SAMPLES,
+                    FlameGraph.ALL, FrameTransformation.NONE, window, parallel);
+
+            //Then
+            assertThat(index.getChunkCount()).isEqualTo(4);
+            assertThat(sequentiallyParsed.getTree().totalValue()).isEqualTo(4 * 346);
+            assertThat(parallelParsed.getTree().totalValue()).isEqualTo(4 * 346);
+        } finally {
+            sequential.shutdown();
+            parallel.shutdown();
+            Files.delete(multiChunkRecording);
+        }
+    }
+
+    @Test
+    void givenEventEndingInTheNextChunk_whenParsedWithTimeWindow_thenTheEventIsCounted()
+            throws IOException, InterruptedException {
+        //Given
+        final Path file = Files.createTempFile("spanning", ".jfr");
+        try (final Recording recording = new Recording()) {
+            recording.enable(EventProfile.THREAD_PARK).withThreshold(Duration.ZERO).withStackTrace();
+            recording.start();
+            final Thread parked = Thread.ofPlatform().start(() -> LockSupport.parkNanos(Duration.ofSeconds(1).toNanos()));
+            Thread.sleep(300);
+            // Dumping a running recording starts a new chunk, so the park event ends in the second chunk
+            final Path dump = Files.createTempFile("dump", ".jfr");
+            recording.dump(dump);
+            Files.delete(dump);
+            parked.join();
+            recording.stop();
+            recording.dump(file);
+        }
+
+        try {
+            final RecordingIndex index = RecordingIndex.of(file.toFile());
+            final RecordingChunks.Chunk first = index.chunksIn(TimeWindow.ALL).get(0);
+            final TimeWindow window = new TimeWindow(null, Instant.EPOCH.plusNanos(first.endNanos()));
+
+            //When
+            final FlameGraph flameGraph = FlameGraph.from(index, EventProfile.locks(false), FlameGraph.ALL,
+                    FrameTransformation.NONE, window);
+
+            //Then
+            assertThat(index.getChunkCount()).isEqualTo(2);
+            assertThat(index.chunksIn(window)).hasSize(2);
+            assertThat(flameGraph.getTree().totalValue()).isGreaterThanOrEqualTo(Duration.ofSeconds(1).toNanos());
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package de.mirkosertic.flightrecorderstarter.controller;
 
+import de.mirkosertic.flightrecorderstarter.actuator.model.FlameGraph;
+import de.mirkosertic.flightrecorderstarter.actuator.model.FlameGraphAggregator;
+import de.mirkosertic.flightrecorderstarter.core.FlameGraphCache;
 import de.mirkosertic.flightrecorderstarter.core.FlightRecorder;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -9,17 +12,30 @@ import org.springframework.boot.SpringBootConfiguration;
 import org.springframework.boot.webmvc.test.autoconfigure.WebMvcTest;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpHeaders;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import tools.jackson.databind.ObjectMapper;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.GZIPInputStream;
 
 import static de.mirkosertic.flightrecorderstarter.controller.FlightRecorderStaticController.*;
 import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.never;
 import static org.springframework.http.MediaType.TEXT_HTML;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -46,7 +62,7 @@ class FlightRecorderStaticControllerTest {
 
         @Bean
         FlightRecorderStaticController flightRecorderStaticControllerflightRecorderStaticController(final FlightRecorder mockFlightRecorder, final ApplicationContext applicationContext, final ObjectMapper objectMapper) {
-            return new FlightRecorderStaticController(applicationContext, mockFlightRecorder, objectMapper);
+            return new FlightRecorderStaticController(applicationContext, mockFlightRecorder, new FlameGraphCache(0), objectMapper);
         }
     }
 
@@ -115,6 +131,41 @@ class FlightRecorderStaticControllerTest {
                 .andExpect(content().contentType(TEXT_CSS));
     }
 
+    @Test
+    void givenStaticFiles_whenFlamegraphCanvasJSIsRequired_thenFileIsReturned() throws Exception {
+        //given empty
+
+        //when and then
+        this.mockMvc.perform(get("/testStaticUrl" + FLAMEGRAPH_CANVAS_JS))
+                .andExpect(status().isOk())
+                .andExpect(header().string(CACHE_CONTROL_KEY, CACHE_CONTROL_VALUE))
+                .andExpect(content().contentType(TEXT_JAVASCRIPT))
+                .andExpect(content().string(containsString("canvasFlamegraph")));
+    }
+
+    @Test
+    void givenStaticFiles_whenFlamegraphCompactJSIsRequired_thenFileIsReturned() throws Exception {
+        //given empty
+
+        //when and then
+        this.mockMvc.perform(get("/testStaticUrl" + FLAMEGRAPH_COMPACT_JS))
+                .andExpect(status().isOk())
+                .andExpect(header().string(CACHE_CONTROL_KEY, CACHE_CONTROL_VALUE))
+                .andExpect(content().contentType(TEXT_JAVASCRIPT))
+                .andExpect(content().string(containsString("decodeFlameGraph")));
+    }
+
+    @Test
+    void givenCanvasHtml_whenCanvasHtmlIsRequired_thenFileIsReturned() throws Exception {
+        //given empty
+
+        //when and then
+        this.mockMvc.perform(get("/testStaticUrl" + "/1" + CANVAS_FLAMEGRAPH_HTML))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(TEXT_HTML))
+                .andExpect(content().string(containsString("../flamegraph-canvas.js")));
+    }
+
     @Test
     void givenFlamegraphHtml_whenFlamegraphHtmlIsRequired_thenFileIsReturned() throws Exception {
         //given empty
@@ -209,6 +260,76 @@ class FlightRecorderStaticControllerTest {
                 .andExpect(content().string(containsString("org.apache.tomcat.util.net.NioBlockingSelector$BlockPoller.run")));
     }
 
+    @Test
+    void givenExistingRecording_whenTryToDownloadRawJsonInWallClockMode_thenNativeMethodsAreIncluded() throws Exception {
+        //given
+        given(this.flightRecorder.stopRecording(anyLong())).willReturn(new File(getClass().getResource("/recording.jfr").toURI()));
+
+        //when and then
+        this.mockMvc.perform(get("/testStaticUrl" + "/1" + RAWDATA_JSON).param("mode", "wall"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("\"name\":\"sun.nio.ch.Net.accept\"")));
+        then(this.flightRecorder).should(never()).getFlameGraph(anyLong(), any());
+    }
+
+    @Test
+    void givenUnknownMode_whenTryToDownloadDataJson_thenBadRequestIsReturned() throws Exception {
+        //given empty
+
+        //when and then
+        this.mockMvc.perform(get("/testStaticUrl" + "/1" + DATA_JSON).param("mode", "gpu"))
+                .andExpect(status().isBadRequest());
+        then(this.flightRecorder).should(never()).stopRecording(anyLong());
+    }
+
+    @Test
+    void givenExistingRecording_whenTryToDownloadPrunedRawJson_thenSmallNodesAreCollapsed() throws Exception {
+        //given
+        given(this.flightRecorder.stopRecording(anyLong())).willReturn(new File(getClass().getResource("/recording.jfr").toURI()));
+
+        //when and then
+        this.mockMvc.perform(get("/testStaticUrl" + "/1" + RAWDATA_JSON).param("maxNodes", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.children.length()").value(2))
+                .andExpect(content().string(containsString("\"name\":\"other\"")))
+                .andExpect(content().string(containsString("\"name\":\"jdk.internal.reflect.NativeMethodAccessorImpl.invoke0\"")));
+    }
+
+    @Test
+    void givenExistingRecording_whenTryToDownloadCompactRawJson_thenNamesAreWrittenOnce() throws Exception {
+        //given
+        given(this.flightRecorder.stopRecording(anyLong())).willReturn(new File(getClass().getResource("/recording.jfr").toURI()));
+
+        //when and then
+        this.mockMvc.perform(get("/testStaticUrl" + "/1" + RAWDATA_JSON).param("format", "compact"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.names[0]").value("Recording"))
+                .andExpect(jsonPath("$.names.length()").value(28))
+                .andExpect(jsonPath("$.nodes.length()").value(32))
+                .andExpect(jsonPath("$.nodes[0][2]").value(3))
+                .andExpect(jsonPath("$.nodes[3][1]").value(633));
+    }
+
+    @Test
+    void givenUnknownFormat_whenTryToDownloadDataJson_thenBadRequestIsReturned() throws Exception {
+        //given empty
+
+        //when and then
+        this.mockMvc.perform(get("/testStaticUrl" + "/1" + DATA_JSON).param("format", "xml"))
+                .andExpect(status().isBadRequest());
+        then(this.flightRecorder).should(never()).stopRecording(anyLong());
+    }
+
+    @Test
+    void givenNegativeMinPercent_whenTryToDownloadDataJson_thenBadRequestIsReturned() throws Exception {
+        //given empty
+
+        //when and then
+        this.mockMvc.perform(get("/testStaticUrl" + "/1" + DATA_JSON).param("minPercent", "-1"))
+                .andExpect(status().isBadRequest());
+        then(this.flightRecorder).should(never()).stopRecording(anyLong());
+    }
+
     @Test
     void givenNonExistingRecording_whenTryToDownloadRawJson_thenNotFoundIsReturned() throws Exception {
         //given
@@ -230,6 +351,445 @@ class FlightRecorderStaticControllerTest {
                 .andExpect(status().isInternalServerError());
     }
 
+    @Test
+    void givenRunningRecording_whenTryToDownloadRawJsonSnapshot_thenRecordingIsNotStoppedAndSnapshotIsRemoved() throws Exception {
+        //given
+        final Path snapshot = Files.createTempFile("snapshot", ".jfr");
+        Files.copy(Path.of(getClass().getResource("/recording.jfr").toURI()), snapshot, StandardCopyOption.REPLACE_EXISTING);
+        given(this.flightRecorder.snapshotRecording(anyLong())).willReturn(snapshot.toFile());
+
+        //when and then
+        this.mockMvc.perform(get("/testStaticUrl" + "/1" + RAWDATA_JSON).param("snapshot", "true"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("org.apache.tomcat.util.net.NioBlockingSelector$BlockPoller.run")));
+
+        then(this.flightRecorder).should(never()).stopRecording(anyLong());
+        assertFalse(Files.exists(snapshot));
+    }
+
+    @Test
+    void givenStoppedRecording_whenTryToDownloadRawJsonSnapshot_thenRecordingFileIsUsed() throws Exception {
+        //given
+        given(this.flightRecorder.snapshotRecording(anyLong())).willReturn(null);
+        given(this.flightRecorder.stopRecording(anyLong())).willReturn(new File(getClass().getResource("/recording.jfr").toURI()));
+
+        //when and then
+        this.mockMvc.perform(get("/testStaticUrl" + "/1" + RAWDATA_JSON).param("snapshot", "true"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("org.apache.tomcat.util.net.NioBlockingSelector$BlockPoller.run")));
+    }
+
+    @Test
+    void givenRunningRecordingWithAggregatedFlameGraph_whenTryToDownloadRawJsonSnapshot_thenNoFileIsParsed() throws Exception {
+        //given
+        final FlameGraph aggregated = new FlameGraphAggregator().toFlameGraph(FlameGraph.ALL);
+        given(this.flightRecorder.getFlameGraph(anyLong(), any())).willReturn(aggregated);
+
+        //when and then
+        this.mockMvc.perform(get("/testStaticUrl" + "/1" + RAWDATA_JSON).param("snapshot", "true"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("\"name\":\"Recording\"")));
+
+        then(this.flightRecorder).should(never()).snapshotRecording(anyLong());
+        then(this.flightRecorder).should(never()).stopRecording(anyLong());
+    }
+
+    @Test
+    void givenFinishedRecordingWithAggregatedFlameGraph_whenTryToDownloadRawJson_thenTheFileIsParsed() throws Exception {
+        //given
+        final FlameGraph aggregated = new FlameGraphAggregator().toFlameGraph(FlameGraph.ALL);
+        given(this.flightRecorder.getFlameGraph(anyLong(), any())).willReturn(aggregated);
+        given(this.flightRecorder.stopRecording(anyLong())).willReturn(new File(getClass().getResource("/recording.jfr").toURI()));
+
+        //when and then
+        this.mockMvc.perform(get("/testStaticUrl" + "/1" + RAWDATA_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("org.apache.tomcat.util.net.NioBlockingSelector$BlockPoller.run")));
+
+        then(this.flightRecorder).should(never()).getFlameGraph(anyLong(), any());
+    }
+
+    @Test
+    void givenAllocationsHtml_whenAllocationsHtmlIsRequired_thenFileIsReturned() throws Exception {
+        //given empty
+
+        //when and then
+        this.mockMvc.perform(get("/testStaticUrl" + "/1" + ALLOCATIONS_HTML))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(TEXT_HTML))
+                .andExpect(content().string(containsString("allocations.json")));
+    }
+
+    @Test
+    void givenExistingRecording_whenTryToDownloadAllocationsJson_thenAllocatedClassesAreReturned() throws Exception {
+        //given
+        given(this.flightRecorder.stopRecording(anyLong())).willReturn(new File(getClass().getResource("/recording.jfr").toURI()));
+
+        //when and then
+        this.mockMvc.perform(get("/testStaticUrl" + "/1" + ALLOCATIONS_JSON).param("raw", "true"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("\"name\":\"byte[]\"")));
+
+        then(this.flightRecorder).should(never()).getFlameGraph(anyLong(), any());
+    }
+
+    @Test
+    void givenNonExistingRecording_whenTryToDownloadAllocationsJson_thenNotFoundIsReturned() throws Exception {
+        //given
+        given(this.flightRecorder.stopRecording(anyLong())).willReturn(null);
+
+        //when and then
+        this.mockMvc.perform(get("/testStaticUrl" + "/1" + ALLOCATIONS_JSON))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void givenExistingRecording_whenTryToDownloadLocksJson_thenMonitorClassesAreReturned() throws Exception {
+        //given
+        given(this.flightRecorder.stopRecording(anyLong())).willReturn(new File(getClass().getResource("/recording.jfr").toURI()));
+
+        //when and then
+        this.mockMvc.perform(get("/testStaticUrl" + "/1" + LOCKS_JSON).param("raw", "true"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("\"name\":\"java.util.concurrent.locks.AbstractQueuedSynchronizer$ConditionObject\"")));
+    }
+
+    @Test
+    void givenExistingRecording_whenTryToDownloadMonitorsJson_thenMostContendedClassesAreReturned() throws Exception {
+        //given
+        given(this.flightRecorder.stopRecording(anyLong())).willReturn(new File(getClass().getResource("/recording.jfr").toURI()));
+
+        //when and then
+        this.mockMvc.perform(get("/testStaticUrl" + "/1" + MONITORS_JSON).param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].monitorClass").value("java.util.concurrent.locks.AbstractQueuedSynchronizer$ConditionObject"))
+                .andExpect(jsonPath("$[0].eventCount").value(22));
+    }
+
+    @Test
+    void givenExistingRecording_whenTryToDownloadSummaryJson_thenTheEventsOfEveryTypeAreCounted() throws Exception {
+        //given
+        given(this.flightRecorder.stopRecording(anyLong())).willReturn(new File(getClass().getResource("/recording.jfr").toURI()));
+
+        //when and then
+        this.mockMvc.perform(get("/testStaticUrl" + "/1" + SUMMARY_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.events.length()").value(6))
+                .andExpect(jsonPath("$.events[0].name").value("jdk.ExecutionSample"))
+                .andExpect(jsonPath("$.events[0].eventCount").value(668))
+                .andExpect(jsonPath("$.threadCount").value(11));
+    }
+
+    @Test
+    void givenDiffHtml_whenDiffHtmlIsRequired_thenFileIsReturned() throws Exception {
+        //given empty
+
+        //when and then
+        this.mockMvc.perform(get("/testStaticUrl" + "/1/diff/2" + FLAMEGRAPH_HTML))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(TEXT_HTML))
+                .andExpect(content().string(containsString("differential(true)")));
+    }
+
+    @Test
+    void givenTwoRecordingsWithTheSameSamples_whenTryToDownloadDiffJson_thenNoDeltasAreReturned() throws Exception {
+        //given
+        given(this.flightRecorder.stopRecording(anyLong())).willReturn(new File(getClass().getResource("/recording.jfr").toURI()));
+
+        //when and then
+        this.mockMvc.perform(get("/testStaticUrl" + "/1/diff/2" + DATA_JSON).param("raw", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.children[0].delta").value(0))
+                .andExpect(content().string(containsString("org.apache.tomcat.util.net.NioBlockingSelector$BlockPoller.run")));
+        then(this.flightRecorder).should().stopRecording(1);
+        then(this.flightRecorder).should().stopRecording(2);
+    }
+
+    @Test
+    void givenNonExistingBaselineRecording_whenTryToDownloadDiffJson_thenNotFoundIsReturned() throws Exception {
+        //given
+        given(this.flightRecorder.stopRecording(1)).willReturn(null);
+
+        //when and then
+        this.mockMvc.perform(get("/testStaticUrl" + "/1/diff/2" + DATA_JSON))
+                .andExpect(status().isNotFound());
+        then(this.flightRecorder).should(never()).stopRecording(2);
+    }
+
+    @Test
+    void givenClientAcceptingGzip_whenTryToDownloadRawJson_thenCompressedJSONIsReturned() throws Exception {
+        //given
+        given(this.flightRecorder.stopRecording(anyLong())).willReturn(new File(getClass().getResource("/recording.jfr").toURI()));
+
+        //when
+        final MvcResult result = this.mockMvc.perform(get("/testStaticUrl" + "/1" + RAWDATA_JSON)
+                        .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, GZIP))
+                .andReturn();
+
+        //then
+        final byte[] json = new GZIPInputStream(new ByteArrayInputStream(result.getResponse().getContentAsByteArray())).readAllBytes();
+        assertTrue(new String(json).contains("org.apache.tomcat.util.net.NioBlockingSelector$BlockPoller.run"));
+    }
+
+    @Test
+    void givenExistingRecording_whenTryToDownloadFoldedStacks_thenOneLinePerCallPathIsReturned() throws Exception {
+        //given
+        given(this.flightRecorder.stopRecording(anyLong())).willReturn(new File(getClass().getResource("/recording.jfr").toURI()));
+
+        //when
+        final MvcResult result = this.mockMvc.perform(get("/testStaticUrl" + "/1" + STACKS_FOLDED))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("org.apache.tomcat.util.net.NioBlockingSelector$BlockPoller.run;")))
+                .andReturn();
+
+        //then
+        final long samples = result.getResponse().getContentAsString().lines()
+                .mapToLong(line -> Long.parseLong(line.substring(line.lastIndexOf(' ') + 1)))
+                .sum();
+        assertEquals(668, samples);
+    }
+
+    @Test
+    void givenExistingRecording_whenTryToDownloadPprofProfile_thenCompressedProfileIsReturned() throws Exception {
+        //given
+        given(this.flightRecorder.stopRecording(anyLong())).willReturn(new File(getClass().getResource("/recording.jfr").toURI()));
+
+        //when
+        final MvcResult result = this.mockMvc.perform(get("/testStaticUrl" + "/1" + PROFILE_PB_GZ).param("mode", "wall"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, containsString("profile_1_wall.pb.gz")))
+                .andReturn();
+
+        //then
+        final byte[] profile = new GZIPInputStream(new ByteArrayInputStream(result.getResponse().getContentAsByteArray())).readAllBytes();
+        assertTrue(new String(profile).contains("sun.nio.ch.Net.accept"));
+        assertTrue(new String(profile).contains("nanoseconds"));
+    }
+
+    @Test
+    void givenUnknownMode_whenTryToDownloadPprofProfile_thenBadRequestIsReturned() throws Exception {
+        //given empty
+
+        //when and then
+        this.mockMvc.perform(get("/testStaticUrl" + "/1" + PROFILE_PB_GZ).param("mode", "gpu"))
+                .andExpect(status().isBadRequest());
+        then(this.flightRecorder).should(never()).stopRecording(anyLong());
+    }
+
+    @Test
+    void givenTreeHtml_whenTreeHtmlIsRequired_thenFileIsReturned() throws Exception {
+        //given empty
+
+        //when and then
+        this.mockMvc.perform(get("/testStaticUrl" + "/1" + TREE_HTML))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(TEXT_HTML));
+    }
+
+    @Test
+    void givenExistingRecording_whenTryToDownloadTopLevelOfTree_thenDeeperLevelsAreTruncated() throws Exception {
+        //given
+        given(this.flightRecorder.stopRecording(anyLong())).willReturn(new File(getClass().getResource("/recording.jfr").toURI()));
+
+        //when and then
+        this.mockMvc.perform(get("/testStaticUrl" + "/1" + TREE).param("raw", "true").param("depth", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("Recording"))
+                .andExpect(jsonPath("$.children.length()").value(3))
+                .andExpect(jsonPath("$.children[0].truncated").value(true))
+                .andExpect(jsonPath("$.children[0].children").isEmpty());
+    }
+
+    @Test
+    void givenExistingRecording_whenTryToDownloadSubtree_thenTheLevelsBelowThePathAreReturned() throws Exception {
+        //given
+        given(this.flightRecorder.stopRecording(anyLong())).willReturn(new File(getClass().getResource("/recording.jfr").toURI()));
+
+        //when and then
+        this.mockMvc.perform(get("/testStaticUrl" + "/1" + TREE).param("raw", "true").param("depth", "2")
+                        .param("path", "java.lang.Thread.run;org.apache.tomcat.util.net.NioEndpoint$Poller.run"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("org.apache.tomcat.util.net.NioEndpoint$Poller.run"))
+                .andExpect(jsonPath("$.value").value(2))
+                .andExpect(jsonPath("$.children.length()").value(2));
+    }
+
+    @Test
+    void givenUnknownPath_whenTryToDownloadSubtree_thenNotFoundIsReturned() throws Exception {
+        //given
+        given(this.flightRecorder.stopRecording(anyLong())).willReturn(new File(getClass().getResource("/recording.jfr").toURI()));
+
+        //when and then
+        this.mockMvc.perform(get("/testStaticUrl" + "/1" + TREE).param("path", "java.lang.Thread.run;unknown.Class.method"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void givenExistingRecording_whenTryToDownloadInvertedSubtree_thenThePathStartsAtTheLeafMethod() throws Exception {
+        //given
+        given(this.flightRecorder.stopRecording(anyLong())).willReturn(new File(getClass().getResource("/recording.jfr").toURI()));
+
+        //when and then
+        this.mockMvc.perform(get("/testStaticUrl" + "/1" + TREE).param("raw", "true").param("inverted", "true")
+                        .param("depth", "1").param("path", "java.util.Random.next"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.value").value(474))
+                .andExpect(jsonPath("$.children[0].name").value("java.util.Random.nextDouble"));
+    }
+
+    @Test
+    void givenExistingRecording_whenTryToDownloadButterflyJson_thenCallersAndCalleesAreReturned() throws Exception {
+        //given
+        given(this.flightRecorder.stopRecording(anyLong())).willReturn(new File(getClass().getResource("/recording.jfr").toURI()));
+
+        //when and then
+        this.mockMvc.perform(get("/testStaticUrl" + "/1" + BUTTERFLY_JSON).param("raw", "true")
+                        .param("method", "java.util.Random.nextDouble"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.method.self").value(44))
+                .andExpect(jsonPath("$.method.total").value(518))
+                .andExpect(jsonPath("$.callers[0].name").value("java.lang.Math.random"))
+                .andExpect(jsonPath("$.callees[0].name").value("java.util.Random.next"))
+                .andExpect(jsonPath("$.callees[0].self").value(474));
+    }
+
+    @Test
+    void givenUnknownMethod_whenTryToDownloadButterflyJson_thenNotFoundIsReturned() throws Exception {
+        //given
+        given(this.flightRecorder.stopRecording(anyLong())).willReturn(new File(getClass().getResource("/recording.jfr").toURI()));
+
+        //when and then
+        this.mockMvc.perform(get("/testStaticUrl" + "/1" + BUTTERFLY_JSON).param("method", "unknown.Class.method"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void givenExistingRecording_whenTryToDownloadHotMethodsJson_thenMethodsAreSortedBySelfValue() throws Exception {
+        //given
+        given(this.flightRecorder.stopRecording(anyLong())).willReturn(new File(getClass().getResource("/recording.jfr").toURI()));
+
+        //when and then
+        this.mockMvc.perform(get("/testStaticUrl" + "/1" + HOTMETHODS_JSON).param("raw", "true").param("limit", "3"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.total").value(668))
+                .andExpect(jsonPath("$.methods.length()").value(3))
+                .andExpect(jsonPath("$.methods[0].name").value("java.util.Random.next"))
+                .andExpect(jsonPath("$.methods[0].self").value(474))
+                .andExpect(jsonPath("$.methods[2].name").value("java.util.Random.nextDouble"))
+                .andExpect(jsonPath("$.methods[2].total").value(518));
+    }
+
+    @Test
+    void givenExistingRecording_whenTryToDownloadHotMethodsJsonWithLines_thenLinesAreListedOnTheirOwn() throws Exception {
+        //given
+        given(this.flightRecorder.stopRecording(anyLong())).willReturn(new File(getClass().getResource("/recording.jfr").toURI()));
+
+        //when and then
+        this.mockMvc.perform(get("/testStaticUrl" + "/1" + HOTMETHODS_JSON).param("raw", "true").param("lines", "true")
+                        .param("sort", "total"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.methods[0].total").value(633))
+                .andExpect(content().string(containsString("\"de.mirkosertic.flightrecorderstarter.FlightRecorderEndpoint.startRecording:83\"")))
+                .andExpect(content().string(containsString("\"java.util.Random.next:204\"")));
+    }
+
+    @Test
+    void givenUnknownSort_whenTryToDownloadHotMethodsJson_thenBadRequestIsReturned() throws Exception {
+        //given empty
+
+        //when and then
+        this.mockMvc.perform(get("/testStaticUrl" + "/1" + HOTMETHODS_JSON).param("sort", "name"))
+                .andExpect(status().isBadRequest());
+        then(this.flightRecorder).should(never()).stopRecording(anyLong());
+    }
+
+    @Test
+    void givenExistingRecording_whenTryToDownloadTimelineJson_thenTheSamplesOfEverySecondAreCounted() throws Exception {
+        //given
+        given(this.flightRecorder.stopRecording(anyLong())).willReturn(new File(getClass().getResource("/recording.jfr").toURI()));
+
+        //when and then
+        this.mockMvc.perform(get("/testStaticUrl" + "/1" + TIMELINE_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.start").value(1599420904000L))
+                .andExpect(jsonPath("$.intervalMillis").value(1000))
+                .andExpect(jsonPath("$.counts.length()").value(12))
+                .andExpect(jsonPath("$.counts[0]").value(14));
+    }
+
+    @Test
+    void givenTimeWindow_whenTryToDownloadHotMethodsJson_thenOnlySamplesWithinTheWindowAreCounted() throws Exception {
+        //given
+        given(this.flightRecorder.stopRecording(anyLong())).willReturn(new File(getClass().getResource("/recording.jfr").toURI()));
+
+        //when and then
+        this.mockMvc.perform(get("/testStaticUrl" + "/1" + HOTMETHODS_JSON).param("raw", "true")
+                        .param("from", "2020-09-06T19:35:10Z").param("to", "1599420916000"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.total").value(346));
+    }
+
+    @Test
+    void givenInvalidTimeWindow_whenTryToDownloadJson_thenBadRequestIsReturned() throws Exception {
+        //given empty
+
+        //when and then
+        this.mockMvc.perform(get("/testStaticUrl" + "/1" + DATA_JSON).param("from", "yesterday"))
+                .andExpect(status().isBadRequest());
+        this.mockMvc.perform(get("/testStaticUrl" + "/1" + RAWDATA_JSON)
+                        .param("from", "1599420916000").param("to", "1599420904000"))
+                .andExpect(status().isBadRequest());
+        then(this.flightRecorder).should(never()).stopRecording(anyLong());
+    }
+
+    @Test
+    void givenThreadPools_whenTryToDownloadTopLevelOfTree_thenTheStackTracesAreGroupedByPool() throws Exception {
+        //given
+        given(this.flightRecorder.stopRecording(anyLong())).willReturn(new File(getClass().getResource("/recording.jfr").toURI()));
+
+        //when and then
+        this.mockMvc.perform(get("/testStaticUrl" + "/1" + TREE).param("raw", "true").param("depth", "1")
+                        .param("threads", "pool"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.children.length()").value(4))
+                .andExpect(jsonPath("$.children[3].name").value("[http-nio-8080-exec-*]"))
+                .andExpect(jsonPath("$.children[3].value").value(633));
+    }
+
+    @Test
+    void givenInvalidThreadGrouping_whenTryToDownloadJson_thenBadRequestIsReturned() throws Exception {
+        //given empty
+
+        //when and then
+        this.mockMvc.perform(get("/testStaticUrl" + "/1" + DATA_JSON).param("threads", "process"))
+                .andExpect(status().isBadRequest());
+        this.mockMvc.perform(get("/testStaticUrl" + "/1" + RAWDATA_JSON).param("threadFilter", "exec-".repeat(100)))
+                .andExpect(status().isBadRequest());
+        then(this.flightRecorder).should(never()).stopRecording(anyLong());
+    }
+
+    @Test
+    void givenZeroDepth_whenTryToDownloadSubtree_thenBadRequestIsReturned() throws Exception {
+        //given empty
+
+        //when and then
+        this.mockMvc.perform(get("/testStaticUrl" + "/1" + TREE).param("depth", "0"))
+                .andExpect(status().isBadRequest());
+        then(this.flightRecorder).should(never()).stopRecording(anyLong());
+    }
+
+    @Test
+    void givenAcceptEncodingHeaders_whenCheckedForGzip_thenOnlyAcceptedGzipIsUsed() {
+        assertFalse(acceptsGzip(null));
+        assertFalse(acceptsGzip("deflate, br"));
+        assertFalse(acceptsGzip("gzip;q=0, deflate"));
+        assertTrue(acceptsGzip("deflate, gzip"));
+        assertTrue(acceptsGzip("GZIP;q=0.5"));
+    }
+
     @Test
     void givenApplicationContextWithoutSpringBootApplicationBean_whenTryToFindBootClass_thenNullIsReturned() {
         assertNull(this.flightRecorderStaticController.findBootClass(this.applicationContext));
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2020 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.flightrecorderstarter.core;
+
+import de.mirkosertic.flightrecorderstarter.actuator.model.DifferentialFlameGraph;
+import de.mirkosertic.flightrecorderstarter.actuator.model.FlameGraph;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FlameGraphCacheTest {
+
+    private static FlameGraph graph;
+
+    @BeforeAll
+    static void parseRecording() throws Exception {
+        graph = FlameGraph.from(new File(FlameGraphCacheTest.class.getResource("/recording.jfr").toURI()), FlameGraph.ALL);
+    }
+
+    @Test
+    void givenConcurrentRequests_whenFlameGraphIsRequested_thenItIsComputedOnlyOnce() throws Exception {
+        //Given
+        final FlameGraphCache cache = new FlameGraphCache(Long.MAX_VALUE);
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            //When
+            final List<Future<FlameGraph>> results = new ArrayList<>();
+            results.add(executor.submit(() -> cache.get(1, FlameGraph.ALL, () -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                release.await();
+                return graph;
+            })));
+            assertThat(loading.await(10, TimeUnit.SECONDS)).isTrue();
+            for (int i = 0; i < 3; i++) {
+                results.add(executor.submit(() -> cache.get(1, FlameGraph.ALL, () -> {
+                    loads.incrementAndGet();
+                    return graph;
+                })));
+            }
+            release.countDown();
+
+            //Then
+            for (final Future<FlameGraph> result : results) {
+                assertThat(result.get(10, TimeUnit.SECONDS)).isSameAs(graph);
+            }
+            assertThat(loads).hasValue(1);
+            assertThat(cache.getMissCount()).isEqualTo(1);
+            assertThat(cache.getHitCount()).isEqualTo(3);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void givenFullCache_whenAnotherFlameGraphIsAdded_thenTheLeastRecentlyUsedIsEvicted() throws IOException {
+        //Given
+        final long weight = graph.getTree().size();
+        final FlameGraphCache cache = new FlameGraphCache(2 * weight);
+        cache.get(1, FlameGraph.ALL, () -> graph);
+        cache.get(2, FlameGraph.ALL, () -> graph);
+        cache.get(1, FlameGraph.ALL, () -> graph);
+
+        //When
+        cache.get(3, FlameGraph.ALL, () -> graph);
+
+        //Then
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.getWeight()).isEqualTo(2 * weight);
+        assertThat(cache.getEvictionCount()).isEqualTo(1);
+        final AtomicInteger loads = new AtomicInteger();
+        cache.get(1, FlameGraph.ALL, () -> {
+            loads.incrementAndGet();
+            return graph;
+        });
+        cache.get(2, FlameGraph.ALL, () -> {
+            loads.incrementAndGet();
+            return graph;
+        });
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void givenCachedFlameGraphs_whenRecordingIsInvalidated_thenAllItsVariantsAreRemoved() throws IOException {
+        //Given
+        final FlameGraphCache cache = new FlameGraphCache(Long.MAX_VALUE);
+        cache.get(1, FlameGraph.ALL, () -> graph);
+        cache.get(1, new FlameGraph.PackageNamePrefixFrameFilter("de.mirkosertic."), () -> graph);
+        cache.get(2, FlameGraph.ALL, () -> graph);
+
+        //When
+        cache.invalidate(1);
+
+        //Then
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.getWeight()).isEqualTo(graph.getTree().size());
+        assertThat(cache.get(1, new FlameGraph.PackageNamePrefixFrameFilter("de.mirkosertic."), () -> null)).isNull();
+    }
+
+    @Test
+    void givenCachedComparison_whenBaselineRecordingIsInvalidated_thenTheComparisonIsRemoved() throws IOException {
+        //Given
+        final FlameGraphCache cache = new FlameGraphCache(Long.MAX_VALUE);
+        cache.get(2, FlameGraph.ALL, () -> graph);
+        cache.get(2, 1, FlameGraph.ALL, () -> graph);
+
+        //When
+        cache.invalidate(1);
+
+        //Then the flame graph of the candidate itself is still cached
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.get(2, FlameGraph.ALL, () -> null)).isSameAs(graph);
+        assertThat(cache.get(2, 1, FlameGraph.ALL, () -> null)).isNull();
+    }
+
+    @Test
+    void givenFailingComputation_whenFlameGraphIsRequestedAgain_thenItIsComputedAgain() throws IOException {
+        //Given
+        final FlameGraphCache cache = new FlameGraphCache(Long.MAX_VALUE);
+        assertThatThrownBy(() -> cache.get(1, FlameGraph.ALL, () -> {
+            throw new IOException("broken recording");
+        })).isInstanceOf(IOException.class);
+
+        //When
+        final FlameGraph result = cache.get(1, FlameGraph.ALL, () -> graph);
+
+        //Then
+        assertThat(result).isSameAs(graph);
+        assertThat(cache.getMissCount()).isEqualTo(2);
+    }
+
+    @Test
+    void givenDifferentialFlameGraph_whenCached_thenOnlyItsDeltasAreCharged() throws IOException {
+        //Given
+        final FlameGraphCache cache = new FlameGraphCache(Long.MAX_VALUE);
+        cache.get(1, FlameGraph.ALL, () -> graph);
+        cache.get(2, FlameGraph.ALL, () -> graph);
+
+        //When
+        cache.get(2, 1, FlameGraph.ALL, () -> DifferentialFlameGraph.of(graph, graph));
+
+        //Then the tree of the candidate is already charged by its own entry
+        final int nodes = graph.getTree().size();
+        assertThat(cache.getWeight()).isEqualTo(2L * nodes + (nodes + 4) / 5);
+    }
+
+    @Test
+    void givenComputationFailingWithError_whenFlameGraphIsRequestedAgain_thenItIsComputedAgain() throws IOException {
+        //Given
+        final FlameGraphCache cache = new FlameGraphCache(Long.MAX_VALUE);
+        assertThatThrownBy(() -> cache.get(1, FlameGraph.ALL, () -> {
+            throw new OutOfMemoryError("Java heap space");
+        })).isInstanceOf(OutOfMemoryError.class);
+
+        //When
+        final FlameGraph result = cache.get(1, FlameGraph.ALL, () -> graph);
+
+        //Then
+        assertThat(result).isSameAs(graph);
+        assertThat(cache.getMissCount()).isEqualTo(2);
+    }
+}
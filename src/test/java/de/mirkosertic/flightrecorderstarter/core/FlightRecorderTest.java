@@ -1,7 +1,9 @@
 package de.mirkosertic.flightrecorderstarter.core;
 
 
+import de.mirkosertic.flightrecorderstarter.actuator.model.FlameGraph;
 import de.mirkosertic.flightrecorderstarter.actuator.model.FlightRecorderPublicSession;
+import de.mirkosertic.flightrecorderstarter.actuator.model.LiveEvent;
 import de.mirkosertic.flightrecorderstarter.configuration.FlightRecorderDynamicConfiguration;
 import jdk.jfr.Configuration;
 import jdk.jfr.Recording;
@@ -23,6 +25,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static de.mirkosertic.flightrecorderstarter.configuration.FlightRecorderDynamicConfiguration.CleanupType;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -249,6 +252,149 @@ class FlightRecorderTest {
         assertThat(frps.getId()).isEqualTo(1L);
     }
 
+    @Test
+    void givenRunningRecording_whenRecordingIsStopped_thenSessionStateIsUpdatedWithoutTouchingOtherSessions()
+            throws IOException {
+        //Given
+        given(this.mockConfiguration.getJfrBasePath()).willReturn(null);
+
+        final FlightRecorder flightRecorder = new FlightRecorder(this.mockConfiguration, this.spyRecordings);
+
+        final StartRecordingCommand command = new StartRecordingCommand();
+        command.setDuration(10L);
+        command.setTimeUnit(ChronoUnit.MINUTES);
+        command.setDescription("dummyDescription");
+        final long stoppedId = flightRecorder.startRecordingFor(command);
+        final long runningId = flightRecorder.startRecordingFor(command);
+
+        //When
+        flightRecorder.stopRecording(stoppedId);
+
+        //Then
+        assertThat(flightRecorder.isRecordingStopped(stoppedId)).isTrue();
+        assertThat(flightRecorder.isRecordingStopped(runningId)).isFalse();
+        assertThat(flightRecorder.getById(stoppedId).getStatus()).isEqualTo(RecordingState.STOPPED.name());
+        assertThat(flightRecorder.getById(stoppedId).getFinishedAt()).isNotNull();
+        assertThat(flightRecorder.getById(runningId).getStatus()).isEqualTo(RecordingState.RUNNING.name());
+
+        final List<FlightRecorderPublicSession> sessions = flightRecorder.sessions();
+        assertThat(sessions).extracting(FlightRecorderPublicSession::getId).containsExactly(stoppedId, runningId);
+        assertThrows(UnsupportedOperationException.class, sessions::clear);
+
+        flightRecorder.deleteRecording(stoppedId);
+        flightRecorder.deleteRecording(runningId);
+        flightRecorder.close();
+    }
+
+    @Test
+    void givenContinuousRecording_whenLastMinutesAreDumped_thenANewFinishedSessionIsCreatedAndTheContinuousRecordingKeepsRunning()
+            throws IOException {
+        //Given
+        final FlightRecorderDynamicConfiguration configuration = new FlightRecorderDynamicConfiguration();
+        configuration.setContinuousRecordingMaxAge(10);
+        configuration.setContinuousRecordingMaxAgeTimeUnit(ChronoUnit.MINUTES);
+        final FlightRecorder flightRecorder = new FlightRecorder(configuration, this.spyRecordings);
+        flightRecorder.startContinuousRecording();
+
+        //When
+        final DumpRecordingCommand command = new DumpRecordingCommand();
+        command.setDuration(1L);
+        command.setTimeUnit(ChronoUnit.MINUTES);
+        final long recordingId = flightRecorder.dumpContinuousRecording(command);
+
+        //Then
+        assertThat(flightRecorder.isContinuousRecordingActive()).isTrue();
+        assertThat(flightRecorder.isRecordingStopped(recordingId)).isTrue();
+        final File file = flightRecorder.stopRecording(recordingId);
+        assertThat(file).exists();
+        assertThat(file.length()).isGreaterThan(0L);
+
+        flightRecorder.deleteRecording(recordingId);
+        assertThat(file).doesNotExist();
+        flightRecorder.close();
+        assertThat(flightRecorder.isContinuousRecordingActive()).isFalse();
+    }
+
+    @Test
+    void givenNoContinuousRecording_whenDumped_thenThrows() {
+        //Given
+        final FlightRecorder flightRecorder = new FlightRecorder(this.mockConfiguration, this.spyRecordings);
+
+        //When/Then
+        assertThrows(IllegalStateException.class, () -> flightRecorder.dumpContinuousRecording(new DumpRecordingCommand()));
+    }
+
+    @Test
+    void givenIncrementalFlameGraphEnabled_whenRecordingIsRunning_thenTheAggregatedFlameGraphContainsTheSamples()
+            throws IOException {
+        //Given
+        final FlightRecorderDynamicConfiguration configuration = new FlightRecorderDynamicConfiguration();
+        configuration.setIncrementalFlameGraphEnabled(true);
+        final FlightRecorder flightRecorder = new FlightRecorder(configuration, this.spyRecordings);
+        final StartRecordingCommand command = new StartRecordingCommand();
+        command.setDuration(1L);
+        command.setTimeUnit(ChronoUnit.MINUTES);
+        final long recordingId = flightRecorder.startRecordingFor(command);
+
+        //When
+        // The stream delivers the samples about once per second
+        final long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        double result = 0;
+        FlameGraph flameGraph = null;
+        while ((flameGraph == null || flameGraph.getRoot().getChildren().isEmpty()) && System.nanoTime() < deadline) {
+            final long sliceEnd = System.nanoTime() + Duration.ofMillis(200).toNanos();
+            while (System.nanoTime() < sliceEnd) {
+                result += Math.sqrt(result + System.nanoTime());
+            }
+            flameGraph = flightRecorder.getFlameGraph(recordingId, FlameGraph.ALL);
+        }
+
+        //Then
+        assertThat(result).isPositive();
+        assertThat(flameGraph).isNotNull();
+        assertThat(flameGraph.getRoot().getChildren()).isNotEmpty();
+
+        // Finished recordings are parsed from their file, so the aggregate is released
+        flightRecorder.stopRecording(recordingId);
+        assertThat(flightRecorder.getFlameGraph(recordingId, FlameGraph.ALL)).isNull();
+        flightRecorder.deleteRecording(recordingId);
+        flightRecorder.close();
+    }
+
+    @Test
+    void givenSubscriptionToThreadSleepEvents_whenAThreadSleeps_thenTheEventIsStreamed() throws InterruptedException {
+        //Given
+        final FlightRecorderDynamicConfiguration configuration = new FlightRecorderDynamicConfiguration();
+        final FlightRecorder flightRecorder = new FlightRecorder(configuration, this.spyRecordings);
+
+        //When
+        final LiveEvent event;
+        try (final LiveEventSubscription subscription = flightRecorder.subscribe(Set.of("jdk.ThreadSleep"), null)) {
+            LiveEvent received = null;
+            final long deadline = System.nanoTime() + Duration.ofSeconds(20).toNanos();
+            while (received == null && System.nanoTime() < deadline) {
+                Thread.sleep(50);
+                received = subscription.poll(Duration.ofMillis(500));
+            }
+            event = received;
+        }
+
+        //Then
+        assertThat(event).isNotNull();
+        assertThat(event.getType()).isEqualTo("jdk.ThreadSleep");
+        assertThat(event.getFields()).containsKey("time");
+        flightRecorder.close();
+    }
+
+    @Test
+    void givenUnknownEventType_whenSubscribed_thenThrows() {
+        //Given
+        final FlightRecorder flightRecorder = new FlightRecorder(this.mockConfiguration, this.spyRecordings);
+
+        //When/Then
+        assertThrows(IllegalArgumentException.class, () -> flightRecorder.subscribe(Set.of("jdk.DoesNotExist"), null));
+    }
+
     @Test
     void givenBasePathConfigured_whenANewRecordingHasFinished_ThenTheFileIsStoredAtConfiguredBasePath()
             throws IOException {
@@ -0,0 +1,76 @@
+package de.mirkosertic.flightrecorderstarter.core;
+
+import de.mirkosertic.flightrecorderstarter.actuator.model.LiveEvent;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LiveEventSubscriptionTest {
+
+    private static final int FLOOD = 10_000;
+
+    @Test
+    void givenRateLimit_whenFlooded_thenEventsAboveTheLimitAreDroppedWithoutBeingCreated() throws InterruptedException {
+        //Given
+        final AtomicInteger created = new AtomicInteger();
+        try (final LiveEventSubscription subscription = subscription(FLOOD, 10)) {
+
+            //When
+            for (int i = 0; i < FLOOD; i++) {
+                subscription.offer(() -> {
+                    created.incrementAndGet();
+                    return new LiveEvent();
+                });
+            }
+
+            //Then
+            final List<LiveEvent> received = pollAll(subscription);
+            // The bucket starts full, and may refill by a token while the events are offered
+            assertThat(received).hasSizeBetween(10, 11);
+            assertThat(created).hasValue(received.size());
+            assertThat(subscription.getDroppedEvents()).isEqualTo(FLOOD - received.size());
+        }
+    }
+
+    @Test
+    void givenFullBuffer_whenFlooded_thenTheOldestEventsAreDropped() throws InterruptedException {
+        //Given
+        final List<LiveEvent> offered = new ArrayList<>();
+        try (final LiveEventSubscription subscription = subscription(3, 0)) {
+
+            //When
+            for (int i = 0; i < 10; i++) {
+                final LiveEvent event = new LiveEvent();
+                offered.add(event);
+                subscription.offer(() -> event);
+            }
+
+            //Then
+            assertThat(pollAll(subscription)).containsExactlyElementsOf(offered.subList(7, 10));
+            assertThat(subscription.getDroppedEvents()).isEqualTo(7);
+        }
+    }
+
+    private static LiveEventSubscription subscription(final int bufferSize, final int maxEventsPerSecond) {
+        // The stream is not started, so the events are only those offered by the test
+        return new LiveEventSubscription(Set.of("jdk.ThreadSleep"), Map.of("jdk.ThreadSleep#enabled", "true"),
+                bufferSize, maxEventsPerSecond, subscription -> {
+        });
+    }
+
+    private static List<LiveEvent> pollAll(final LiveEventSubscription subscription) throws InterruptedException {
+        final List<LiveEvent> result = new ArrayList<>();
+        LiveEvent event;
+        while ((event = subscription.poll(Duration.ZERO)) != null) {
+            result.add(event);
+        }
+        return result;
+    }
+}